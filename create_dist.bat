@@ -1,6 +1,6 @@
 @echo off
 echo Building Sit CLI...
-call gradlew.bat clean bootJar
+call gradlew.bat clean cliCds
 
 if errorlevel 1 (
     echo Build failed!
@@ -11,12 +11,13 @@ if errorlevel 1 (
 echo Creating distribution...
 if not exist dist mkdir dist
 
-copy "build\libs\SIT-0.0.1-SNAPSHOT.jar" "dist\sit.jar" >nul
+copy "build\libs\SIT-0.0.1-SNAPSHOT-cli.jar" "dist\sit.jar" >nul
+copy "build\libs\sit-cli.jsa" "dist\sit.jsa" >nul
 
 echo Creating portable launcher...
 (
 echo @echo off
-echo java -jar "%%~dp0sit.jar" %%*
+echo java -XX:+IgnoreUnrecognizedVMOptions -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="%%~dp0sit.jsa" -XX:+UseSerialGC -jar "%%~dp0sit.jar" %%*
 ) > dist\sit.bat
 
 echo.
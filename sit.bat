@@ -1,2 +1,3 @@
 @echo off
-java -jar "%~dp0build\libs\SIT-0.0.1-SNAPSHOT.jar" %*
+rem Fast launcher: the Spring-free cli jar and its AppCDS archive (gradlew cliCds builds both)
+java -XX:+IgnoreUnrecognizedVMOptions -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile="%~dp0build\libs\sit-cli.jsa" -XX:+UseSerialGC %SIT_JAVA_OPTS% -jar "%~dp0build\libs\SIT-0.0.1-SNAPSHOT-cli.jar" %*
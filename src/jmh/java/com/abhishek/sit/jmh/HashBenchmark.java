@@ -0,0 +1,50 @@
+package com.abhishek.sit.jmh;
+
+import com.abhishek.sit.util.SitUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Content hashing, from a file (read loop below SitUtil.MMAP_THRESHOLD, memory
+// map from it) and from bytes already in memory
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"1024", "65536", "1048576", "67108864"})
+    public int fileSize;
+
+    private Path file;
+    private byte[] content;
+
+    @Setup
+    public void setUp() throws IOException {
+        content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+        file = Files.createTempFile("sit-jmh-", ".bin");
+        Files.write(file, content);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String sha1OfFile() throws IOException {
+        return SitUtil.getSha1(file);
+    }
+
+    @Benchmark
+    public String sha1OfBytes() {
+        return SitUtil.getSha1(content);
+    }
+}
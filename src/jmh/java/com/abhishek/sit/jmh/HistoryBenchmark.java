@@ -0,0 +1,77 @@
+package com.abhishek.sit.jmh;
+
+import com.abhishek.sit.controller.Services;
+import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.service.CommitGraphService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// History walks over a linear chain of `historyDepth` commits: the ancestry
+// check merge starts with, and log with and without a path limit
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int historyDepth;
+
+    private Services services;
+    private CommitGraphService commitGraphService;
+    private String root;
+    private String tip;
+    private List<String> path;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticRepository.history(historyDepth);
+        services = new Services();
+        SitRepository sitRepository = new SitRepository();
+        commitGraphService = new CommitGraphService(sitRepository);
+        tip = sitRepository.getHeadCommitId();
+        root = tip;
+        for (String parent = tip; parent != null; parent = sitRepository.getCommits().read(parent).firstParent()) {
+            root = parent;
+        }
+        path = List.of(SyntheticRepository.historyFile(7).toString().replace('\\', '/'));
+        // log prints its results
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    // True, and only found at the far end of the chain
+    @Benchmark
+    public boolean rootIsAncestorOfTip() throws IOException {
+        return commitGraphService.isAncestor(root, tip);
+    }
+
+    // False, which generation numbers settle without a walk
+    @Benchmark
+    public boolean tipIsAncestorOfRoot() throws IOException {
+        return commitGraphService.isAncestor(tip, root);
+    }
+
+    @Benchmark
+    public void log() {
+        services.logService().handleLog(false, -1, null, List.of());
+    }
+
+    @Benchmark
+    public void logOfPath() {
+        services.logService().handleLog(true, -1, null, path);
+    }
+}
@@ -0,0 +1,159 @@
+package com.abhishek.sit.jmh;
+
+import com.abhishek.sit.controller.Services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Builds the repositories the benchmarks run against. sit resolves .sit
+// against the working directory, so the repository is built right in it: the
+// `jmh` task starts every fork in build/jmh/repo, and each trial regenerates
+// it for its own parameters (or keeps it, when the previous fork built the
+// same one). The marker file says what is there, and keeps this from ever
+// wiping a directory it didn't create; a second one in .sit, out of sight of
+// status and diff, says the build finished.
+final class SyntheticRepository {
+
+    static final String MARKER = ".sit-jmh";
+    static final String COMPLETE = ".sit/jmh-complete";
+    static final int FILES_PER_DIRECTORY = 100;
+    static final int HISTORY_FILES = 50;
+
+    // Every working file is dated this far back, so none of them is racy
+    // against the index and stat data alone decides what needs hashing
+    private static final long AGE_SECONDS = 3600;
+
+    private SyntheticRepository() {
+    }
+
+    // `fileCount` files of about `fileSize` bytes, added and committed, with
+    // every hundredth one then changed so status and diff have work to do
+    static void workingTree(int fileCount, int fileSize) throws IOException {
+        String description = "tree " + fileCount + " " + fileSize;
+        if (reuse(description)) {
+            return;
+        }
+        Services services = init(description);
+        Random random = new Random(fileCount * 31L + fileSize);
+        for (int i = 0; i < fileCount; i++) {
+            writeAged(workingFile(i), text(random, fileSize));
+        }
+        quietly(() -> {
+            services.indexService().handleAdd(".");
+            services.commitService().handleCommit("synthetic tree");
+        });
+        for (int i = 0; i < fileCount; i += 100) {
+            Files.writeString(workingFile(i), "changed line " + i + "\n", StandardOpenOption.APPEND);
+        }
+        Files.createFile(Paths.get(COMPLETE));
+    }
+
+    // A chain of `depth` commits over HISTORY_FILES small files, each commit
+    // rewriting one of them
+    static void history(int depth) throws IOException {
+        String description = "history " + depth;
+        if (reuse(description)) {
+            return;
+        }
+        Services services = init(description);
+        Random random = new Random(depth);
+        for (int i = 0; i < HISTORY_FILES; i++) {
+            writeAged(historyFile(i), text(random, 512));
+        }
+        quietly(() -> {
+            services.indexService().handleAdd(".");
+            services.commitService().handleCommit("commit 0");
+            for (int i = 1; i < depth; i++) {
+                Path file = historyFile(random.nextInt(HISTORY_FILES));
+                writeAged(file, text(random, 512));
+                services.indexService().handleAdd(file.toString());
+                services.commitService().handleCommit("commit " + i);
+            }
+        });
+        Files.createFile(Paths.get(COMPLETE));
+    }
+
+    static Path workingFile(int i) {
+        return Paths.get("d" + (i / FILES_PER_DIRECTORY), "f" + i + ".txt");
+    }
+
+    static Path historyFile(int i) {
+        return Paths.get("h" + (i % 5), "f" + i + ".txt");
+    }
+
+    // Runs `action` with System.out discarded; the services print as they go
+    static void quietly(IOAction action) throws IOException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            action.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    @FunctionalInterface
+    interface IOAction {
+        void run() throws IOException;
+    }
+
+    private static boolean reuse(String description) throws IOException {
+        Path marker = Paths.get(MARKER);
+        return Files.exists(Paths.get(COMPLETE)) && Files.exists(marker)
+                && Files.readString(marker).equals(description);
+    }
+
+    private static Services init(String description) throws IOException {
+        Path root = Paths.get("").toAbsolutePath();
+        try (Stream<Path> entries = Files.list(root)) {
+            if (!Files.exists(root.resolve(MARKER)) && entries.findAny().isPresent()) {
+                throw new IllegalStateException("Refusing to build a benchmark repository in " + root
+                        + ": it isn't empty. Run the benchmarks with `gradlew jmh`.");
+            }
+        }
+        try (Stream<Path> entries = Files.walk(root)) {
+            for (Path path : entries.sorted(Comparator.reverseOrder()).toList()) {
+                if (!path.equals(root)) {
+                    Files.delete(path);
+                }
+            }
+        }
+        // Written first, so an interrupted build is still ours to wipe
+        writeAged(root.resolve(MARKER), description);
+        Services services = new Services();
+        quietly(() -> services.repositoryInitService().init());
+        return services;
+    }
+
+    private static void writeAged(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(AGE_SECONDS)));
+    }
+
+    // Lines of lowercase words, about `size` bytes in all
+    private static String text(Random random, int size) {
+        StringBuilder text = new StringBuilder(size + 80);
+        while (text.length() < size) {
+            int words = 4 + random.nextInt(8);
+            for (int w = 0; w < words; w++) {
+                int letters = 2 + random.nextInt(8);
+                for (int l = 0; l < letters; l++) {
+                    text.append((char) ('a' + random.nextInt(26)));
+                }
+                text.append(w + 1 < words ? ' ' : '\n');
+            }
+        }
+        return text.toString();
+    }
+}
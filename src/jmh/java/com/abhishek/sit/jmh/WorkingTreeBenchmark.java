@@ -0,0 +1,80 @@
+package com.abhishek.sit.jmh;
+
+import com.abhishek.sit.controller.Services;
+import com.abhishek.sit.diff.DiffFormat;
+import com.abhishek.sit.model.IndexEntry;
+import com.abhishek.sit.util.SitIgnore;
+import com.abhishek.sit.util.TreeScanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// What `status`, `diff` and `add` spend their time on, over a committed tree
+// of `fileCount` files of `fileSize` bytes with one file in a hundred changed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkingTreeBenchmark {
+
+    @Param({"1000", "10000"})
+    public int fileCount;
+
+    @Param({"1024", "16384"})
+    public int fileSize;
+
+    private final int jobs = Runtime.getRuntime().availableProcessors();
+    private Services services;
+    private Map<String, IndexEntry> indexEntries;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        SyntheticRepository.workingTree(fileCount, fileSize);
+        services = new Services();
+        indexEntries = services.indexService().loadIndexEntries();
+        // status and diff print their results
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public long scan() throws IOException {
+        LongAdder files = new LongAdder();
+        TreeScanner.scan(Paths.get("."), SitIgnore.forWorkingTree(), jobs, (relPath, path, stat) -> files.increment());
+        return files.sum();
+    }
+
+    @Benchmark
+    public Map<String, String> loadIndex() throws IOException {
+        return services.indexService().loadIndex();
+    }
+
+    @Benchmark
+    public void saveIndex() throws IOException {
+        services.indexService().saveIndexEntries(indexEntries);
+    }
+
+    @Benchmark
+    public void status() {
+        services.statusService().handleStatus();
+    }
+
+    @Benchmark
+    public void diff() {
+        services.diffService().handleDiff(DiffFormat.PATCH, 3, jobs);
+    }
+}
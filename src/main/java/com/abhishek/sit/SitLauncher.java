@@ -0,0 +1,21 @@
+package com.abhishek.sit;
+
+import com.abhishek.sit.controller.CommandController;
+import com.abhishek.sit.controller.Services;
+
+// Entry point of the `cli` jar: runs a command without starting Spring. The
+// services are plain constructor-injected classes, so they can be built by hand,
+// and Services only builds the ones the command actually uses. Spring isn't
+// even on the classpath of that jar; its annotations are simply never loaded.
+public class SitLauncher {
+
+    public static void main(String[] args) {
+        CommandController commandController = new CommandController(new Services());
+        if (args.length > 0) {
+            commandController.handleCommand(args);
+        } else {
+            commandController.runInteractive();
+        }
+        System.out.flush();
+    }
+}
@@ -1,21 +1,34 @@
 package com.abhishek.sit.controller;
 
+import com.abhishek.sit.diff.DiffFormat;
+import com.abhishek.sit.diff.UnifiedDiff;
 import com.abhishek.sit.service.*;
+import com.abhishek.sit.util.Trace;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 @Service
 public class CommandController {
 
-    private final RepositoryInitService repositoryInitService;
-    private final StatusService statusService;
-    private final CommitService commitService;
-    private final LogService logService;
-    private final IndexService indexService;
-    private final BranchService branchService;
-    private final CheckoutService checkoutService;
-    private final DiffService diffService;
-    private final MergeService mergeService;
+    // Unreachable objects younger than this survive gc --prune, so a concurrent
+    // add or commit never loses what it has written but not yet linked in
+    private static final Duration DEFAULT_PRUNE_EXPIRE = Duration.ofDays(14);
+    private static final Pattern EXPIRE_PATTERN =
+            Pattern.compile("(\\d+)[.]?(s|m|h|d|w|second|minute|hour|day|week)s?(?:[.]ago)?");
+
+    private final Services services;
 
     @Autowired
     public CommandController(RepositoryInitService repositoryInitService,
@@ -26,23 +39,51 @@ public class CommandController {
             BranchService branchService,
             CheckoutService checkoutService,
             DiffService diffService,
-            MergeService mergeService) {
-        this.repositoryInitService = repositoryInitService;
-        this.statusService = statusService;
-        this.commitService = commitService;
-        this.logService = logService;
-        this.indexService = indexService;
-        this.branchService = branchService;
-        this.checkoutService = checkoutService;
-        this.diffService = diffService;
-        this.mergeService = mergeService;
+            MergeService mergeService,
+            MaintenanceService maintenanceService,
+            DaemonService daemonService,
+            ReachabilityService reachabilityService) {
+        this(new Services(repositoryInitService, statusService, commitService, logService, indexService,
+                branchService, checkoutService, diffService, mergeService, maintenanceService, daemonService,
+                reachabilityService));
+    }
+
+    // Used by the fast launcher, which builds services on demand
+    public CommandController(Services services) {
+        this.services = services;
     }
 
     public void handleCommand(String[] args) {
-        if (args.length == 0) {
+        // --perf, anywhere before a "--", reports where the command spent its time
+        List<String> argv = new ArrayList<>(args.length);
+        boolean perf = false;
+        boolean pathsOnly = false;
+        for (String arg : args) {
+            if (!pathsOnly && "--perf".equals(arg)) {
+                perf = true;
+                continue;
+            }
+            pathsOnly |= "--".equals(arg);
+            argv.add(arg);
+        }
+        if (argv.isEmpty()) {
             return;
         }
 
+        // The daemon runs until it's stopped, so there's no end to report at
+        if (argv.get(0).equals("daemon")) {
+            dispatch(argv.toArray(new String[0]));
+            return;
+        }
+        Trace.begin(argv, perf);
+        try {
+            dispatch(argv.toArray(new String[0]));
+        } finally {
+            Trace.end();
+        }
+    }
+
+    private void dispatch(String[] args) {
         String command = args[0];
 
         switch (command) {
@@ -53,22 +94,16 @@ public class CommandController {
                 printVersion();
                 break;
             case "init":
-                repositoryInitService.init();
+                services.repositoryInitService().init();
                 break;
             case "status":
-                statusService.handleStatus();
+                services.statusService().handleStatus();
                 break;
             case "add":
-                if (args.length < 2) {
-                    System.out.println("Nothing specified, nothing added.");
-                } else {
-                    indexService.handleAdd(args[1]);
-                }
+                handleAdd(args);
                 break;
             case "log":
-                // Basic flag support
-                boolean oneline = args.length > 1 && "--oneline".equals(args[1]);
-                logService.handleLog(oneline);
+                handleLog(args);
                 break;
             case "commit":
                 String message = null;
@@ -81,33 +116,41 @@ public class CommandController {
                 if (message == null) {
                     System.out.println("Error: Commit message required. Usage: sit commit -m <message>");
                 } else {
-                    commitService.handleCommit(message);
+                    services.commitService().handleCommit(message);
                 }
                 break;
             case "branch":
                 if (args.length < 2) {
-                    branchService.handleBranch(null);
+                    services.branchService().handleBranch(null);
                 } else {
-                    branchService.handleBranch(args[1]);
+                    services.branchService().handleBranch(args[1]);
                 }
                 break;
             case "checkout":
-                if (args.length < 2) {
-                    System.out.println("Error: Branch name required.");
-                } else {
-                    checkoutService.handleCheckout(args[1]);
-                }
+                handleCheckout(args);
                 break;
             case "diff":
-                diffService.handleDiff();
+                handleDiff(args);
                 break;
             case "merge":
                 if (args.length < 2) {
                     System.out.println("Error: Branch name required.");
                 } else {
-                    mergeService.handleMerge(args[1]);
+                    services.mergeService().handleMerge(args[1]);
                 }
                 break;
+            case "gc":
+                handleGc(args);
+                break;
+            case "count-objects":
+                services.reachabilityService().handleCountObjects(args.length > 1 ? args[1] : null);
+                break;
+            case "migrate-objects":
+                services.maintenanceService().handleMigrateObjects();
+                break;
+            case "daemon":
+                services.daemonService().handleDaemon(args.length > 1 && "--stop".equals(args[1]));
+                break;
             default:
                 System.out.println("Unknown command: " + command);
                 printHelp();
@@ -115,22 +158,290 @@ public class CommandController {
         }
     }
 
+    public void runInteractive() {
+        Scanner scanner = new Scanner(System.in);
+        System.out.println("Sit CLI (Interactive Mode) - Type 'exit' to quit");
+
+        while (true) {
+            System.out.print("sit> ");
+            if (!scanner.hasNextLine())
+                break;
+            String line = scanner.nextLine().trim();
+
+            if (line.isEmpty())
+                continue;
+            if ("exit".equalsIgnoreCase(line) || "quit".equalsIgnoreCase(line))
+                break;
+
+            // Simple splitting by quotes is hard, for now simple split by space
+            // Enhanced splitting to handle quotes:
+            List<String> tokens = new ArrayList<>();
+            java.util.regex.Matcher m = java.util.regex.Pattern.compile("([^\"]\\S*|\".+?\")\\s*").matcher(line);
+            while (m.find()) {
+                tokens.add(m.group(1).replace("\"", ""));
+            }
+
+            handleCommand(tokens.toArray(new String[0]));
+        }
+    }
+
+    private void handleCheckout(String[] args) {
+        // sit checkout [-j <n> | --jobs <n> | --jobs=<n>] <branch>
+        int jobs = Runtime.getRuntime().availableProcessors();
+        String branch = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if (("--jobs".equals(arg) || "-j".equals(arg)) && i + 1 < args.length) {
+                    jobs = Integer.parseInt(args[++i]);
+                } else if (arg.startsWith("--jobs=")) {
+                    jobs = Integer.parseInt(arg.substring(7));
+                } else {
+                    branch = arg;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Error: --jobs expects a number.");
+                return;
+            }
+        }
+
+        if (branch == null) {
+            System.out.println("Error: Branch name required.");
+        } else if (jobs < 1) {
+            System.out.println("Error: --jobs must be at least 1.");
+        } else {
+            services.checkoutService().handleCheckout(branch, jobs);
+        }
+    }
+
+    private void handleLog(String[] args) {
+        // sit log [--oneline] [-n <count> | -<count> | --max-count=<count>] [--since=<date>] [--] [<path>...]
+        boolean oneline = false;
+        int maxCount = -1;
+        Instant since = null;
+        List<String> paths = new ArrayList<>();
+        boolean pathsOnly = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if (pathsOnly || !arg.startsWith("-")) {
+                    paths.add(normalizePath(arg));
+                } else if ("--".equals(arg)) {
+                    pathsOnly = true;
+                } else if ("--oneline".equals(arg)) {
+                    oneline = true;
+                } else if (("-n".equals(arg) || "--max-count".equals(arg)) && i + 1 < args.length) {
+                    maxCount = Integer.parseInt(args[++i]);
+                } else if (arg.startsWith("--max-count=")) {
+                    maxCount = Integer.parseInt(arg.substring(12));
+                } else if (arg.matches("-\\d+")) {
+                    maxCount = Integer.parseInt(arg.substring(1));
+                } else if ("--since".equals(arg) && i + 1 < args.length) {
+                    since = parseSince(args[++i]);
+                } else if (arg.startsWith("--since=")) {
+                    since = parseSince(arg.substring(8));
+                } else {
+                    System.out.println("Error: Unknown log option '" + arg + "'.");
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Error: -n expects a number.");
+                return;
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
+                return;
+            }
+        }
+        if (paths.contains("")) {
+            paths.clear(); // "." is the whole tree: no filter at all
+        }
+        services.logService().handleLog(oneline, maxCount, since, paths);
+    }
+
+    // Repository-relative, '/'-separated, without "./" or a trailing '/';
+    // "" for the root
+    private static String normalizePath(String path) {
+        String normalized = path.replace('\\', '/');
+        while (normalized.startsWith("./")) {
+            normalized = normalized.substring(2);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return ".".equals(normalized) ? "" : normalized;
+    }
+
+    // An age ("2.weeks.ago", "3.days") or a date ("2024-05-01", "2024-05-01T09:30")
+    static Instant parseSince(String since) {
+        if (EXPIRE_PATTERN.matcher(since).matches()) {
+            return Instant.now().minus(parseExpire(since));
+        }
+        try {
+            if (since.length() == 10) {
+                return LocalDate.parse(since).atStartOfDay(ZoneId.systemDefault()).toInstant();
+            }
+            return LocalDateTime.parse(since.replace(' ', 'T')).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid --since date '" + since + "'.");
+        }
+    }
+
+    private void handleGc(String[] args) {
+        // sit gc [--prune[=<expire>]] [--dry-run | -n] [-j <n> | --jobs <n> | --jobs=<n>]
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Duration pruneExpire = null;
+        boolean dryRun = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if ("--prune".equals(arg)) {
+                    pruneExpire = DEFAULT_PRUNE_EXPIRE;
+                } else if (arg.startsWith("--prune=")) {
+                    pruneExpire = parseExpire(arg.substring(8));
+                } else if ("--dry-run".equals(arg) || "-n".equals(arg)) {
+                    dryRun = true;
+                } else if (("--jobs".equals(arg) || "-j".equals(arg)) && i + 1 < args.length) {
+                    jobs = Integer.parseInt(args[++i]);
+                } else if (arg.startsWith("--jobs=")) {
+                    jobs = Integer.parseInt(arg.substring(7));
+                } else {
+                    System.out.println("Error: Unknown gc option '" + arg + "'.");
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Error: --jobs expects a number.");
+                return;
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
+                return;
+            }
+        }
+
+        if (jobs < 1) {
+            System.out.println("Error: --jobs must be at least 1.");
+            return;
+        }
+        if (dryRun && pruneExpire == null) {
+            // Nothing but the prune report is worth a dry run
+            pruneExpire = DEFAULT_PRUNE_EXPIRE;
+        }
+        services.maintenanceService().handleGc(pruneExpire, dryRun, jobs);
+    }
+
+    // "now", or an age such as "2.weeks.ago", "3.days", "12h"
+    static Duration parseExpire(String expire) {
+        if ("now".equals(expire)) {
+            return Duration.ZERO;
+        }
+        Matcher matcher = EXPIRE_PATTERN.matcher(expire);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid --prune expiry '" + expire + "'.");
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        return switch (matcher.group(2)) {
+            case "s", "second" -> Duration.ofSeconds(amount);
+            case "m", "minute" -> Duration.ofMinutes(amount);
+            case "h", "hour" -> Duration.ofHours(amount);
+            case "d", "day" -> Duration.ofDays(amount);
+            default -> Duration.ofDays(amount * 7);
+        };
+    }
+
+    private void handleAdd(String[] args) {
+        // sit add [-j <n> | --jobs <n> | --jobs=<n>] <path>
+        int jobs = Runtime.getRuntime().availableProcessors();
+        String path = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if (("--jobs".equals(arg) || "-j".equals(arg)) && i + 1 < args.length) {
+                    jobs = Integer.parseInt(args[++i]);
+                } else if (arg.startsWith("--jobs=")) {
+                    jobs = Integer.parseInt(arg.substring(7));
+                } else {
+                    path = arg;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Error: --jobs expects a number.");
+                return;
+            }
+        }
+
+        if (path == null) {
+            System.out.println("Nothing specified, nothing added.");
+        } else if (jobs < 1) {
+            System.out.println("Error: --jobs must be at least 1.");
+        } else {
+            services.indexService().handleAdd(path, jobs);
+        }
+    }
+
+    private void handleDiff(String[] args) {
+        // sit diff [-U<n> | --unified=<n>] [--stat | --numstat | --name-only] [-j <n> | --jobs <n>]
+        DiffFormat format = DiffFormat.PATCH;
+        int context = UnifiedDiff.DEFAULT_CONTEXT;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if (arg.startsWith("-U")) {
+                    context = Integer.parseInt(arg.length() > 2 ? arg.substring(2) : args[++i]);
+                } else if (arg.startsWith("--unified=")) {
+                    context = Integer.parseInt(arg.substring(10));
+                } else if ("--stat".equals(arg)) {
+                    format = DiffFormat.STAT;
+                } else if ("--numstat".equals(arg)) {
+                    format = DiffFormat.NUMSTAT;
+                } else if ("--name-only".equals(arg)) {
+                    format = DiffFormat.NAME_ONLY;
+                } else if (("--jobs".equals(arg) || "-j".equals(arg)) && i + 1 < args.length) {
+                    jobs = Integer.parseInt(args[++i]);
+                } else if (arg.startsWith("--jobs=")) {
+                    jobs = Integer.parseInt(arg.substring(7));
+                } else {
+                    System.out.println("Error: unknown diff option " + arg);
+                    return;
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                System.out.println("Error: " + arg + " expects a number.");
+                return;
+            }
+        }
+
+        if (context < 0) {
+            System.out.println("Error: -U must not be negative.");
+        } else if (jobs < 1) {
+            System.out.println("Error: --jobs must be at least 1.");
+        } else {
+            services.diffService().handleDiff(format, context, jobs);
+        }
+    }
+
     private void printHelp() {
         System.out.println("Sit CLI - Version 0.0.1+SNAPSHOT");
-        System.out.println("Usage: sit <command> [<args>]");
+        System.out.println("Usage: sit [--perf] <command> [<args>]");
         System.out.println();
         System.out.println("Available commands:");
         System.out.println("  help       Show this help message");
         System.out.println("  version    Show version information");
         System.out.println("  init       Initialize a new Sit repository");
-        System.out.println("  add        Add file contents to the index");
+        System.out.println("  add        Add file contents to the index (--jobs <n> to set parallelism)");
         System.out.println("  status     Show the working tree status");
         System.out.println("  commit     Record changes to the repository");
         System.out.println("  branch     List or create branches");
-        System.out.println("  checkout   Switch branches or restore working tree files");
-        System.out.println("  merge      Join two development histories together (Fast-Forward only)");
-        System.out.println("  diff       Show changes between working tree and index");
-        System.out.println("  log        Show commit history");
+        System.out.println("  checkout   Switch branches or restore working tree files (--jobs <n> to set parallelism)");
+        System.out.println("  merge      Join two development histories together (fast-forward or three-way)");
+        System.out.println("  diff       Show changes between working tree and index (-U<n>, --stat, --numstat, --name-only)");
+        System.out.println("  log        Show commit history (--oneline, -n <count>, --since=<date>, -- <path>...)");
+        System.out.println("  gc         Pack objects into a delta-compressed packfile and write reachability bitmaps");
+        System.out.println("             (--prune[=<age>|now] drops unreachable objects older than <age>, default 2.weeks;");
+        System.out.println("             --dry-run reports what would be pruned)");
+        System.out.println("  count-objects    Count stored and reachable objects, or those in <from>..<to>");
+        System.out.println("  migrate-objects  Convert old flat objects to the compressed layout");
+        System.out.println("  daemon     Watch the working tree to answer status instantly (--stop to end it)");
+        System.out.println();
+        System.out.println("--perf prints a per-phase timing breakdown on stderr after the command;");
+        System.out.println(Trace.TRACE2_ENV + "=<file or dir> appends machine-readable JSON trace events there.");
         System.out.println();
     }
 
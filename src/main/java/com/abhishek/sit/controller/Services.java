@@ -0,0 +1,184 @@
+package com.abhishek.sit.controller;
+
+import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.service.*;
+
+// The services CommandController dispatches to. Under Spring every one of them
+// is handed in ready-made; the fast launcher instead builds each one (and only
+// its own dependencies) the first time a command asks for it, so `sit status`
+// never constructs, or even loads, the merge or gc code.
+public class Services {
+
+    private SitRepository sitRepository;
+    private TreeService treeService;
+    private CommitGraphService commitGraphService;
+    private ChangedPathService changedPathService;
+    private DaemonClient daemonClient;
+
+    private RepositoryInitService repositoryInitService;
+    private StatusService statusService;
+    private CommitService commitService;
+    private LogService logService;
+    private IndexService indexService;
+    private BranchService branchService;
+    private CheckoutService checkoutService;
+    private DiffService diffService;
+    private MergeService mergeService;
+    private MaintenanceService maintenanceService;
+    private DaemonService daemonService;
+    private ReachabilityService reachabilityService;
+
+    // Lazy: everything is constructed on first use
+    public Services() {
+    }
+
+    // Eager: the Spring context has already wired everything
+    public Services(RepositoryInitService repositoryInitService,
+            StatusService statusService,
+            CommitService commitService,
+            LogService logService,
+            IndexService indexService,
+            BranchService branchService,
+            CheckoutService checkoutService,
+            DiffService diffService,
+            MergeService mergeService,
+            MaintenanceService maintenanceService,
+            DaemonService daemonService,
+            ReachabilityService reachabilityService) {
+        this.repositoryInitService = repositoryInitService;
+        this.statusService = statusService;
+        this.commitService = commitService;
+        this.logService = logService;
+        this.indexService = indexService;
+        this.branchService = branchService;
+        this.checkoutService = checkoutService;
+        this.diffService = diffService;
+        this.mergeService = mergeService;
+        this.maintenanceService = maintenanceService;
+        this.daemonService = daemonService;
+        this.reachabilityService = reachabilityService;
+    }
+
+    public RepositoryInitService repositoryInitService() {
+        if (repositoryInitService == null) {
+            repositoryInitService = new RepositoryInitService();
+        }
+        return repositoryInitService;
+    }
+
+    public StatusService statusService() {
+        if (statusService == null) {
+            statusService = new StatusService(sitRepository(), indexService(), treeService(), daemonClient());
+        }
+        return statusService;
+    }
+
+    public CommitService commitService() {
+        if (commitService == null) {
+            commitService = new CommitService(sitRepository(), indexService(), treeService(), commitGraphService(),
+                    changedPathService());
+        }
+        return commitService;
+    }
+
+    public LogService logService() {
+        if (logService == null) {
+            logService = new LogService(sitRepository(), commitGraphService(), changedPathService());
+        }
+        return logService;
+    }
+
+    public IndexService indexService() {
+        if (indexService == null) {
+            indexService = new IndexService(sitRepository());
+        }
+        return indexService;
+    }
+
+    public BranchService branchService() {
+        if (branchService == null) {
+            branchService = new BranchService(sitRepository());
+        }
+        return branchService;
+    }
+
+    public CheckoutService checkoutService() {
+        if (checkoutService == null) {
+            checkoutService = new CheckoutService(sitRepository(), indexService(), treeService());
+        }
+        return checkoutService;
+    }
+
+    public DiffService diffService() {
+        if (diffService == null) {
+            diffService = new DiffService(sitRepository(), indexService(), daemonClient());
+        }
+        return diffService;
+    }
+
+    public MergeService mergeService() {
+        if (mergeService == null) {
+            mergeService = new MergeService(sitRepository(), indexService(), treeService(), checkoutService(),
+                    commitService(), commitGraphService());
+        }
+        return mergeService;
+    }
+
+    public MaintenanceService maintenanceService() {
+        if (maintenanceService == null) {
+            maintenanceService = new MaintenanceService(sitRepository(), indexService(), treeService(),
+                    commitGraphService(), reachabilityService(), changedPathService());
+        }
+        return maintenanceService;
+    }
+
+    public DaemonService daemonService() {
+        if (daemonService == null) {
+            daemonService = new DaemonService(sitRepository(), indexService(), statusService(), daemonClient());
+        }
+        return daemonService;
+    }
+
+    public ReachabilityService reachabilityService() {
+        if (reachabilityService == null) {
+            reachabilityService = new ReachabilityService(sitRepository(), indexService(), treeService(),
+                    commitGraphService());
+        }
+        return reachabilityService;
+    }
+
+    private SitRepository sitRepository() {
+        if (sitRepository == null) {
+            sitRepository = new SitRepository();
+        }
+        return sitRepository;
+    }
+
+    private TreeService treeService() {
+        if (treeService == null) {
+            treeService = new TreeService(sitRepository());
+        }
+        return treeService;
+    }
+
+    private CommitGraphService commitGraphService() {
+        if (commitGraphService == null) {
+            commitGraphService = new CommitGraphService(sitRepository());
+        }
+        return commitGraphService;
+    }
+
+    private ChangedPathService changedPathService() {
+        if (changedPathService == null) {
+            changedPathService = new ChangedPathService(sitRepository(), treeService(), commitGraphService());
+        }
+        return changedPathService;
+    }
+
+    private DaemonClient daemonClient() {
+        if (daemonClient == null) {
+            daemonClient = new DaemonClient();
+        }
+        return daemonClient;
+    }
+}
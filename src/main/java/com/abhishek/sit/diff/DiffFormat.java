@@ -0,0 +1,13 @@
+package com.abhishek.sit.diff;
+
+// What `sit diff` prints for each changed file
+public enum DiffFormat {
+    // Unified diff hunks
+    PATCH,
+    // "path | N ++--" bars and a summary line
+    STAT,
+    // "added<TAB>removed<TAB>path", for scripts
+    NUMSTAT,
+    // Just the paths that changed
+    NAME_ONLY
+}
@@ -0,0 +1,23 @@
+package com.abhishek.sit.diff;
+
+// One changed region: lines [beginA, endA) of the old side were replaced by
+// lines [beginB, endB) of the new side. An empty old range is a pure insert,
+// an empty new range a pure delete.
+public record Edit(int beginA, int endA, int beginB, int endB) {
+
+    public boolean isInsert() {
+        return beginA == endA;
+    }
+
+    public boolean isDelete() {
+        return beginB == endB;
+    }
+
+    public int linesRemoved() {
+        return endA - beginA;
+    }
+
+    public int linesAdded() {
+        return endB - beginB;
+    }
+}
@@ -0,0 +1,172 @@
+package com.abhishek.sit.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Three-way line merge. Both sides are diffed against the base; an edit that
+// only one side made is taken as is, and edits from the two sides whose base
+// ranges overlap or touch are combined into one region. Such a region resolves
+// cleanly when both sides turned it into the same text, and otherwise becomes
+// a conflict between <<<<<<< / ======= / >>>>>>> markers, like git's default
+// "merge" conflict style.
+//
+// Lines keep their terminators, so a clean merge reproduces the inputs byte
+// for byte, a missing newline at the end of file included.
+public final class Merge3 {
+
+    private static final int MARKER_SIZE = 7;
+
+    private Merge3() {
+    }
+
+    public record Result(String text, int conflicts) {
+        public boolean isClean() {
+            return conflicts == 0;
+        }
+    }
+
+    public static Result merge(String base, String ours, String theirs, String oursLabel, String theirsLabel) {
+        List<String> o = lines(base);
+        List<String> a = lines(ours);
+        List<String> b = lines(theirs);
+        List<Edit> editsA = slideDown(MyersDiff.diff(o, a), o, a);
+        List<Edit> editsB = slideDown(MyersDiff.diff(o, b), o, b);
+
+        StringBuilder out = new StringBuilder(Math.max(ours.length(), theirs.length()));
+        int conflicts = 0;
+        int position = 0;
+        // Offset of each side relative to the base, after the edits consumed so far
+        int deltaA = 0;
+        int deltaB = 0;
+        int i = 0;
+        int j = 0;
+        while (i < editsA.size() || j < editsB.size()) {
+            // The region starts at the earliest remaining edit...
+            boolean firstA = j >= editsB.size()
+                    || (i < editsA.size() && editsA.get(i).beginA() <= editsB.get(j).beginA());
+            Edit first = firstA ? editsA.get(i++) : editsB.get(j++);
+            int start = first.beginA();
+            int end = first.endA();
+            int shiftA = firstA ? shift(first) : 0;
+            int shiftB = firstA ? 0 : shift(first);
+            boolean touchedA = firstA;
+            boolean touchedB = !firstA;
+
+            // ...and grows while an edit from either side overlaps or touches it
+            while (true) {
+                if (i < editsA.size() && editsA.get(i).beginA() <= end) {
+                    Edit edit = editsA.get(i++);
+                    end = Math.max(end, edit.endA());
+                    shiftA += shift(edit);
+                    touchedA = true;
+                } else if (j < editsB.size() && editsB.get(j).beginA() <= end) {
+                    Edit edit = editsB.get(j++);
+                    end = Math.max(end, edit.endA());
+                    shiftB += shift(edit);
+                    touchedB = true;
+                } else {
+                    break;
+                }
+            }
+
+            append(out, o, position, start);
+            List<String> sideA = a.subList(start + deltaA, end + deltaA + shiftA);
+            List<String> sideB = b.subList(start + deltaB, end + deltaB + shiftB);
+            deltaA += shiftA;
+            deltaB += shiftB;
+            position = end;
+
+            if (!touchedB) {
+                append(out, sideA, 0, sideA.size());
+            } else if (!touchedA || sideA.equals(sideB)) {
+                append(out, sideB, 0, sideB.size());
+            } else {
+                conflicts++;
+                marker(out, '<', oursLabel);
+                appendTerminated(out, sideA);
+                marker(out, '=', null);
+                appendTerminated(out, sideB);
+                marker(out, '>', theirsLabel);
+            }
+        }
+        append(out, o, position, o.size());
+        return new Result(out.toString(), conflicts);
+    }
+
+    // Splits after every '\n', keeping it with its line
+    static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int k = 0; k < text.length(); k++) {
+            if (text.charAt(k) == '\n') {
+                lines.add(text.substring(start, k + 1));
+                start = k + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    // An insert or delete inside a run of equal lines can sit anywhere in the
+    // run, and the two sides' diffs may well pick different spots for the same
+    // change, which would then be applied twice. Moving every such edit as far
+    // down as it goes (as git does) puts identical changes in identical places.
+    private static List<Edit> slideDown(List<Edit> edits, List<String> a, List<String> b) {
+        List<Edit> slid = new ArrayList<>(edits.size());
+        for (int k = 0; k < edits.size(); k++) {
+            Edit edit = edits.get(k);
+            int limitA = k + 1 < edits.size() ? edits.get(k + 1).beginA() : a.size();
+            int limitB = k + 1 < edits.size() ? edits.get(k + 1).beginB() : b.size();
+            if (edit.isDelete()) {
+                int begin = edit.beginA();
+                int end = edit.endA();
+                while (end < limitA && a.get(begin).equals(a.get(end))) {
+                    begin++;
+                    end++;
+                }
+                int moved = begin - edit.beginA();
+                edit = new Edit(begin, end, edit.beginB() + moved, edit.endB() + moved);
+            } else if (edit.isInsert()) {
+                int begin = edit.beginB();
+                int end = edit.endB();
+                while (end < limitB && b.get(begin).equals(b.get(end))) {
+                    begin++;
+                    end++;
+                }
+                int moved = begin - edit.beginB();
+                edit = new Edit(edit.beginA() + moved, edit.endA() + moved, begin, end);
+            }
+            slid.add(edit);
+        }
+        return slid;
+    }
+
+    private static int shift(Edit edit) {
+        return edit.linesAdded() - edit.linesRemoved();
+    }
+
+    private static void append(StringBuilder out, List<String> lines, int from, int to) {
+        for (int k = from; k < to; k++) {
+            out.append(lines.get(k));
+        }
+    }
+
+    // Inside a conflict every side has to end with a newline, or the next
+    // marker would be glued onto its last line
+    private static void appendTerminated(StringBuilder out, List<String> lines) {
+        append(out, lines, 0, lines.size());
+        if (!lines.isEmpty() && !lines.get(lines.size() - 1).endsWith("\n")) {
+            out.append('\n');
+        }
+    }
+
+    private static void marker(StringBuilder out, char c, String label) {
+        out.append(String.valueOf(c).repeat(MARKER_SIZE));
+        if (label != null) {
+            out.append(' ').append(label);
+        }
+        out.append('\n');
+    }
+}
@@ -0,0 +1,295 @@
+package com.abhishek.sit.diff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Myers' O(ND) difference algorithm in its linear-space form: each range is
+// split at the middle snake of its shortest edit script (found by running the
+// forward and backward searches until they meet) and the two halves are
+// solved the same way. Memory is O(N + M) however different the inputs are.
+//
+// Before searching, the common prefix and suffix are stripped, lines are
+// interned to ints and lines that only occur on one side are dropped (they
+// can never be part of a match). Ranges are worked off an explicit stack so
+// long files can't overflow the call stack. Like git, a search that runs past
+// COST_LIMIT edits gives up on minimality and splits at the furthest point
+// reached, which keeps pathological inputs from going quadratic.
+public final class MyersDiff {
+
+    private static final int MIN_COST_LIMIT = 256;
+
+    private final int[] a;
+    private final int[] b;
+    private final int[] forward;
+    private final int[] backward;
+    private final int costLimit;
+    private final List<Edit> edits = new ArrayList<>();
+
+    private MyersDiff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        int max = (a.length + b.length + 1) / 2 + 1;
+        this.forward = new int[2 * max + 1];
+        this.backward = new int[2 * max + 1];
+        this.costLimit = Math.max(MIN_COST_LIMIT, (int) Math.sqrt(a.length + b.length));
+    }
+
+    // Edits turning `original` into `revised`, in order
+    public static List<Edit> diff(List<String> original, List<String> revised) {
+        int n = original.size();
+        int m = revised.size();
+
+        int prefix = 0;
+        while (prefix < n && prefix < m && original.get(prefix).equals(revised.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && original.get(n - 1 - suffix).equals(revised.get(m - 1 - suffix))) {
+            suffix++;
+        }
+
+        // Only the differing middle is interned and searched
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = intern(original.subList(prefix, n - suffix), ids);
+        int[] b = intern(revised.subList(prefix, m - suffix), ids);
+
+        boolean[] inA = new boolean[ids.size()];
+        boolean[] inB = new boolean[ids.size()];
+        for (int id : a) {
+            inA[id] = true;
+        }
+        for (int id : b) {
+            inB[id] = true;
+        }
+        int[] keptA = kept(a, inB);
+        int[] keptB = kept(b, inA);
+
+        MyersDiff myers = new MyersDiff(select(a, keptA), select(b, keptB));
+        myers.run();
+
+        // The gaps between the edits found are matched lines; map those back
+        // to real line numbers and emit whatever lies between them.
+        List<Edit> result = new ArrayList<>();
+        int lastA = 0;
+        int lastB = 0;
+        int i = 0;
+        int j = 0;
+        for (int e = 0; e <= myers.edits.size(); e++) {
+            int matchEnd = e < myers.edits.size() ? myers.edits.get(e).beginA() : keptA.length;
+            for (; i < matchEnd; i++, j++) {
+                int lineA = keptA[i];
+                int lineB = keptB[j];
+                if (lineA > lastA || lineB > lastB) {
+                    result.add(new Edit(prefix + lastA, prefix + lineA, prefix + lastB, prefix + lineB));
+                }
+                lastA = lineA + 1;
+                lastB = lineB + 1;
+            }
+            if (e < myers.edits.size()) {
+                i = myers.edits.get(e).endA();
+                j = myers.edits.get(e).endB();
+            }
+        }
+        if (lastA < a.length || lastB < b.length) {
+            result.add(new Edit(prefix + lastA, prefix + a.length, prefix + lastB, prefix + b.length));
+        }
+        return result;
+    }
+
+    // Positions of the lines whose id also occurs on the other side
+    private static int[] kept(int[] lines, boolean[] other) {
+        int count = 0;
+        for (int id : lines) {
+            if (other[id]) {
+                count++;
+            }
+        }
+        int[] positions = new int[count];
+        int k = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (other[lines[i]]) {
+                positions[k++] = i;
+            }
+        }
+        return positions;
+    }
+
+    private static int[] select(int[] lines, int[] positions) {
+        int[] result = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            result[i] = lines[positions[i]];
+        }
+        return result;
+    }
+
+    private static int[] intern(List<String> lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        int i = 0;
+        for (String line : lines) {
+            Integer id = ids.get(line);
+            if (id == null) {
+                id = ids.size();
+                ids.put(line, id);
+            }
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    private void run() {
+        // Ranges still to solve as {aLo, aHi, bLo, bHi}. The right half is
+        // pushed first so edits come out left to right.
+        Deque<int[]> pending = new ArrayDeque<>();
+        pending.push(new int[]{0, a.length, 0, b.length});
+
+        while (!pending.isEmpty()) {
+            int[] range = pending.pop();
+            int aLo = range[0], aHi = range[1], bLo = range[2], bHi = range[3];
+
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo++;
+                bLo++;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi--;
+                bHi--;
+            }
+
+            if (aLo == aHi || bLo == bHi) {
+                if (aLo < aHi || bLo < bHi) {
+                    add(new Edit(aLo, aHi, bLo, bHi));
+                }
+                continue;
+            }
+
+            // Both sides are non-empty and differ at both ends, so D >= 2 and
+            // each half is strictly smaller.
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            pending.push(new int[]{snake[2], aHi, snake[3], bHi});
+            pending.push(new int[]{aLo, snake[0], bLo, snake[1]});
+        }
+    }
+
+    // Returns the middle snake as {xStart, yStart, xEnd, yEnd} in absolute
+    // line numbers. forward[k] holds the furthest x reached on diagonal k = x - y
+    // from the top-left, backward[k] the furthest distance from the bottom-right
+    // on diagonal k of the reversed problem. Past the cost limit the result is
+    // an empty snake at the furthest point either search got to.
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+
+                int reverseK = delta - k;
+                if (odd && reverseK >= -(d - 1) && reverseK <= d - 1
+                        && x + backward[offset + reverseK] >= n) {
+                    return new int[]{aLo + startX, bLo + startY, aLo + x, bLo + y};
+                }
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])) {
+                    x = backward[offset + k + 1];
+                } else {
+                    x = backward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+
+                int forwardK = delta - k;
+                if (!odd && forwardK >= -d && forwardK <= d
+                        && x + forward[offset + forwardK] >= n) {
+                    return new int[]{aHi - x, bHi - y, aHi - startX, bHi - startY};
+                }
+            }
+
+            if (d >= costLimit) {
+                return furthestPoint(d, n, m, offset, aLo, aHi, bLo, bHi);
+            }
+        }
+        throw new IllegalStateException("no middle snake found");
+    }
+
+    // Neither search has reached the end (that would have been an overlap), so
+    // the chosen point is strictly inside the range and both halves shrink.
+    private int[] furthestPoint(int d, int n, int m, int offset, int aLo, int aHi, int bLo, int bHi) {
+        int bestForward = -1;
+        int forwardX = 0;
+        int bestBackward = -1;
+        int backwardX = 0;
+        int bestK = 0;
+        int bestReverseK = 0;
+        for (int k = -d; k <= d; k += 2) {
+            int x = forward[offset + k];
+            int y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > bestForward) {
+                bestForward = x + y;
+                forwardX = x;
+                bestK = k;
+            }
+            x = backward[offset + k];
+            y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > bestBackward) {
+                bestBackward = x + y;
+                backwardX = x;
+                bestReverseK = k;
+            }
+        }
+        if (bestForward >= bestBackward) {
+            int x = aLo + forwardX;
+            int y = bLo + forwardX - bestK;
+            return new int[]{x, y, x, y};
+        }
+        int x = aHi - backwardX;
+        int y = bHi - (backwardX - bestReverseK);
+        return new int[]{x, y, x, y};
+    }
+
+    // Appends an edit, joining it with the previous one when they touch (a
+    // delete directly followed by an insert becomes one replace).
+    private void add(Edit edit) {
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.endA() == edit.beginA() && last.endB() == edit.beginB()) {
+                edits.set(edits.size() - 1, new Edit(last.beginA(), edit.endA(), last.beginB(), edit.endB()));
+                return;
+            }
+        }
+        edits.add(edit);
+    }
+}
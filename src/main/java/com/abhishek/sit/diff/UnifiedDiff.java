@@ -0,0 +1,116 @@
+package com.abhishek.sit.diff;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns an edit script into unified diff hunks:
+//
+//   @@ -<start>,<count> +<start>,<count> @@
+//    context line
+//   -removed line
+//   +added line
+//
+// Edits closer together than twice the context are merged into one hunk, as
+// git does. Everything goes to the given writer; callers hand in a buffered
+// one and flush once at the end.
+public final class UnifiedDiff {
+
+    public static final int DEFAULT_CONTEXT = 3;
+
+    private static final String RESET = "\u001B[0m";
+    private static final String BOLD = "\u001B[1m";
+    private static final String RED = "\u001B[31m";
+    private static final String GREEN = "\u001B[32m";
+    private static final String CYAN = "\u001B[36m";
+
+    private final PrintWriter out;
+    private final boolean color;
+
+    public UnifiedDiff(PrintWriter out, boolean color) {
+        this.out = out;
+        this.color = color;
+    }
+
+    // A region of both files: lines [beginA, endA) and [beginB, endB), covering
+    // one or more edits plus their surrounding context
+    public record Hunk(int beginA, int endA, int beginB, int endB, List<Edit> edits) {
+
+        public String header() {
+            return "@@ -" + range(beginA, endA - beginA) + " +" + range(beginB, endB - beginB) + " @@";
+        }
+
+        // 1-based start; an empty range names the line before it, a single
+        // line leaves the count out
+        private static String range(int begin, int count) {
+            if (count == 0) {
+                return begin + ",0";
+            }
+            return count == 1 ? String.valueOf(begin + 1) : (begin + 1) + "," + count;
+        }
+    }
+
+    public static List<Hunk> hunks(List<Edit> edits, int sizeA, int sizeB, int context) {
+        List<Hunk> hunks = new ArrayList<>();
+        int i = 0;
+        while (i < edits.size()) {
+            int j = i;
+            while (j + 1 < edits.size() && edits.get(j + 1).beginA() - edits.get(j).endA() <= 2 * context) {
+                j++;
+            }
+            Edit first = edits.get(i);
+            Edit last = edits.get(j);
+            int lead = Math.min(context, Math.min(first.beginA(), first.beginB()));
+            int trail = Math.min(context, Math.min(sizeA - last.endA(), sizeB - last.endB()));
+            hunks.add(new Hunk(first.beginA() - lead, last.endA() + trail,
+                    first.beginB() - lead, last.endB() + trail, edits.subList(i, j + 1)));
+            i = j + 1;
+        }
+        return hunks;
+    }
+
+    // "diff --git", "---", "+++" and similar per-file lines
+    public void meta(String line) {
+        if (color) {
+            out.print(BOLD);
+            out.print(line);
+            out.println(RESET);
+        } else {
+            out.println(line);
+        }
+    }
+
+    public void write(List<String> a, List<String> b, List<Edit> edits, int context) {
+        for (Hunk hunk : hunks(edits, a.size(), b.size(), context)) {
+            line(CYAN, "", hunk.header());
+            int lineA = hunk.beginA();
+            for (Edit edit : hunk.edits()) {
+                for (; lineA < edit.beginA(); lineA++) {
+                    line(null, " ", a.get(lineA));
+                }
+                for (int k = edit.beginA(); k < edit.endA(); k++) {
+                    line(RED, "-", a.get(k));
+                }
+                for (int k = edit.beginB(); k < edit.endB(); k++) {
+                    line(GREEN, "+", b.get(k));
+                }
+                lineA = edit.endA();
+            }
+            for (; lineA < hunk.endA(); lineA++) {
+                line(null, " ", a.get(lineA));
+            }
+        }
+    }
+
+    private void line(String ansi, String prefix, String text) {
+        if (color && ansi != null) {
+            out.print(ansi);
+            out.print(prefix);
+            out.print(text);
+            out.println(RESET);
+        } else {
+            out.print(prefix);
+            out.println(text);
+        }
+    }
+}
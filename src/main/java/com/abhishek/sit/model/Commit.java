@@ -0,0 +1,20 @@
+package com.abhishek.sit.model;
+
+import java.util.List;
+import java.util.Map;
+
+// A parsed .sit/commits/<id> file. `tree` is null for old flat commits, which
+// carry their path -> blob manifest inline instead (empty for everything else).
+// `date` is kept as written (ISO local date-time).
+public record Commit(String id, String tree, List<String> parents, String author, String date, String message,
+        Map<String, String> manifest) {
+
+    public Commit {
+        parents = List.copyOf(parents);
+        manifest = Map.copyOf(manifest);
+    }
+
+    public String firstParent() {
+        return parents.isEmpty() ? null : parents.get(0);
+    }
+}
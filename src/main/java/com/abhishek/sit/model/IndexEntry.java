@@ -0,0 +1,9 @@
+package com.abhishek.sit.model;
+
+// One staged file: the blob hash plus the stat data seen when it was hashed.
+public record IndexEntry(String hash, FileStat stat) {
+
+    public IndexEntry withStat(FileStat newStat) {
+        return new IndexEntry(hash, newStat);
+    }
+}
@@ -0,0 +1,10 @@
+package com.abhishek.sit.model;
+
+import java.util.Set;
+
+// Result of comparing HEAD, the index and the working tree. `unstaged` holds
+// the tracked paths whose working copy differs from the index (modified or
+// missing), i.e. what "sit diff --name-only" lists.
+public record StatusReport(Set<String> staged, Set<String> modified, Set<String> deleted,
+                           Set<String> untracked, Set<String> unstaged) {
+}
@@ -0,0 +1,115 @@
+package com.abhishek.sit.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+// Bloom filter over the paths a commit changed, sized and hashed like git's
+// changed-path filters: 10 bits per path, 7 probes from two murmur3 hashes
+// (double hashing). "No" is certain, "maybe" is wrong about 1% of the time.
+//
+// A commit that changed nothing gets a single zero byte, which rules out every
+// path; one that changed more than MAX_PATHS gets a single byte of ones, which
+// rules out none, so oversized commits cost nothing and are simply diffed.
+public final class BloomFilter {
+
+    public static final int MAX_PATHS = 512;
+
+    private static final int BITS_PER_PATH = 10;
+    private static final int HASHES = 7;
+    private static final int SEED_1 = 0x293ae76f;
+    private static final int SEED_2 = 0x7e646e2c;
+
+    private final byte[] bits;
+
+    private BloomFilter(byte[] bits) {
+        this.bits = bits;
+    }
+
+    public static BloomFilter of(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return new BloomFilter(new byte[]{(byte) 0xff});
+        }
+        byte[] bits = new byte[Math.max(1, (paths.size() * BITS_PER_PATH + 7) / 8)];
+        for (String path : paths) {
+            byte[] key = path.getBytes(StandardCharsets.UTF_8);
+            int h1 = murmur3(SEED_1, key);
+            int h2 = murmur3(SEED_2, key);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = bitIndex(h1 + i * h2, bits.length);
+                bits[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return new BloomFilter(bits);
+    }
+
+    public static BloomFilter fromBytes(byte[] bits) {
+        return new BloomFilter(bits);
+    }
+
+    public boolean mightContain(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int h1 = murmur3(SEED_1, key);
+        int h2 = murmur3(SEED_2, key);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bitIndex(h1 + i * h2, bits.length);
+            if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] toBytes() {
+        return Arrays.copyOf(bits, bits.length);
+    }
+
+    public int sizeInBytes() {
+        return bits.length;
+    }
+
+    private static int bitIndex(int hash, int bytes) {
+        return (int) (Integer.toUnsignedLong(hash) % (bytes * 8L));
+    }
+
+    // 32-bit murmur3 (x86 variant)
+    static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[i * 4] & 0xff) | (data[i * 4 + 1] & 0xff) << 8
+                    | (data[i * 4 + 2] & 0xff) << 16 | (data[i * 4 + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        int tail = blocks * 4;
+        int remaining = data.length & 3;
+        if (remaining == 3) {
+            k ^= (data[tail + 2] & 0xff) << 16;
+        }
+        if (remaining >= 2) {
+            k ^= (data[tail + 1] & 0xff) << 8;
+        }
+        if (remaining >= 1) {
+            k ^= data[tail] & 0xff;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,185 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+// Changed-path Bloom filters of commits, stored next to the commit-graph and
+// split the same way:
+//
+//   .sit/changed-paths      written by gc, memory-mapped
+//       "SCPF" | version:int | count:int | fanout:256 x int | hashes:count x 20 (sorted)
+//       | ends:count x int | filters | SHA-1 of the above
+//       Filter i is the bytes between ends[i - 1] (0 for the first) and ends[i],
+//       counted from the start of the filters section.
+//
+//   .sit/changed-paths.log  appended to by every commit, loaded into a map
+//       records of hash:20 | length:int | filter:length
+public class ChangedPathFilters {
+
+    public static final String FILTERS_FILE = ".sit/changed-paths";
+    public static final String LOG_FILE = ".sit/changed-paths.log";
+
+    private static final byte[] MAGIC = {'S', 'C', 'P', 'F'};
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 20;
+    private static final int HEADER_SIZE = 12;
+    private static final int FANOUT_SIZE = 256 * 4;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final ByteBuffer base;
+    private final int baseCount;
+    private final Map<String, BloomFilter> appended;
+
+    private ChangedPathFilters(ByteBuffer base, Map<String, BloomFilter> appended) {
+        this.base = base;
+        this.baseCount = base == null ? 0 : base.getInt(8);
+        this.appended = appended;
+    }
+
+    public static ChangedPathFilters load() throws IOException {
+        ByteBuffer base = null;
+        Path filtersPath = Paths.get(FILTERS_FILE);
+        if (Files.exists(filtersPath)) {
+            try (FileChannel channel = FileChannel.open(filtersPath, StandardOpenOption.READ)) {
+                base = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (base.get(i) != MAGIC[i]) {
+                    throw new IOException(FILTERS_FILE + " is corrupt (bad header)");
+                }
+            }
+            if (base.getInt(4) != VERSION) {
+                throw new IOException(FILTERS_FILE + ": unsupported version " + base.getInt(4));
+            }
+        }
+
+        Map<String, BloomFilter> appended = new HashMap<>();
+        Path logPath = Paths.get(LOG_FILE);
+        if (Files.exists(logPath)) {
+            ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(logPath));
+            // A torn final record (crash mid-append) is simply ignored
+            while (log.remaining() >= HASH_SIZE + 4) {
+                byte[] hash = new byte[HASH_SIZE];
+                log.get(hash);
+                int length = log.getInt();
+                if (length < 0 || log.remaining() < length) {
+                    break;
+                }
+                byte[] bits = new byte[length];
+                log.get(bits);
+                appended.put(HEX.formatHex(hash), BloomFilter.fromBytes(bits));
+            }
+        }
+        return new ChangedPathFilters(base, appended);
+    }
+
+    public int size() {
+        return baseCount + appended.size();
+    }
+
+    // Null for commits that have no filter yet
+    public BloomFilter get(String commitId) {
+        BloomFilter filter = appended.get(commitId);
+        if (filter != null || base == null) {
+            return filter;
+        }
+        int position = find(HEX.parseHex(commitId));
+        if (position < 0) {
+            return null;
+        }
+        int ends = HEADER_SIZE + FANOUT_SIZE + baseCount * HASH_SIZE;
+        int data = ends + baseCount * 4;
+        int start = position == 0 ? 0 : base.getInt(ends + (position - 1) * 4);
+        byte[] bits = new byte[base.getInt(ends + position * 4) - start];
+        base.get(data + start, bits);
+        return BloomFilter.fromBytes(bits);
+    }
+
+    public static void append(String commitId, BloomFilter filter) throws IOException {
+        byte[] bits = filter.toBytes();
+        ByteBuffer record = ByteBuffer.allocate(HASH_SIZE + 4 + bits.length);
+        record.put(HEX.parseHex(commitId));
+        record.putInt(bits.length);
+        record.put(bits);
+        try (OutputStream out = Files.newOutputStream(Paths.get(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(record.array());
+        }
+    }
+
+    // Rewrites the mapped file from scratch and empties the log
+    public static void write(Map<String, BloomFilter> filters) throws IOException {
+        List<String> sorted = new ArrayList<>(filters.keySet());
+        Collections.sort(sorted);
+        int[] fanout = new int[256];
+        for (String id : sorted) {
+            fanout[Integer.parseInt(id, 0, 2, 16)]++;
+        }
+        for (int i = 1; i < 256; i++) {
+            fanout[i] += fanout[i - 1];
+        }
+
+        Path filtersPath = Paths.get(FILTERS_FILE);
+        Path tmp = filtersPath.resolveSibling("changed-paths.lock");
+        MessageDigest digest = SitUtil.newSha1();
+        DigestOutputStream digestOut = new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), SitUtil.BUFFER_SIZE), digest);
+        try (DataOutputStream out = new DataOutputStream(digestOut)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (int count : fanout) {
+                out.writeInt(count);
+            }
+            for (String id : sorted) {
+                out.write(HEX.parseHex(id));
+            }
+            int end = 0;
+            for (String id : sorted) {
+                end += filters.get(id).sizeInBytes();
+                out.writeInt(end);
+            }
+            for (String id : sorted) {
+                out.write(filters.get(id).toBytes());
+            }
+            digestOut.on(false);
+            out.write(digest.digest());
+        }
+        try {
+            Files.move(tmp, filtersPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, filtersPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(Paths.get(LOG_FILE));
+    }
+
+    private int find(byte[] hash) {
+        int first = hash[0] & 0xff;
+        int lo = first == 0 ? 0 : base.getInt(HEADER_SIZE + (first - 1) * 4);
+        int hi = base.getInt(HEADER_SIZE + first * 4) - 1;
+        byte[] probe = new byte[HASH_SIZE];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            base.get(HEADER_SIZE + FANOUT_SIZE + mid * HASH_SIZE, probe);
+            int cmp = Arrays.compareUnsigned(probe, hash);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,227 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+// Parents, generation numbers and dates of commits, so history walks don't have
+// to open and parse commit files. Two parts:
+//
+//   .sit/commit-graph      written by gc, memory-mapped
+//       "SCGR" | version:int | count:int | fanout:256 x int | hashes:count x 20 (sorted)
+//       | records:count x (parent1:int | parent2:int | generation:int | date:long)
+//       | SHA-1 of the above
+//       Parents are positions in the same file, -1 for none.
+//
+//   .sit/commit-graph.log  appended to by every commit, loaded into a map
+//       records of hash:20 | parent1:20 | parent2:20 | generation:int | date:long,
+//       an all-zero parent meaning none.
+//
+// Generation numbers: a root commit is 1, any other commit is one more than its
+// highest parent. A commit can only reach commits with a lower generation.
+public class CommitGraph {
+
+    public static final String GRAPH_FILE = ".sit/commit-graph";
+    public static final String LOG_FILE = ".sit/commit-graph.log";
+
+    private static final byte[] MAGIC = {'S', 'C', 'G', 'R'};
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 20;
+    private static final int HEADER_SIZE = 12;
+    private static final int FANOUT_SIZE = 256 * 4;
+    private static final int RECORD_SIZE = 4 + 4 + 4 + 8;
+    private static final int LOG_RECORD_SIZE = 3 * HASH_SIZE + 4 + 8;
+    private static final byte[] NO_PARENT = new byte[HASH_SIZE];
+    private static final HexFormat HEX = HexFormat.of();
+
+    public record Node(String id, List<String> parents, int generation, long date) {
+    }
+
+    private final ByteBuffer base;
+    private final int baseCount;
+    private final Map<String, Node> appended;
+
+    private CommitGraph(ByteBuffer base, Map<String, Node> appended) {
+        this.base = base;
+        this.baseCount = base == null ? 0 : base.getInt(8);
+        this.appended = appended;
+    }
+
+    public static CommitGraph load() throws IOException {
+        ByteBuffer base = null;
+        Path graphPath = Paths.get(GRAPH_FILE);
+        if (Files.exists(graphPath)) {
+            try (FileChannel channel = FileChannel.open(graphPath, StandardOpenOption.READ)) {
+                base = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (base.get(i) != MAGIC[i]) {
+                    throw new IOException(GRAPH_FILE + " is corrupt (bad header)");
+                }
+            }
+            if (base.getInt(4) != VERSION) {
+                throw new IOException(GRAPH_FILE + ": unsupported version " + base.getInt(4));
+            }
+        }
+
+        Map<String, Node> appended = new HashMap<>();
+        Path logPath = Paths.get(LOG_FILE);
+        if (Files.exists(logPath)) {
+            ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(logPath));
+            // A torn final record (crash mid-append) is simply ignored
+            while (log.remaining() >= LOG_RECORD_SIZE) {
+                String id = readHash(log);
+                List<String> parents = new ArrayList<>(2);
+                for (int i = 0; i < 2; i++) {
+                    byte[] parent = new byte[HASH_SIZE];
+                    log.get(parent);
+                    if (!Arrays.equals(parent, NO_PARENT)) {
+                        parents.add(HEX.formatHex(parent));
+                    }
+                }
+                appended.put(id, new Node(id, parents, log.getInt(), log.getLong()));
+            }
+        }
+        return new CommitGraph(base, appended);
+    }
+
+    public int size() {
+        return baseCount + appended.size();
+    }
+
+    // Null for commits the graph doesn't know about yet
+    public Node get(String id) {
+        Node node = appended.get(id);
+        if (node != null || base == null) {
+            return node;
+        }
+        int position = find(HEX.parseHex(id));
+        return position < 0 ? null : nodeAt(position);
+    }
+
+    // Every commit known to the graph
+    public Collection<Node> nodes() {
+        List<Node> nodes = new ArrayList<>(size());
+        for (int i = 0; i < baseCount; i++) {
+            nodes.add(nodeAt(i));
+        }
+        nodes.addAll(appended.values());
+        return nodes;
+    }
+
+    public static void append(Node node) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(LOG_RECORD_SIZE);
+        record.put(HEX.parseHex(node.id()));
+        for (int i = 0; i < 2; i++) {
+            record.put(i < node.parents().size() ? HEX.parseHex(node.parents().get(i)) : NO_PARENT);
+        }
+        record.putInt(node.generation());
+        record.putLong(node.date());
+        try (OutputStream out = Files.newOutputStream(Paths.get(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(record.array());
+        }
+    }
+
+    // Rewrites the mapped file from scratch and empties the log
+    public static void write(Collection<Node> nodes) throws IOException {
+        List<Node> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparing(Node::id));
+        Map<String, Integer> positions = new HashMap<>();
+        int[] fanout = new int[256];
+        for (int i = 0; i < sorted.size(); i++) {
+            positions.put(sorted.get(i).id(), i);
+            fanout[Integer.parseInt(sorted.get(i).id(), 0, 2, 16)]++;
+        }
+        for (int i = 1; i < 256; i++) {
+            fanout[i] += fanout[i - 1];
+        }
+
+        Path graphPath = Paths.get(GRAPH_FILE);
+        Path tmp = graphPath.resolveSibling("commit-graph.lock");
+        MessageDigest digest = SitUtil.newSha1();
+        DigestOutputStream digestOut = new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), SitUtil.BUFFER_SIZE), digest);
+        try (DataOutputStream out = new DataOutputStream(digestOut)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (int count : fanout) {
+                out.writeInt(count);
+            }
+            for (Node node : sorted) {
+                out.write(HEX.parseHex(node.id()));
+            }
+            for (Node node : sorted) {
+                for (int i = 0; i < 2; i++) {
+                    Integer parent = i < node.parents().size() ? positions.get(node.parents().get(i)) : null;
+                    out.writeInt(parent == null ? -1 : parent);
+                }
+                out.writeInt(node.generation());
+                out.writeLong(node.date());
+            }
+            digestOut.on(false);
+            out.write(digest.digest());
+        }
+        try {
+            Files.move(tmp, graphPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, graphPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(Paths.get(LOG_FILE));
+    }
+
+    private Node nodeAt(int position) {
+        String id = hashAt(position);
+        int record = HEADER_SIZE + FANOUT_SIZE + baseCount * HASH_SIZE + position * RECORD_SIZE;
+        List<String> parents = new ArrayList<>(2);
+        for (int i = 0; i < 2; i++) {
+            int parent = base.getInt(record + i * 4);
+            if (parent >= 0) {
+                parents.add(hashAt(parent));
+            }
+        }
+        return new Node(id, parents, base.getInt(record + 8), base.getLong(record + 12));
+    }
+
+    private String hashAt(int position) {
+        byte[] hash = new byte[HASH_SIZE];
+        base.get(HEADER_SIZE + FANOUT_SIZE + position * HASH_SIZE, hash);
+        return HEX.formatHex(hash);
+    }
+
+    private int find(byte[] hash) {
+        int first = hash[0] & 0xff;
+        int lo = first == 0 ? 0 : base.getInt(HEADER_SIZE + (first - 1) * 4);
+        int hi = base.getInt(HEADER_SIZE + first * 4) - 1;
+        byte[] probe = new byte[HASH_SIZE];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            base.get(HEADER_SIZE + FANOUT_SIZE + mid * HASH_SIZE, probe);
+            int cmp = Arrays.compareUnsigned(probe, hash);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static String readHash(ByteBuffer buffer) {
+        byte[] hash = new byte[HASH_SIZE];
+        buffer.get(hash);
+        return HEX.formatHex(hash);
+    }
+}
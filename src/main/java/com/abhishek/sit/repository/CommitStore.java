@@ -0,0 +1,129 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.model.Commit;
+import com.abhishek.sit.util.Trace;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+
+// .sit/commits/<id> files, one per commit:
+//
+//   tree: <hash>          (absent in old flat commits)
+//   parent: <id>          (zero, one or two)
+//   author: <name>
+//   date: <ISO local date-time>
+//   message: <text>
+//   <blank line>
+//   path:hash             (flat commits only; very early ones used "path hash")
+//
+// Every reader goes through here, and parsed commits are kept in an LRU cache
+// bounded by the memory they take. A commit id is the hash of its content, so a
+// cached record can never go stale: branches and HEAD are not cached at all,
+// and the only invalidation needed is deleting a commit (gc --prune).
+public class CommitStore {
+
+    // Plenty for the whole history of a large repository; a flat commit
+    // costs about its manifest, a tree commit a few hundred bytes
+    private static final long CACHE_BYTES = 8L * 1024 * 1024;
+    private static final int RECORD_OVERHEAD = 128;
+
+    private final Path commitsDir;
+    private final LruCache<String, Commit> cache = new LruCache<>(CACHE_BYTES, CommitStore::weigh,
+            Trace.Counter.COMMIT_CACHE_HITS, Trace.Counter.COMMIT_CACHE_MISSES);
+
+    public CommitStore(Path commitsDir) {
+        this.commitsDir = commitsDir;
+    }
+
+    public boolean contains(String id) {
+        return cache.get(id) != null || Files.isRegularFile(commitsDir.resolve(id));
+    }
+
+    // Null when there is no such commit
+    public Commit read(String id) throws IOException {
+        Commit commit = cache.get(id);
+        if (commit == null) {
+            String content;
+            try {
+                content = Files.readString(commitsDir.resolve(id), StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            commit = parse(id, content);
+            cache.put(id, commit);
+        }
+        return commit;
+    }
+
+    public void write(String id, String content) throws IOException {
+        Files.writeString(commitsDir.resolve(id), content);
+    }
+
+    public void delete(String id) throws IOException {
+        cache.remove(id);
+        Files.deleteIfExists(commitsDir.resolve(id));
+    }
+
+    // Every commit id on disk
+    public List<String> list() throws IOException {
+        List<String> ids = new ArrayList<>();
+        if (!Files.isDirectory(commitsDir)) {
+            return ids;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(commitsDir)) {
+            for (Path file : files) {
+                ids.add(file.getFileName().toString());
+            }
+        }
+        return ids;
+    }
+
+    static Commit parse(String id, String content) {
+        String tree = null;
+        List<String> parents = new ArrayList<>(2);
+        String author = "";
+        String date = "";
+        String message = "";
+        Map<String, String> manifest = new HashMap<>();
+        boolean headerEnded = false;
+        for (String line : content.split("\n")) {
+            if (line.isEmpty()) {
+                headerEnded = true;
+            } else if (!headerEnded) {
+                if (line.startsWith("tree: ")) {
+                    tree = line.substring(6).trim();
+                } else if (line.startsWith("parent: ")) {
+                    parents.add(line.substring(8).trim());
+                } else if (line.startsWith("author: ")) {
+                    author = line.substring(8);
+                } else if (line.startsWith("date: ")) {
+                    date = line.substring(6).trim();
+                } else if (line.startsWith("message: ")) {
+                    message = line.substring(9);
+                }
+            } else if (tree == null) {
+                int separator = line.lastIndexOf(':');
+                if (separator == -1) {
+                    separator = line.lastIndexOf(' ');
+                }
+                if (separator != -1) {
+                    manifest.put(line.substring(0, separator), line.substring(separator + 1).trim());
+                }
+            }
+        }
+        return new Commit(id, tree, parents, author, date, message, manifest);
+    }
+
+    private static long weigh(Commit commit) {
+        long bytes = RECORD_OVERHEAD + commit.message().length();
+        for (Map.Entry<String, String> file : commit.manifest().entrySet()) {
+            bytes += file.getKey().length() + file.getValue().length() + 32;
+        }
+        return bytes;
+    }
+}
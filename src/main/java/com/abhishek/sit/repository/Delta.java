@@ -0,0 +1,215 @@
+package com.abhishek.sit.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Binary deltas in the same spirit as git's pack deltas:
+//
+//   baseSize:varint | resultSize:varint | instructions...
+//
+// An instruction byte with the high bit set is a COPY from the base: the low
+// four bits say which offset bytes follow, the next three which size bytes
+// follow (little endian, missing bytes are zero). Any other non-zero byte is
+// an INSERT of that many literal bytes, which follow it.
+public final class Delta {
+
+    private static final int BLOCK = 16;
+    private static final int MAX_INSERT = 0x7f;
+    private static final int MAX_COPY = 0xffffff;
+    private static final int MAX_CHAIN = 64;
+
+    private Delta() {
+    }
+
+    // Hash table over every BLOCK-aligned chunk of a base, built once and reused
+    // for every target it is tried against.
+    public static final class Index {
+        private final byte[] base;
+        private final int[] heads;
+        private final int[] next;
+        private final int mask;
+
+        public Index(byte[] base) {
+            this.base = base;
+            int blocks = base.length / BLOCK;
+            int tableSize = Integer.highestOneBit(Math.max(blocks, 1) * 2);
+            this.mask = tableSize - 1;
+            this.heads = new int[tableSize];
+            this.next = new int[blocks];
+            Arrays.fill(heads, -1);
+            // Insert back to front so chains list earlier offsets first
+            for (int block = blocks - 1; block >= 0; block--) {
+                int slot = hashBlock(base, block * BLOCK) & mask;
+                next[block] = heads[slot];
+                heads[slot] = block;
+            }
+        }
+
+        public byte[] base() {
+            return base;
+        }
+    }
+
+    // Returns null when the delta wouldn't come in under maxSize bytes
+    public static byte[] create(Index index, byte[] target, int maxSize) {
+        byte[] base = index.base;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(target.length, maxSize) + 16);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int insertStart = 0;
+        int pos = 0;
+        while (pos + BLOCK <= target.length) {
+            int bestOffset = -1;
+            int bestLength = 0;
+            int chain = 0;
+            for (int block = index.heads[hashBlock(target, pos) & index.mask];
+                 block >= 0 && chain < MAX_CHAIN; block = index.next[block], chain++) {
+                int offset = block * BLOCK;
+                int length = 0;
+                int max = Math.min(base.length - offset, target.length - pos);
+                while (length < max && base[offset + length] == target[pos + length]) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestOffset = offset;
+                }
+            }
+
+            if (bestLength < BLOCK) {
+                pos++;
+                continue;
+            }
+
+            writeInserts(out, target, insertStart, pos);
+            int copied = 0;
+            while (copied < bestLength) {
+                int size = Math.min(bestLength - copied, MAX_COPY);
+                writeCopy(out, bestOffset + copied, size);
+                copied += size;
+            }
+            pos += bestLength;
+            insertStart = pos;
+            if (out.size() >= maxSize) {
+                return null;
+            }
+        }
+        writeInserts(out, target, insertStart, target.length);
+        return out.size() < maxSize ? out.toByteArray() : null;
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        int[] pos = {0};
+        long baseSize = readVarint(delta, pos);
+        long resultSize = readVarint(delta, pos);
+        if (baseSize != base.length) {
+            throw new IOException("delta base size mismatch");
+        }
+        byte[] result = new byte[(int) resultSize];
+        int out = 0;
+        int i = pos[0];
+        while (i < delta.length) {
+            int op = delta[i++] & 0xff;
+            if ((op & 0x80) != 0) {
+                int offset = 0;
+                int size = 0;
+                for (int bit = 0; bit < 4; bit++) {
+                    if ((op & (1 << bit)) != 0) {
+                        offset |= (delta[i++] & 0xff) << (8 * bit);
+                    }
+                }
+                for (int bit = 0; bit < 3; bit++) {
+                    if ((op & (0x10 << bit)) != 0) {
+                        size |= (delta[i++] & 0xff) << (8 * bit);
+                    }
+                }
+                if (offset < 0 || offset + size > base.length || out + size > result.length) {
+                    throw new IOException("delta copy out of range");
+                }
+                System.arraycopy(base, offset, result, out, size);
+                out += size;
+            } else if (op != 0) {
+                if (i + op > delta.length || out + op > result.length) {
+                    throw new IOException("delta insert out of range");
+                }
+                System.arraycopy(delta, i, result, out, op);
+                i += op;
+                out += op;
+            } else {
+                throw new IOException("invalid delta opcode");
+            }
+        }
+        if (out != result.length) {
+            throw new IOException("delta result size mismatch");
+        }
+        return result;
+    }
+
+    // Size of the object a delta produces, read from its header
+    public static long resultSize(byte[] deltaHeader) {
+        int[] pos = {0};
+        readVarint(deltaHeader, pos);
+        return readVarint(deltaHeader, pos);
+    }
+
+    private static void writeInserts(ByteArrayOutputStream out, byte[] data, int from, int to) {
+        while (from < to) {
+            int length = Math.min(MAX_INSERT, to - from);
+            out.write(length);
+            out.write(data, from, length);
+            from += length;
+        }
+    }
+
+    private static void writeCopy(ByteArrayOutputStream out, int offset, int size) {
+        int op = 0x80;
+        byte[] args = new byte[7];
+        int n = 0;
+        for (int bit = 0; bit < 4; bit++) {
+            int b = (offset >>> (8 * bit)) & 0xff;
+            if (b != 0) {
+                op |= 1 << bit;
+                args[n++] = (byte) b;
+            }
+        }
+        for (int bit = 0; bit < 3; bit++) {
+            int b = (size >>> (8 * bit)) & 0xff;
+            if (b != 0) {
+                op |= 0x10 << bit;
+                args[n++] = (byte) b;
+            }
+        }
+        out.write(op);
+        out.write(args, 0, n);
+    }
+
+    private static int hashBlock(byte[] data, int offset) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            h = h * 31 + data[offset + i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos[0]++];
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,322 @@
+package com.abhishek.sit.repository;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+
+// Immutable compressed bitmap in the EWAH layout (Lemire et al., as used by
+// git's pack bitmaps): a sequence of 64-bit words where each marker word
+//
+//   bit 0       value of the run (all zeros or all ones)
+//   bits 1-32   length of the run, in words
+//   bits 33-63  number of literal (uncompressed) words following the marker
+//
+// is followed by its literal words. Long stretches of objects that a commit
+// does or doesn't reach cost one marker however many words they span, and the
+// logical operations walk both inputs run by run without expanding them.
+public final class EwahBitmap {
+
+    private static final long MAX_RUN = (1L << 32) - 1;
+    private static final int MAX_LITERALS = (1 << 31) - 1;
+
+    public static final EwahBitmap EMPTY = new EwahBitmap(new long[0], 0);
+
+    private final long[] buffer;
+    private final int length;
+
+    private EwahBitmap(long[] buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    public static EwahBitmap fromBitSet(BitSet bits) {
+        Builder builder = new Builder();
+        long[] words = bits.toLongArray();
+        for (long word : words) {
+            builder.addWord(word);
+        }
+        return builder.build();
+    }
+
+    public static EwahBitmap or(EwahBitmap a, EwahBitmap b) {
+        return combine(a, b, (x, y) -> x | y);
+    }
+
+    public static EwahBitmap and(EwahBitmap a, EwahBitmap b) {
+        return combine(a, b, (x, y) -> x & y);
+    }
+
+    // Bits of `a` that are not in `b`
+    public static EwahBitmap andNot(EwahBitmap a, EwahBitmap b) {
+        return combine(a, b, (x, y) -> x & ~y);
+    }
+
+    public BitSet toBitSet() {
+        BitSet bits = new BitSet();
+        orInto(bits);
+        return bits;
+    }
+
+    // Sets every bit of this bitmap in `bits`; runs of ones are set as ranges
+    public void orInto(BitSet bits) {
+        Cursor cursor = new Cursor(this);
+        long wordIndex = 0;
+        while (cursor.ready()) {
+            if (cursor.run > 0) {
+                if (cursor.runBit) {
+                    bits.set(Math.toIntExact(wordIndex * 64), Math.toIntExact((wordIndex + cursor.run) * 64));
+                }
+                wordIndex += cursor.run;
+                cursor.run = 0;
+            } else {
+                long word = cursor.nextWord();
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    bits.set(Math.toIntExact(wordIndex * 64 + bit));
+                    word &= word - 1;
+                }
+                wordIndex++;
+            }
+        }
+    }
+
+    public boolean get(int bit) {
+        long target = bit >>> 6;
+        Cursor cursor = new Cursor(this);
+        long wordIndex = 0;
+        while (cursor.ready()) {
+            if (cursor.run > 0) {
+                if (target < wordIndex + cursor.run) {
+                    return cursor.runBit;
+                }
+                wordIndex += cursor.run;
+                cursor.run = 0;
+            } else {
+                long word = cursor.nextWord();
+                if (wordIndex == target) {
+                    return (word & (1L << (bit & 63))) != 0;
+                }
+                wordIndex++;
+            }
+        }
+        return false;
+    }
+
+    public long cardinality() {
+        long count = 0;
+        Cursor cursor = new Cursor(this);
+        while (cursor.ready()) {
+            if (cursor.run > 0) {
+                count += cursor.runBit ? cursor.run * 64 : 0;
+                cursor.run = 0;
+            } else {
+                count += Long.bitCount(cursor.nextWord());
+            }
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return cardinality() == 0;
+    }
+
+    // Calls `action` with every set bit, in ascending order
+    public void forEach(IntConsumer action) {
+        Cursor cursor = new Cursor(this);
+        long wordIndex = 0;
+        while (cursor.ready()) {
+            if (cursor.run > 0) {
+                if (cursor.runBit) {
+                    for (long bit = wordIndex * 64; bit < (wordIndex + cursor.run) * 64; bit++) {
+                        action.accept(Math.toIntExact(bit));
+                    }
+                }
+                wordIndex += cursor.run;
+                cursor.run = 0;
+            } else {
+                long word = cursor.nextWord();
+                while (word != 0) {
+                    action.accept(Math.toIntExact(wordIndex * 64 + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+                wordIndex++;
+            }
+        }
+    }
+
+    // Compressed size, in 64-bit words
+    public int sizeInWords() {
+        return length;
+    }
+
+    // word count:int | words:long[]
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeLong(buffer[i]);
+        }
+    }
+
+    public static EwahBitmap read(ByteBuffer in) {
+        int length = in.getInt();
+        long[] buffer = new long[length];
+        in.asLongBuffer().get(buffer);
+        in.position(in.position() + length * 8);
+        return new EwahBitmap(buffer, length);
+    }
+
+    // Runs meet runs in one step; only where either side has literal words are
+    // words combined one by one. A bitmap that ends early reads as zeros.
+    private static EwahBitmap combine(EwahBitmap a, EwahBitmap b, LongBinaryOperator op) {
+        Cursor x = new Cursor(a);
+        Cursor y = new Cursor(b);
+        Builder out = new Builder();
+        while (true) {
+            boolean hasX = x.ready();
+            boolean hasY = y.ready();
+            if (!hasX && !hasY) {
+                break;
+            }
+            if (hasX && hasY && x.run > 0 && y.run > 0) {
+                long n = Math.min(x.run, y.run);
+                out.addRun(op.applyAsLong(x.runWord(), y.runWord()) != 0, n);
+                x.run -= n;
+                y.run -= n;
+            } else if (hasX && !hasY && x.run > 0) {
+                out.addRun(op.applyAsLong(x.runWord(), 0) != 0, x.run);
+                x.run = 0;
+            } else if (hasY && !hasX && y.run > 0) {
+                out.addRun(op.applyAsLong(0, y.runWord()) != 0, y.run);
+                y.run = 0;
+            } else {
+                long wordX = hasX ? x.nextWord() : 0;
+                long wordY = hasY ? y.nextWord() : 0;
+                out.addWord(op.applyAsLong(wordX, wordY));
+            }
+        }
+        return out.build();
+    }
+
+    // Reads a bitmap marker by marker: `run` clean words of `runBit`, then
+    // `literals` literal words starting at `next`
+    private static final class Cursor {
+        private final long[] buffer;
+        private final int length;
+        private int next;
+        long run;
+        boolean runBit;
+        int literals;
+
+        Cursor(EwahBitmap bitmap) {
+            this.buffer = bitmap.buffer;
+            this.length = bitmap.length;
+        }
+
+        // Loads markers until there is a word to read; false at the end
+        boolean ready() {
+            while (run == 0 && literals == 0) {
+                if (next >= length) {
+                    return false;
+                }
+                long marker = buffer[next++];
+                runBit = (marker & 1) != 0;
+                run = (marker >>> 1) & MAX_RUN;
+                literals = (int) (marker >>> 33);
+            }
+            return true;
+        }
+
+        long runWord() {
+            return runBit ? -1L : 0L;
+        }
+
+        long nextWord() {
+            if (run > 0) {
+                run--;
+                return runWord();
+            }
+            literals--;
+            return buffer[next++];
+        }
+    }
+
+    public static final class Builder {
+        private long[] buffer = new long[4];
+        private int length;
+        private int marker = -1;
+
+        // Appends the next 64 bits
+        public void addWord(long word) {
+            if (word == 0) {
+                addRun(false, 1);
+            } else if (word == -1L) {
+                addRun(true, 1);
+            } else {
+                if (marker < 0 || literalsOf(buffer[marker]) == MAX_LITERALS) {
+                    newMarker(false, 0);
+                }
+                buffer[marker] += 1L << 33;
+                append(word);
+            }
+        }
+
+        public void addRun(boolean bit, long words) {
+            while (words > 0) {
+                // A run can only extend a marker that has no literals yet
+                if (marker < 0 || literalsOf(buffer[marker]) > 0
+                        || (runOf(buffer[marker]) > 0 && ((buffer[marker] & 1) != 0) != bit)
+                        || runOf(buffer[marker]) == MAX_RUN) {
+                    newMarker(bit, 0);
+                }
+                long current = runOf(buffer[marker]);
+                long add = Math.min(words, MAX_RUN - current);
+                buffer[marker] = (buffer[marker] & ~(MAX_RUN << 1)) | ((current + add) << 1) | (bit ? 1 : 0);
+                words -= add;
+            }
+        }
+
+        public EwahBitmap build() {
+            // Trailing zero runs carry no information
+            while (marker >= 0 && literalsOf(buffer[marker]) == 0
+                    && ((buffer[marker] & 1) == 0 || runOf(buffer[marker]) == 0)) {
+                length = marker;
+                marker = findPreviousMarker();
+            }
+            return new EwahBitmap(Arrays.copyOf(buffer, length), length);
+        }
+
+        private int findPreviousMarker() {
+            int position = 0;
+            int previous = -1;
+            while (position < length) {
+                previous = position;
+                position += 1 + literalsOf(buffer[position]);
+            }
+            return previous;
+        }
+
+        private void newMarker(boolean bit, long run) {
+            marker = length;
+            append((run << 1) | (bit ? 1 : 0));
+        }
+
+        private void append(long word) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, length * 2);
+            }
+            buffer[length++] = word;
+        }
+
+        private static long runOf(long marker) {
+            return (marker >>> 1) & MAX_RUN;
+        }
+
+        private static int literalsOf(long marker) {
+            return (int) (marker >>> 33);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.model.FileStat;
+import com.abhishek.sit.model.IndexEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Binary index (version 2). Layout:
+//
+//   header   "SIDX" | version:int | entryCount:int | restartInterval:int | restartCount:int
+//   entries  sharedPrefix:varint | suffixLength:varint | suffix:utf8 | hash:20 bytes
+//            | size:long | mtimeNanos:long | ctimeNanos:long | inode:long
+//   restarts restartCount x int (file offset of every restartInterval-th entry)
+//   trailer  SHA-1 of everything above
+//
+// Entries are sorted by the UTF-8 bytes of their path (PATH_ORDER, as git
+// sorts its index) and each path only stores the part that differs
+// from the previous one. Every restartInterval-th entry stores its full path so
+// a lookup can binary search the restart table and scan at most one block.
+//
+// Entries modified in the same second as the index is written (or, for those a
+// merge copies over, as the index they came from) are "racy": the file could
+// change again without its stat data moving. They are written smudged, with
+// FileStat.UNKNOWN, so no later reader trusts them however much newer its
+// index is.
+public class IndexFile {
+
+    public static final int VERSION = 2;
+    private static final byte[] MAGIC = {'S', 'I', 'D', 'X'};
+    private static final int HEADER_SIZE = 20;
+    private static final int HASH_SIZE = 20;
+    private static final int RESTART_INTERVAL = 16;
+    private static final long SECOND = 1_000_000_000L;
+    private static final HexFormat HEX = HexFormat.of();
+
+    // Unsigned UTF-8 byte order, which is code point order. String.compareTo
+    // compares UTF-16 units instead and puts astral characters (surrogates,
+    // U+D800..) before U+E000..U+FFFF, so every map that is written, merged or
+    // searched must use this one.
+    public static final Comparator<String> PATH_ORDER = (a, b) -> {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    };
+
+    private final ByteBuffer buffer;
+    private final int entryCount;
+    private final int restartCount;
+    private final int restartTableOffset;
+
+    private IndexFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE + HASH_SIZE || !hasMagic(buffer)) {
+            throw new IOException("index file is corrupt (bad header)");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("unsupported index version " + version);
+        }
+        this.entryCount = buffer.getInt(8);
+        this.restartCount = buffer.getInt(16);
+        this.restartTableOffset = buffer.capacity() - HASH_SIZE - restartCount * 4;
+        if (restartTableOffset < HEADER_SIZE) {
+            throw new IOException("index file is corrupt (truncated)");
+        }
+    }
+
+    public static IndexFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new IndexFile(mapped);
+        }
+    }
+
+    // Sniffs the first bytes so old "path:hash" text indexes can be told apart
+    public static boolean isBinary(Path path) throws IOException {
+        byte[] head = new byte[MAGIC.length];
+        try (InputStream in = Files.newInputStream(path)) {
+            if (in.readNBytes(head, 0, head.length) < head.length) {
+                return false;
+            }
+        }
+        return Arrays.equals(head, MAGIC);
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    // Binary search over the restart points, then a linear scan of one block
+    public IndexEntry lookup(String path) {
+        if (entryCount == 0) {
+            return null;
+        }
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+
+        int lo = 0;
+        int hi = restartCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            Cursor probe = new Cursor(restartOffset(mid));
+            probe.next();
+            if (compare(probe.pathBytes, probe.pathLength, key) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        Cursor cursor = new Cursor(restartOffset(lo));
+        int remaining = Math.min(RESTART_INTERVAL, entryCount - lo * RESTART_INTERVAL);
+        for (int i = 0; i < remaining; i++) {
+            cursor.next();
+            int cmp = compare(cursor.pathBytes, cursor.pathLength, key);
+            if (cmp == 0) {
+                return cursor.entry();
+            }
+            if (cmp > 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    // Full load, used by commands that walk every entry anyway (status, diff, commit)
+    public Map<String, IndexEntry> readAll() throws IOException {
+        verifyChecksum();
+        Map<String, IndexEntry> index = new TreeMap<>(PATH_ORDER);
+        Cursor cursor = new Cursor(HEADER_SIZE);
+        for (int i = 0; i < entryCount; i++) {
+            cursor.next();
+            index.put(cursor.path(), cursor.entry());
+        }
+        return index;
+    }
+
+    public static void write(Path path, Map<String, IndexEntry> index) throws IOException {
+        SortedMap<String, IndexEntry> sorted = inPathOrder(index);
+        writeEntries(path, sorted.size(), sorted.entrySet().iterator());
+    }
+
+    // Streams this index into a new file with the given entries replaced/added.
+    // Neither side is ever materialized as a full map.
+    public static void merge(Path path, IndexFile existing, SortedMap<String, IndexEntry> updates)
+            throws IOException {
+        existing.verifyChecksum();
+        updates = inPathOrder(updates);
+        // Entries copied over verbatim may be racy against the old index; the
+        // updates were statted just now and only the new index can judge them
+        long oldIndexSecond = Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS) / SECOND;
+        Iterator<Map.Entry<String, IndexEntry>> merged = new MergeIterator(existing, updates, oldIndexSecond);
+        int count = existing.entryCount;
+        for (String key : updates.keySet()) {
+            if (existing.lookup(key) == null) {
+                count++;
+            }
+        }
+        writeEntries(path, count, merged);
+    }
+
+    private static SortedMap<String, IndexEntry> inPathOrder(Map<String, IndexEntry> index) {
+        if (index instanceof SortedMap<String, IndexEntry> sorted && sorted.comparator() == PATH_ORDER) {
+            return sorted;
+        }
+        SortedMap<String, IndexEntry> sorted = new TreeMap<>(PATH_ORDER);
+        sorted.putAll(index);
+        return sorted;
+    }
+
+    // Entries modified in or after the second the new file was created are
+    // written smudged
+    private static void writeEntries(Path path, int count, Iterator<Map.Entry<String, IndexEntry>> entries)
+            throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".lock");
+        MessageDigest digest = sha1();
+        int restartCount = (count + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+        int[] restarts = new int[restartCount];
+
+        DigestOutputStream digestOut = new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), digest);
+        try (DataOutputStream out = new DataOutputStream(digestOut)) {
+            // The filesystem's clock, which is the one that stamps the index
+            long racySecond = Files.getLastModifiedTime(tmp).to(TimeUnit.NANOSECONDS) / SECOND;
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(RESTART_INTERVAL);
+            out.writeInt(restartCount);
+
+            byte[] previous = new byte[0];
+            int written = 0;
+            while (entries.hasNext()) {
+                Map.Entry<String, IndexEntry> e = entries.next();
+                byte[] pathBytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                if (written % RESTART_INTERVAL == 0) {
+                    restarts[written / RESTART_INTERVAL] = out.size();
+                } else {
+                    int max = Math.min(previous.length, pathBytes.length);
+                    while (shared < max && previous[shared] == pathBytes[shared]) {
+                        shared++;
+                    }
+                }
+                writeVarint(out, shared);
+                writeVarint(out, pathBytes.length - shared);
+                out.write(pathBytes, shared, pathBytes.length - shared);
+                out.write(HEX.parseHex(e.getValue().hash()));
+                FileStat stat = e.getValue().stat();
+                if (isRacy(stat, racySecond)) {
+                    stat = FileStat.UNKNOWN;
+                }
+                out.writeLong(stat.size());
+                out.writeLong(stat.mtimeNanos());
+                out.writeLong(stat.ctimeNanos());
+                out.writeLong(stat.inode());
+                previous = pathBytes;
+                written++;
+            }
+            if (written != count) {
+                throw new IOException("index entry count mismatch");
+            }
+            for (int offset : restarts) {
+                out.writeInt(offset);
+            }
+
+            // Trailer: checksum of everything above, not digested itself
+            digestOut.on(false);
+            out.write(digest.digest());
+        }
+
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean isRacy(FileStat stat, long racySecond) {
+        return stat.isKnown() && stat.mtimeNanos() / SECOND >= racySecond;
+    }
+
+    private void verifyChecksum() throws IOException {
+        MessageDigest digest = sha1();
+        ByteBuffer content = buffer.duplicate();
+        content.position(0).limit(buffer.capacity() - HASH_SIZE);
+        digest.update(content);
+        byte[] expected = new byte[HASH_SIZE];
+        buffer.get(buffer.capacity() - HASH_SIZE, expected);
+        if (!MessageDigest.isEqual(expected, digest.digest())) {
+            throw new IOException("index file is corrupt (checksum mismatch)");
+        }
+    }
+
+    private int restartOffset(int restart) {
+        return buffer.getInt(restartTableOffset + restart * 4);
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(byte[] a, int aLength, byte[] b) {
+        // Same order as PATH_ORDER, without decoding the stored path
+        return Arrays.compareUnsigned(a, 0, aLength, b, 0, b.length);
+    }
+
+    // Walks entries sequentially, rebuilding prefix-compressed paths in a reusable buffer
+    private class Cursor {
+        private int position;
+        private byte[] pathBytes = new byte[256];
+        private int pathLength;
+        private int entryOffset;
+
+        Cursor(int position) {
+            this.position = position;
+        }
+
+        void next() {
+            int shared = readVarint();
+            int suffix = readVarint();
+            if (shared + suffix > pathBytes.length) {
+                pathBytes = Arrays.copyOf(pathBytes, Math.max(shared + suffix, pathBytes.length * 2));
+            }
+            buffer.get(position, pathBytes, shared, suffix);
+            position += suffix;
+            pathLength = shared + suffix;
+            entryOffset = position;
+            position += HASH_SIZE + 4 * 8;
+        }
+
+        String path() {
+            return new String(pathBytes, 0, pathLength, StandardCharsets.UTF_8);
+        }
+
+        IndexEntry entry() {
+            byte[] hash = new byte[HASH_SIZE];
+            buffer.get(entryOffset, hash);
+            int stat = entryOffset + HASH_SIZE;
+            return new IndexEntry(HEX.formatHex(hash), new FileStat(buffer.getLong(stat), buffer.getLong(stat + 8),
+                    buffer.getLong(stat + 16), buffer.getLong(stat + 24)));
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    // Sorted merge of the mapped entries with a (small) map of replacements.
+    // Mapped entries racy against `fileSecond`, when their file was written,
+    // come out smudged.
+    private static class MergeIterator implements Iterator<Map.Entry<String, IndexEntry>> {
+        private final Cursor cursor;
+        private final Iterator<Map.Entry<String, IndexEntry>> updates;
+        private final long fileSecond;
+        private int fileRemaining;
+        private Map.Entry<String, IndexEntry> nextFile;
+        private Map.Entry<String, IndexEntry> nextUpdate;
+
+        MergeIterator(IndexFile file, SortedMap<String, IndexEntry> updates, long fileSecond) {
+            this.cursor = file.new Cursor(HEADER_SIZE);
+            this.fileSecond = fileSecond;
+            this.fileRemaining = file.entryCount;
+            this.updates = updates.entrySet().iterator();
+            advanceFile();
+            advanceUpdate();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextFile != null || nextUpdate != null;
+        }
+
+        @Override
+        public Map.Entry<String, IndexEntry> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, IndexEntry> result;
+            if (nextUpdate == null) {
+                result = nextFile;
+                advanceFile();
+            } else if (nextFile == null) {
+                result = nextUpdate;
+                advanceUpdate();
+            } else {
+                int cmp = PATH_ORDER.compare(nextFile.getKey(), nextUpdate.getKey());
+                if (cmp < 0) {
+                    result = nextFile;
+                    advanceFile();
+                } else {
+                    if (cmp == 0) {
+                        advanceFile(); // replaced
+                    }
+                    result = nextUpdate;
+                    advanceUpdate();
+                }
+            }
+            return result;
+        }
+
+        private void advanceFile() {
+            if (fileRemaining == 0) {
+                nextFile = null;
+                return;
+            }
+            cursor.next();
+            fileRemaining--;
+            IndexEntry entry = cursor.entry();
+            if (isRacy(entry.stat(), fileSecond)) {
+                entry = new IndexEntry(entry.hash(), FileStat.UNKNOWN);
+            }
+            nextFile = Map.entry(cursor.path(), entry);
+        }
+
+        private void advanceUpdate() {
+            nextUpdate = updates.hasNext() ? updates.next() : null;
+        }
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 algorithm not found", e);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.Trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Loose objects live in .sit/objects/<first two hex chars>/<remaining 38>, each
+// one a deflate stream of "blob <size>\0" followed by the content. The hash is
+// still the SHA-1 of the raw content, so ids from the old flat layout
+// (.sit/objects/<hash>, stored uncompressed) stay valid and are read as-is.
+public class LooseObjectStore {
+
+    private static final String HEADER_TYPE = "blob";
+
+    private final Path objectsDir;
+
+    public LooseObjectStore(Path objectsDir) {
+        this.objectsDir = objectsDir;
+    }
+
+    public Path path(String hash) {
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    public Path legacyPath(String hash) {
+        return objectsDir.resolve(hash);
+    }
+
+    public boolean contains(String hash) {
+        return Files.exists(path(hash)) || Files.exists(legacyPath(hash));
+    }
+
+    // True for objects still in the old flat, uncompressed layout
+    public boolean isLegacy(String hash) {
+        return !Files.exists(path(hash)) && Files.exists(legacyPath(hash));
+    }
+
+    public void write(String hash, byte[] data) throws IOException {
+        if (contains(hash)) {
+            return; // Content-addressed: same hash, same bytes
+        }
+        writeAtomically(hash, out -> {
+            writeHeader(out, data.length);
+            out.write(data);
+        });
+    }
+
+    // Hashes the file while it is compressed into a temp file, so it is read
+    // only once, and names the object after the hash that comes out. Content
+    // `stored` already has (loose or packed) is dropped instead, at the cost of
+    // a wasted deflate; callers only get here for files whose stat changed,
+    // which are nearly always new content. Returns the hash.
+    public String write(Path source, Predicate<String> stored) throws IOException {
+        MessageDigest digest = SitUtil.newSha1();
+        Path tmp = writeTemp(out -> copyHashing(source, out, digest));
+        try {
+            String hash = SitUtil.toHex(digest.digest());
+            if (!stored.test(hash)) {
+                install(tmp, hash);
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Also removes the object's fan-out directory once it is empty, so a gc
+    // doesn't leave up to 256 empty directories behind
+    public void delete(String hash) throws IOException {
+        Path path = path(hash);
+        if (Files.deleteIfExists(path)) {
+            try {
+                Files.deleteIfExists(path.getParent());
+            } catch (DirectoryNotEmptyException e) {
+                // Other objects still live there
+            }
+        }
+        Files.deleteIfExists(legacyPath(hash));
+    }
+
+    public InputStream open(String hash) throws IOException {
+        Path path = path(hash);
+        if (!Files.exists(path)) {
+            Path legacy = legacyPath(hash);
+            if (Files.exists(legacy)) {
+                return Files.newInputStream(legacy);
+            }
+            throw new NoSuchFileException("object " + hash);
+        }
+        InputStream in = new InflaterInputStream(new BufferedInputStream(Files.newInputStream(path),
+                SitUtil.BUFFER_SIZE));
+        try {
+            readHeader(in, hash);
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public long size(String hash) throws IOException {
+        Path legacy = legacyPath(hash);
+        if (!Files.exists(path(hash)) && Files.exists(legacy)) {
+            return Files.size(legacy);
+        }
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(path(hash)))) {
+            return readHeader(in, hash);
+        }
+    }
+
+    // Every loose object id, from both layouts
+    public List<String> list() throws IOException {
+        List<String> hashes = new ArrayList<>();
+        if (!Files.isDirectory(objectsDir)) {
+            return hashes;
+        }
+        try (DirectoryStream<Path> top = Files.newDirectoryStream(objectsDir)) {
+            for (Path entry : top) {
+                String name = entry.getFileName().toString();
+                if (isHash(name) && Files.isRegularFile(entry)) {
+                    hashes.add(name);
+                } else if (name.length() == 2 && Files.isDirectory(entry)) {
+                    try (DirectoryStream<Path> fanout = Files.newDirectoryStream(entry)) {
+                        for (Path object : fanout) {
+                            String rest = object.getFileName().toString();
+                            if (isHash(name + rest)) {
+                                hashes.add(name + rest);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return hashes;
+    }
+
+    // Moves every flat object into the fan-out layout, compressing it on the way.
+    // Returns the number of objects migrated.
+    public int migrate() throws IOException {
+        int migrated = 0;
+        List<Path> legacyObjects;
+        try (Stream<Path> entries = Files.list(objectsDir)) {
+            legacyObjects = entries
+                    .filter(p -> isHash(p.getFileName().toString()) && Files.isRegularFile(p))
+                    .toList();
+        }
+        for (Path legacy : legacyObjects) {
+            String hash = legacy.getFileName().toString();
+            if (!Files.exists(path(hash))) {
+                writeCompressed(legacy, hash);
+            }
+            Files.delete(legacy);
+            migrated++;
+        }
+        return migrated;
+    }
+
+    // A flat object whose content doesn't match its name is left where it is
+    private void writeCompressed(Path source, String expectedHash) throws IOException {
+        MessageDigest digest = SitUtil.newSha1();
+        Path tmp = writeTemp(out -> copyHashing(source, out, digest));
+        try {
+            if (!expectedHash.equals(SitUtil.toHex(digest.digest()))) {
+                throw new IOException(source + " does not match its hash");
+            }
+            install(tmp, expectedHash);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Header and content of `source`, with the content also fed to `digest`
+    private static void copyHashing(Path source, OutputStream out, MessageDigest digest) throws IOException {
+        long size = Files.size(source);
+        writeHeader(out, size);
+        long copied = 0;
+        try (InputStream in = Files.newInputStream(source)) {
+            byte[] buffer = new byte[SitUtil.BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                copied += read;
+            }
+        }
+        Trace.count(Trace.Counter.HASHES_COMPUTED);
+        Trace.count(Trace.Counter.BYTES_HASHED, copied);
+        // The header already promised `size` bytes
+        if (copied != size) {
+            throw new IOException(source + " changed while it was being stored");
+        }
+    }
+
+    private interface ObjectWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private void writeAtomically(String hash, ObjectWriter writer) throws IOException {
+        Path tmp = writeTemp(writer);
+        try {
+            install(tmp, hash);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Objects are written into a temp file in the objects dir and renamed into
+    // place, so readers only ever see complete ones
+    private Path writeTemp(ObjectWriter writer) throws IOException {
+        Files.createDirectories(objectsDir);
+        Path tmp = Files.createTempFile(objectsDir, "tmp_obj_", null);
+        try (OutputStream out = new DeflaterOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), SitUtil.BUFFER_SIZE))) {
+            writer.write(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
+    private void install(Path tmp, String hash) throws IOException {
+        Path target = path(hash);
+        Files.createDirectories(target.getParent());
+        try {
+            moveIntoPlace(tmp, target);
+            Trace.count(Trace.Counter.OBJECTS_WRITTEN);
+        } catch (FileAlreadyExistsException e) {
+            // Another writer stored the same object first; theirs is identical
+        }
+    }
+
+    // A concurrent gc may remove the fan-out directory once its last object is
+    // gone, between the writer creating it and the rename; recreate it and retry
+    private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (NoSuchFileException e) {
+                if (attempt == 3) {
+                    throw e;
+                }
+                Files.createDirectories(target.getParent());
+            }
+        }
+    }
+
+    private static void writeHeader(OutputStream out, long size) throws IOException {
+        out.write((HEADER_TYPE + " " + size + "\0").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static long readHeader(InputStream in, String hash) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(32);
+        int b;
+        while ((b = in.read()) > 0) {
+            if (header.size() > 32) {
+                break;
+            }
+            header.write(b);
+        }
+        String text = header.toString(StandardCharsets.US_ASCII);
+        if (b != 0 || !text.startsWith(HEADER_TYPE + " ")) {
+            throw new IOException("object " + hash + " is corrupt (bad header)");
+        }
+        return Long.parseLong(text.substring(HEADER_TYPE.length() + 1));
+    }
+
+    private static boolean isHash(String name) {
+        if (name.length() != 40) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.Trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+// Least-recently-used cache bounded by the total weight (roughly the bytes)
+// of its values rather than their number, so a handful of huge flat-commit
+// manifests can't pin as much memory as thousands of small trees would.
+// Thread-safe; values must be immutable since they're shared between callers.
+public final class LruCache<K, V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Trace.Counter hits;
+    private final Trace.Counter misses;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+
+    // hits and misses are the counters that --perf reports lookups under
+    public LruCache(long maxWeight, ToLongFunction<V> weigher, Trace.Counter hits, Trace.Counter misses) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    // Null on a miss
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        Trace.count(value != null ? hits : misses);
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return; // Would evict everything else and still not fit
+        }
+        V previous = entries.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += valueWeight;
+        var eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            Map.Entry<K, V> entry = eldest.next();
+            weight -= weigher.applyAsLong(entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    public synchronized void remove(K key) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+}
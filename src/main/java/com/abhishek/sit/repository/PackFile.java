@@ -0,0 +1,287 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+// A pack (.pack) plus its index (.idx).
+//
+//   .pack  "SPCK" | version:int | count:int | entries... | SHA-1 of the above
+//          entry: type:byte | size:varint | [baseHash:20 for deltas] | deflated payload
+//          FULL entries hold the object itself, DELTA entries a Delta against
+//          another object in the same pack. size is the inflated payload size.
+//
+//   .idx   "SPIX" | version:int | count:int | fanout:256 x int | hashes:count x 20
+//          | offsets:count x long | pack checksum:20
+//
+// fanout[b] is the number of objects whose first hash byte is <= b, so a lookup
+// only binary searches the slice of hashes that share the first byte.
+public class PackFile implements Closeable {
+
+    public static final int VERSION = 1;
+    public static final byte[] PACK_MAGIC = {'S', 'P', 'C', 'K'};
+    public static final byte[] IDX_MAGIC = {'S', 'P', 'I', 'X'};
+    public static final int TYPE_FULL = 1;
+    public static final int TYPE_DELTA = 2;
+    public static final int MAX_DELTA_DEPTH = 50;
+
+    static final int IDX_HEADER_SIZE = 12;
+    static final int FANOUT_SIZE = 256 * 4;
+    private static final int HASH_SIZE = 20;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path packPath;
+    private final ByteBuffer idx;
+    private final FileChannel pack;
+    private final int count;
+
+    public PackFile(Path packPath, Path idxPath) throws IOException {
+        this.packPath = packPath;
+        try (FileChannel channel = FileChannel.open(idxPath, StandardOpenOption.READ)) {
+            this.idx = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        for (int i = 0; i < IDX_MAGIC.length; i++) {
+            if (idx.get(i) != IDX_MAGIC[i]) {
+                throw new IOException(idxPath + " is not a pack index");
+            }
+        }
+        if (idx.getInt(4) != VERSION) {
+            throw new IOException(idxPath + ": unsupported pack index version " + idx.getInt(4));
+        }
+        this.count = idx.getInt(8);
+        this.pack = FileChannel.open(packPath, StandardOpenOption.READ);
+    }
+
+    public Path getPackPath() {
+        return packPath;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean contains(String hash) {
+        return find(HEX.parseHex(hash)) >= 0;
+    }
+
+    // Every object id in this pack, in hash order
+    public List<String> list() {
+        List<String> hashes = new ArrayList<>(count);
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < count; i++) {
+            idx.get(hashOffset(i), hash);
+            hashes.add(HEX.formatHex(hash));
+        }
+        return hashes;
+    }
+
+    public InputStream open(String hash) throws IOException {
+        long offset = offsetOf(hash);
+        Entry entry = readEntry(offset);
+        if (entry.type == TYPE_FULL) {
+            // Full objects are streamed straight out of the pack
+            return limit(inflate(entry.dataOffset), entry.size);
+        }
+        return new ByteArrayInputStream(read(hash));
+    }
+
+    public byte[] read(String hash) throws IOException {
+        return read(offsetOf(hash), 0);
+    }
+
+    public long objectSize(String hash) throws IOException {
+        Entry entry = readEntry(offsetOf(hash));
+        if (entry.type == TYPE_FULL) {
+            return entry.size;
+        }
+        try (InputStream in = inflate(entry.dataOffset)) {
+            return Delta.resultSize(in.readNBytes(20));
+        }
+    }
+
+    // Bytes each object occupies in the .pack (header and deflated payload),
+    // from the gaps between consecutive offsets
+    public Map<String, Long> storedSizes() throws IOException {
+        long[][] entries = new long[count][];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new long[]{idx.getLong(IDX_HEADER_SIZE + FANOUT_SIZE + count * HASH_SIZE + i * 8), i};
+        }
+        Arrays.sort(entries, (x, y) -> Long.compare(x[0], y[0]));
+        Map<String, Long> sizes = new HashMap<>(count * 2);
+        long end = pack.size() - HASH_SIZE;
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = count - 1; i >= 0; i--) {
+            idx.get(hashOffset((int) entries[i][1]), hash);
+            sizes.put(HEX.formatHex(hash), end - entries[i][0]);
+            end = entries[i][0];
+        }
+        return sizes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pack.close();
+    }
+
+    private byte[] read(long offset, int depth) throws IOException {
+        if (depth > MAX_DELTA_DEPTH) {
+            throw new IOException(packPath + ": delta chain too deep");
+        }
+        Entry entry = readEntry(offset);
+        byte[] data;
+        try (InputStream in = inflate(entry.dataOffset)) {
+            data = in.readNBytes((int) entry.size);
+        }
+        if (entry.type == TYPE_FULL) {
+            return data;
+        }
+        long baseOffset = offsetOf(entry.baseHash);
+        return Delta.apply(read(baseOffset, depth + 1), data);
+    }
+
+    private long offsetOf(String hash) throws IOException {
+        int position = find(HEX.parseHex(hash));
+        if (position < 0) {
+            throw new IOException("object " + hash + " not in " + packPath.getFileName());
+        }
+        return idx.getLong(IDX_HEADER_SIZE + FANOUT_SIZE + count * HASH_SIZE + position * 8);
+    }
+
+    private int find(byte[] hash) {
+        int first = hash[0] & 0xff;
+        int lo = first == 0 ? 0 : idx.getInt(IDX_HEADER_SIZE + (first - 1) * 4);
+        int hi = idx.getInt(IDX_HEADER_SIZE + first * 4) - 1;
+        byte[] probe = new byte[HASH_SIZE];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            idx.get(hashOffset(mid), probe);
+            int cmp = Arrays.compareUnsigned(probe, hash);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int hashOffset(int position) {
+        return IDX_HEADER_SIZE + FANOUT_SIZE + position * HASH_SIZE;
+    }
+
+    private Entry readEntry(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(1 + 10 + HASH_SIZE);
+        pack.read(header, offset);
+        header.flip();
+        Entry entry = new Entry();
+        entry.type = header.get();
+        long size = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = header.get();
+            size |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        entry.size = size;
+        if (entry.type == TYPE_DELTA) {
+            byte[] base = new byte[HASH_SIZE];
+            header.get(base);
+            entry.baseHash = HEX.formatHex(base);
+        } else if (entry.type != TYPE_FULL) {
+            throw new IOException(packPath + ": bad entry type " + entry.type + " at " + offset);
+        }
+        entry.dataOffset = offset + header.position();
+        return entry;
+    }
+
+    private InputStream inflate(long position) {
+        return new InflaterInputStream(new BufferedInputStream(new ChannelInputStream(pack, position),
+                SitUtil.BUFFER_SIZE));
+    }
+
+    private static InputStream limit(InputStream in, long size) {
+        return new InputStream() {
+            private long remaining = size;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = in.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = in.read(buffer, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    private static final class Entry {
+        int type;
+        long size;
+        String baseHash;
+        long dataOffset;
+    }
+
+    // Positional reads, so any number of threads can stream from one channel
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            int n = channel.read(ByteBuffer.wrap(buffer, off, len), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
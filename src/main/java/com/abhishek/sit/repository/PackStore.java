@@ -0,0 +1,94 @@
+package com.abhishek.sit.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// All packs under .sit/objects/pack. The list is loaded on first use and
+// refreshed after gc writes or removes packs.
+public class PackStore {
+
+    private final Path packDir;
+    private volatile List<PackFile> packs;
+
+    public PackStore(Path packDir) {
+        this.packDir = packDir;
+    }
+
+    public Path getPackDir() {
+        return packDir;
+    }
+
+    public boolean contains(String hash) {
+        return find(hash) != null;
+    }
+
+    // Returns null when no pack has the object
+    public InputStream open(String hash) throws IOException {
+        PackFile pack = find(hash);
+        return pack == null ? null : pack.open(hash);
+    }
+
+    public long objectSize(String hash) throws IOException {
+        PackFile pack = find(hash);
+        return pack == null ? -1 : pack.objectSize(hash);
+    }
+
+    public List<PackFile> getPacks() {
+        List<PackFile> loaded = packs;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = packs;
+                if (loaded == null) {
+                    loaded = load();
+                    packs = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // Closes every open pack and forgets them; the next lookup rescans the directory
+    public synchronized void reload() throws IOException {
+        List<PackFile> loaded = packs;
+        packs = null;
+        if (loaded != null) {
+            for (PackFile pack : loaded) {
+                pack.close();
+            }
+        }
+    }
+
+    private PackFile find(String hash) {
+        for (PackFile pack : getPacks()) {
+            if (pack.contains(hash)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    private List<PackFile> load() {
+        List<PackFile> loaded = new ArrayList<>();
+        if (!Files.isDirectory(packDir)) {
+            return loaded;
+        }
+        try (DirectoryStream<Path> idxFiles = Files.newDirectoryStream(packDir, "pack-*.idx")) {
+            for (Path idx : idxFiles) {
+                String name = idx.getFileName().toString();
+                Path pack = packDir.resolve(name.substring(0, name.length() - 4) + ".pack");
+                if (Files.exists(pack)) {
+                    loaded.add(new PackFile(pack, idx));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading packs in " + packDir, e);
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,267 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Writes a set of objects into one pack + idx. Objects are ordered by the file
+// name they were last seen under and then by size (largest first), and each one
+// is tried as a delta against the previous WINDOW objects, so successive
+// versions of the same file end up stored as small deltas.
+public class PackWriter {
+
+    public static final int WINDOW = 10;
+    public static final int MAX_DEPTH = 10;
+    // Bigger objects are stored whole and streamed, never held on the heap
+    public static final long DELTA_SIZE_LIMIT = 16L * 1024 * 1024;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final SitRepository repository;
+    private int deltaCount;
+
+    public PackWriter(SitRepository repository) {
+        this.repository = repository;
+    }
+
+    public int getDeltaCount() {
+        return deltaCount;
+    }
+
+    // objects: hash -> path hint (may be null when we don't know a name for it).
+    // Returns the written .pack path.
+    public Path write(Path packDir, Map<String, String> objects) throws IOException {
+        Files.createDirectories(packDir);
+
+        List<Candidate> candidates = new ArrayList<>(objects.size());
+        for (Map.Entry<String, String> e : objects.entrySet()) {
+            candidates.add(new Candidate(e.getKey(), nameOf(e.getValue()), repository.objectSize(e.getKey())));
+        }
+        candidates.sort(Comparator.comparing((Candidate c) -> c.name)
+                .thenComparing(c -> c.size, Comparator.reverseOrder())
+                .thenComparing(c -> c.hash));
+
+        Path tmpPack = Files.createTempFile(packDir, "tmp_pack_", null);
+        Map<String, Long> offsets = new TreeMap<>();
+        byte[] checksum;
+        try {
+            MessageDigest digest = SitUtil.newSha1();
+            try (CountingStream counting = new CountingStream(new DigestOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpPack), SitUtil.BUFFER_SIZE), digest));
+                 DataOutputStream out = new DataOutputStream(counting)) {
+                out.write(PackFile.PACK_MAGIC);
+                out.writeInt(PackFile.VERSION);
+                out.writeInt(candidates.size());
+
+                Deque<Candidate> window = new ArrayDeque<>();
+                for (Candidate candidate : candidates) {
+                    offsets.put(candidate.hash, counting.count);
+                    if (candidate.size > DELTA_SIZE_LIMIT) {
+                        writeFullStreaming(out, candidate);
+                        continue;
+                    }
+
+                    byte[] data = repository.readObject(candidate.hash);
+                    Candidate base = null;
+                    byte[] bestDelta = null;
+                    for (Candidate other : window) {
+                        if (other.depth >= MAX_DEPTH || !worthTrying(other, data.length)) {
+                            continue;
+                        }
+                        int limit = bestDelta == null ? data.length / 2 : bestDelta.length;
+                        byte[] delta = Delta.create(other.index(), data, limit);
+                        if (delta != null) {
+                            bestDelta = delta;
+                            base = other;
+                        }
+                    }
+
+                    if (bestDelta != null) {
+                        out.writeByte(PackFile.TYPE_DELTA);
+                        writeVarint(out, bestDelta.length);
+                        out.write(HEX.parseHex(base.hash));
+                        writeDeflated(out, bestDelta);
+                        candidate.depth = base.depth + 1;
+                        deltaCount++;
+                    } else {
+                        out.writeByte(PackFile.TYPE_FULL);
+                        writeVarint(out, data.length);
+                        writeDeflated(out, data);
+                    }
+
+                    candidate.data = data;
+                    window.addFirst(candidate);
+                    if (window.size() > WINDOW) {
+                        Candidate evicted = window.removeLast();
+                        evicted.data = null;
+                        evicted.index = null;
+                    }
+                }
+
+                out.flush();
+                checksum = digest.digest();
+                out.write(checksum);
+            }
+
+            String name = "pack-" + HEX.formatHex(checksum);
+            Path packPath = packDir.resolve(name + ".pack");
+            Path idxPath = packDir.resolve(name + ".idx");
+            Files.move(tmpPack, packPath, StandardCopyOption.REPLACE_EXISTING);
+            // The idx goes last: a pack is only visible to readers once it has one
+            writeIndex(idxPath, offsets, checksum);
+            return packPath;
+        } finally {
+            Files.deleteIfExists(tmpPack);
+        }
+    }
+
+    private void writeIndex(Path idxPath, Map<String, Long> offsets, byte[] packChecksum) throws IOException {
+        int[] fanout = new int[256];
+        for (String hash : offsets.keySet()) {
+            fanout[Integer.parseInt(hash, 0, 2, 16)]++;
+        }
+        for (int i = 1; i < 256; i++) {
+            fanout[i] += fanout[i - 1];
+        }
+
+        Path tmp = Files.createTempFile(idxPath.getParent(), "tmp_idx_", null);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), SitUtil.BUFFER_SIZE))) {
+                out.write(PackFile.IDX_MAGIC);
+                out.writeInt(PackFile.VERSION);
+                out.writeInt(offsets.size());
+                for (int count : fanout) {
+                    out.writeInt(count);
+                }
+                // TreeMap order over lowercase hex == unsigned byte order of the raw hash
+                for (String hash : offsets.keySet()) {
+                    out.write(HEX.parseHex(hash));
+                }
+                for (long offset : offsets.values()) {
+                    out.writeLong(offset);
+                }
+                out.write(packChecksum);
+            }
+            Files.move(tmp, idxPath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void writeFullStreaming(DataOutputStream out, Candidate candidate) throws IOException {
+        out.writeByte(PackFile.TYPE_FULL);
+        writeVarint(out, candidate.size);
+        Deflater deflater = new Deflater();
+        try (InputStream in = repository.openObject(candidate.hash);
+             DeflaterOutputStream deflated = new DeflaterOutputStream(new NonClosing(out), deflater,
+                     SitUtil.BUFFER_SIZE)) {
+            in.transferTo(deflated);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeDeflated(DataOutputStream out, byte[] data) throws IOException {
+        Deflater deflater = new Deflater();
+        try (DeflaterOutputStream deflated = new DeflaterOutputStream(new NonClosing(out), deflater,
+                SitUtil.BUFFER_SIZE)) {
+            deflated.write(data);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // A delta can't be smaller than the bytes it has to insert, so skip bases
+    // whose size is too far off to ever beat the half-size threshold.
+    private static boolean worthTrying(Candidate base, int targetSize) {
+        return Math.abs(base.size - targetSize) < targetSize / 2;
+    }
+
+    private static String nameOf(String path) {
+        if (path == null) {
+            return "";
+        }
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? path : path.substring(slash + 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static final class Candidate {
+        final String hash;
+        final String name;
+        final long size;
+        int depth;
+        byte[] data;
+        Delta.Index index;
+
+        Candidate(String hash, String name, long size) {
+            this.hash = hash;
+            this.name = name;
+            this.size = size;
+        }
+
+        Delta.Index index() {
+            if (index == null) {
+                index = new Delta.Index(data);
+            }
+            return index;
+        }
+    }
+
+    private static final class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    // Lets a per-entry DeflaterOutputStream finish without closing the pack stream
+    private static final class NonClosing extends FilterOutputStream {
+        NonClosing(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+// For a selection of commits, the set of objects (trees and blobs) each one
+// reaches, as EWAH bitmaps. Written by gc next to the packs:
+//
+//   .sit/objects/pack/reachability.bitmap
+//       "SBMP" | version:int | objectCount:int | commitCount:int
+//       | objects:objectCount x 20        bit i of every bitmap is object i
+//       | commits:commitCount x (hash:20 | bitmap:(words:int | words x long))
+//       | SHA-1 of the above
+//
+// Objects are numbered in the order history first reaches them, oldest commits
+// first, so the objects of one stretch of history sit next to each other and
+// most of any bitmap compresses into a few long runs. The numbering is stored
+// rather than derived, so it stays valid however the objects are repacked.
+public class ReachabilityBitmaps {
+
+    public static final String BITMAP_FILE = ".sit/objects/pack/reachability.bitmap";
+
+    private static final byte[] MAGIC = {'S', 'B', 'M', 'P'};
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 20;
+    private static final int HEADER_SIZE = 16;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final ByteBuffer data;
+    private final int objectCount;
+    private final Map<String, Integer> commitOffsets;
+    private Map<String, Integer> positions;
+
+    private ReachabilityBitmaps(ByteBuffer data, int objectCount, Map<String, Integer> commitOffsets) {
+        this.data = data;
+        this.objectCount = objectCount;
+        this.commitOffsets = commitOffsets;
+    }
+
+    // Null when gc hasn't written any bitmaps yet
+    public static ReachabilityBitmaps load() throws IOException {
+        Path path = Paths.get(BITMAP_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(i) != MAGIC[i]) {
+                throw new IOException(BITMAP_FILE + " is corrupt (bad header)");
+            }
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException(BITMAP_FILE + ": unsupported version " + data.getInt(4));
+        }
+        int objectCount = data.getInt(8);
+        int commitCount = data.getInt(12);
+
+        // Only the commit table is read up front; bitmaps are decoded on request
+        Map<String, Integer> commitOffsets = new HashMap<>();
+        int offset = HEADER_SIZE + objectCount * HASH_SIZE;
+        for (int i = 0; i < commitCount; i++) {
+            byte[] hash = new byte[HASH_SIZE];
+            data.get(offset, hash);
+            commitOffsets.put(HEX.formatHex(hash), offset + HASH_SIZE);
+            offset += HASH_SIZE + 4 + data.getInt(offset + HASH_SIZE) * 8;
+        }
+        return new ReachabilityBitmaps(data, objectCount, commitOffsets);
+    }
+
+    public int objectCount() {
+        return objectCount;
+    }
+
+    public String objectAt(int position) {
+        byte[] hash = new byte[HASH_SIZE];
+        data.get(HEADER_SIZE + position * HASH_SIZE, hash);
+        return HEX.formatHex(hash);
+    }
+
+    // -1 for objects the file doesn't number
+    public int positionOf(String hash) {
+        if (positions == null) {
+            positions = new HashMap<>(objectCount * 2);
+            for (int i = 0; i < objectCount; i++) {
+                positions.put(objectAt(i), i);
+            }
+        }
+        return positions.getOrDefault(hash, -1);
+    }
+
+    public Set<String> commits() {
+        return Collections.unmodifiableSet(commitOffsets.keySet());
+    }
+
+    // Null for commits without a bitmap
+    public EwahBitmap get(String commitId) {
+        Integer offset = commitOffsets.get(commitId);
+        return offset == null ? null : EwahBitmap.read(data.duplicate().position(offset));
+    }
+
+    // `objects` in bit order, and the bitmap of every selected commit
+    public static void write(List<String> objects, Map<String, EwahBitmap> bitmaps) throws IOException {
+        Path path = Paths.get(BITMAP_FILE);
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling("reachability.bitmap.lock");
+        MessageDigest digest = SitUtil.newSha1();
+        DigestOutputStream digestOut = new DigestOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), SitUtil.BUFFER_SIZE), digest);
+        try (DataOutputStream out = new DataOutputStream(digestOut)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(objects.size());
+            out.writeInt(bitmaps.size());
+            for (String object : objects) {
+                out.write(HEX.parseHex(object));
+            }
+            for (Map.Entry<String, EwahBitmap> entry : new TreeMap<>(bitmaps).entrySet()) {
+                out.write(HEX.parseHex(entry.getKey()));
+                entry.getValue().write(out);
+            }
+            digestOut.on(false);
+            out.write(digest.digest());
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
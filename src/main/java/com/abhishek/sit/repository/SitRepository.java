@@ -1,11 +1,17 @@
 package com.abhishek.sit.repository;
 
+import com.abhishek.sit.util.Trace;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 @Service
 public class SitRepository {
@@ -14,17 +20,92 @@ public class SitRepository {
     public static final String OBJECTS_DIR = ".sit/objects";
     public static final String COMMITS_DIR = ".sit/commits";
     public static final String HEAD_FILE = ".sit/HEAD";
+    // The other side of a merge that stopped on conflicts
+    public static final String MERGE_HEAD_FILE = ".sit/MERGE_HEAD";
+
+    public static final String PACK_DIR = ".sit/objects/pack";
+
+    private final LooseObjectStore looseObjects = new LooseObjectStore(Paths.get(OBJECTS_DIR));
+    private final PackStore packs = new PackStore(Paths.get(PACK_DIR));
+    private final CommitStore commits = new CommitStore(Paths.get(COMMITS_DIR));
 
     public boolean isInitialized() {
         return new File(DOT_SIT).exists();
     }
 
     public void saveObject(String hash, byte[] data) throws IOException {
-        Files.write(Paths.get(OBJECTS_DIR, hash), data);
+        if (!hasObject(hash)) {
+            looseObjects.write(hash, data);
+        }
+    }
+
+    // Streams the file into the object store in a single read, hashing it on
+    // the way, and returns its hash. Content that is already stored (loose or
+    // packed) is not written again.
+    public String saveObject(Path source) throws IOException {
+        return looseObjects.write(source, this::hasObject);
+    }
+
+    // Unified read path: packs first, then loose objects in either layout
+    public boolean hasObject(String hash) {
+        return packs.contains(hash) || looseObjects.contains(hash);
+    }
+
+    public InputStream openObject(String hash) throws IOException {
+        Trace.count(Trace.Counter.OBJECTS_READ);
+        InputStream packed = packs.open(hash);
+        return packed != null ? packed : looseObjects.open(hash);
+    }
+
+    public long objectSize(String hash) throws IOException {
+        long size = packs.objectSize(hash);
+        return size >= 0 ? size : looseObjects.size(hash);
+    }
+
+    public byte[] readObject(String hash) throws IOException {
+        try (InputStream in = openObject(hash)) {
+            return in.readAllBytes();
+        }
+    }
+
+    // Streams a blob out to the working tree without holding it on the heap.
+    // (Not Files.copy: that would carry the object file's permissions over.)
+    // Objects stored uncompressed are handed to FileChannel.transferTo, so the
+    // kernel copies them without the bytes ever passing through Java.
+    public void copyObject(String hash, Path target) throws IOException {
+        if (!packs.contains(hash) && looseObjects.isLegacy(hash)) {
+            Trace.count(Trace.Counter.OBJECTS_READ);
+            try (FileChannel in = FileChannel.open(looseObjects.legacyPath(hash), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            return;
+        }
+        try (InputStream in = openObject(hash);
+             OutputStream out = Files.newOutputStream(target)) {
+            in.transferTo(out);
+        }
+    }
+
+    public LooseObjectStore getLooseObjects() {
+        return looseObjects;
+    }
+
+    public PackStore getPacks() {
+        return packs;
+    }
+
+    public CommitStore getCommits() {
+        return commits;
     }
 
     public void saveCommit(String hash, String content) throws IOException {
-        Files.writeString(Paths.get(COMMITS_DIR, hash), content);
+        commits.write(hash, content);
     }
 
     public String getCurrentBranch() throws IOException {
@@ -0,0 +1,118 @@
+package com.abhishek.sit.service;
+
+import com.abhishek.sit.repository.BloomFilter;
+import com.abhishek.sit.repository.ChangedPathFilters;
+import com.abhishek.sit.repository.CommitGraph;
+import com.abhishek.sit.repository.SitRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Which paths a commit changed relative to its first parent. Every commit
+// records a Bloom filter of them (the files plus every directory above them),
+// so a path-limited history walk can pass over most commits on a filter probe
+// alone and only diffs the few the filter can't rule out.
+@Service
+public class ChangedPathService {
+
+    private final SitRepository sitRepository;
+    private final TreeService treeService;
+    private final CommitGraphService commitGraphService;
+    private ChangedPathFilters filters;
+    private long filtersStamp = -1;
+
+    @Autowired
+    public ChangedPathService(SitRepository sitRepository, TreeService treeService,
+            CommitGraphService commitGraphService) {
+        this.sitRepository = sitRepository;
+        this.treeService = treeService;
+        this.commitGraphService = commitGraphService;
+    }
+
+    // Called right after a commit is written; its trees are still hot
+    public void recordCommit(String commitId, List<String> parents) throws IOException {
+        String parent = parents.isEmpty() ? null : parents.get(0);
+        ChangedPathFilters.append(commitId, BloomFilter.of(filterKeys(changedPaths(parent, commitId))));
+    }
+
+    // Rewrites the filter file for every commit in the graph, reusing the
+    // filters already stored. Returns the number of filters written.
+    public int rebuild() throws IOException {
+        ChangedPathFilters current = filters();
+        Map<String, BloomFilter> rebuilt = new HashMap<>();
+        for (CommitGraph.Node node : commitGraphService.getNodes()) {
+            BloomFilter filter = current.get(node.id());
+            if (filter == null) {
+                String parent = node.parents().isEmpty() ? null : node.parents().get(0);
+                filter = BloomFilter.of(filterKeys(changedPaths(parent, node.id())));
+            }
+            rebuilt.put(node.id(), filter);
+        }
+        ChangedPathFilters.write(rebuilt);
+        return rebuilt.size();
+    }
+
+    // Did `commitId` change anything at or under one of `paths`, compared to
+    // `parent`? Commits the filter rules out are never opened.
+    public boolean touches(String commitId, String parent, List<String> paths) throws IOException {
+        BloomFilter filter = filters().get(commitId);
+        if (filter != null) {
+            boolean maybe = false;
+            for (String path : paths) {
+                if (filter.mightContain(path)) {
+                    maybe = true;
+                    break;
+                }
+            }
+            if (!maybe) {
+                return false;
+            }
+        }
+        for (String changed : changedPaths(parent, commitId)) {
+            for (String path : paths) {
+                if (changed.equals(path) || (changed.startsWith(path) && changed.charAt(path.length()) == '/')) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Set<String> changedPaths(String parent, String commitId) throws IOException {
+        if (parent != null && !sitRepository.getCommits().contains(parent)) {
+            parent = null; // Pruned or missing parent: everything counts as added
+        }
+        return treeService.diffCommits(parent, commitId).keySet();
+    }
+
+    // "a/b/c.txt" also puts "a/b" and "a" in the filter, so a directory can
+    // be asked for directly
+    private static Set<String> filterKeys(Set<String> changed) {
+        Set<String> keys = new HashSet<>(changed);
+        for (String path : changed) {
+            int slash = path.lastIndexOf('/');
+            while (slash > 0 && keys.add(path.substring(0, slash))) {
+                slash = path.lastIndexOf('/', slash - 1);
+            }
+        }
+        return keys;
+    }
+
+    // Reloads when gc rewrote the file or a commit appended to the log
+    private synchronized ChangedPathFilters filters() throws IOException {
+        Path filtersPath = Paths.get(ChangedPathFilters.FILTERS_FILE);
+        Path logPath = Paths.get(ChangedPathFilters.LOG_FILE);
+        long stamp = (Files.exists(filtersPath) ? Files.getLastModifiedTime(filtersPath).toMillis() : 0) * 31
+                + (Files.exists(logPath) ? Files.size(logPath) : -1);
+        if (filters == null || stamp != filtersStamp) {
+            filters = ChangedPathFilters.load();
+            filtersStamp = stamp;
+        }
+        return filters;
+    }
+}
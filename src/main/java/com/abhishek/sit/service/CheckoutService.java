@@ -1,30 +1,44 @@
 package com.abhishek.sit.service;
 
+import com.abhishek.sit.model.FileStat;
+import com.abhishek.sit.model.IndexEntry;
 import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.Trace;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class CheckoutService {
 
     private final SitRepository sitRepository;
     private final IndexService indexService;
+    private final TreeService treeService;
 
     @Autowired
-    public CheckoutService(SitRepository sitRepository, IndexService indexService) {
+    public CheckoutService(SitRepository sitRepository, IndexService indexService, TreeService treeService) {
         this.sitRepository = sitRepository;
         this.indexService = indexService;
+        this.treeService = treeService;
     }
 
     public void handleCheckout(String branchName) {
+        handleCheckout(branchName, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void handleCheckout(String branchName, int jobs) {
         if (!sitRepository.isInitialized()) {
             System.out.println("Not a sit repository.");
             return;
@@ -42,43 +56,29 @@ public class CheckoutService {
             String targetCommitId = Files.readString(branchFile.toPath()).trim();
 
             // 3. Read Commit Data
-            File commitFile = new File(SitRepository.COMMITS_DIR, targetCommitId);
-            if (!commitFile.exists()) {
+            if (!sitRepository.getCommits().contains(targetCommitId)) {
                 System.out.println("Error: Commit object " + targetCommitId + " missing.");
                 return;
             }
 
-            List<String> lines = Files.readAllLines(commitFile.toPath());
-            Map<String, String> newIndexState = new HashMap<>();
-
-            boolean headerEnded = false;
-            for (String line : lines) {
-                if (line.isEmpty()) {
-                    headerEnded = true;
-                    continue;
+            // 4. Bring the working tree and index over from the current commit,
+            // unless that would lose uncommitted work
+            String headCommitId = sitRepository.getHeadCommitId();
+            Map<String, String[]> changes = treeService.diffCommits(headCommitId, targetCommitId);
+            Map<String, IndexEntry> index = indexService.loadIndexEntries();
+            List<String> dirty = findLocalChanges(changes, index);
+            if (!dirty.isEmpty()) {
+                System.out.println("Error: Your local changes to the following files would be overwritten by checkout:");
+                for (String path : dirty) {
+                    System.out.println("\t" + path);
                 }
-                if (!headerEnded)
-                    continue;
-
-                // File entry: path:hash
-                int separator = line.lastIndexOf(':');
-                if (separator == -1)
-                    continue;
-
-                String path = line.substring(0, separator);
-                String hash = line.substring(separator + 1);
-
-                // 4. Restore File
-                restoreFile(path, hash);
-
-                // 5. Update Index Map
-                newIndexState.put(path, hash);
+                System.out.println("Please commit your changes before you switch branches.");
+                System.out.println("Aborting.");
+                return;
             }
+            applyChanges(changes, index, jobs);
 
-            // 6. Update .sit/index
-            indexService.saveIndex(newIndexState);
-
-            // 7. Update HEAD
+            // 5. Update HEAD
             // HEAD should point to the ref: refs/heads/<branch>
             Files.writeString(Paths.get(SitRepository.HEAD_FILE), "ref: refs/heads/" + branchName);
 
@@ -89,21 +89,154 @@ public class CheckoutService {
         }
     }
 
+    // Moves the working tree and index from one commit to another. Only paths
+    // whose blob differs between the two are written or deleted; every other
+    // index entry, stat data included, is carried over untouched, and the index
+    // is written once at the end. Returns the number of paths changed.
+    public int updateWorkingTree(String fromCommitId, String toCommitId, int jobs) throws IOException {
+        return applyChanges(treeService.diffCommits(fromCommitId, toCommitId), jobs);
+    }
+
+    // Applies path -> {oldHash, newHash} changes (newHash null for a deletion)
+    // to the working tree and index
+    public int applyChanges(Map<String, String[]> changes, int jobs) throws IOException {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        return applyChanges(changes, indexService.loadIndexEntries(), jobs);
+    }
+
+    // Paths among path -> {HEAD blob, new blob} changes whose index entry or
+    // working file no longer matches HEAD (null: not in HEAD), plus untracked
+    // files in the way of paths the change adds. Writing any of them would
+    // destroy work that isn't committed anywhere.
+    public List<String> findLocalChanges(Map<String, String[]> changes, Map<String, IndexEntry> index)
+            throws IOException {
+        List<String> dirty = new ArrayList<>();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String path = change.getKey();
+            String headHash = change.getValue()[0];
+            IndexEntry entry = index.get(path);
+            Path workingFile = Paths.get(path);
+            boolean exists = Files.exists(workingFile);
+            if (headHash == null) {
+                if (entry != null || exists) {
+                    dirty.add(path);
+                }
+            } else if (entry == null || !entry.hash().equals(headHash) || !exists
+                    || !headHash.equals(indexService.hashWorkingFile(workingFile, entry))) {
+                dirty.add(path);
+            }
+        }
+        return dirty;
+    }
+
+    private int applyChanges(Map<String, String[]> changes, Map<String, IndexEntry> index, int jobs)
+            throws IOException {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, String> writes = new TreeMap<>();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String path = change.getKey();
+            String hash = change.getValue()[1];
+            if (hash == null) {
+                deleteFile(path);
+                index.remove(path);
+            } else {
+                writes.put(path, hash);
+            }
+        }
+
+        index.putAll(materialize(writes, jobs));
+        indexService.saveIndexEntries(index);
+        return changes.size();
+    }
+
+    // Writes path -> blob out to the working tree on a bounded pool of `jobs`
+    // writers and returns the index entries for them, with fresh stat data so
+    // status doesn't rehash them. A checkout of a large tree is bound by
+    // per-file syscall latency rather than bandwidth, so the writes overlap.
+    private Map<String, IndexEntry> materialize(Map<String, String> writes, int jobs) throws IOException {
+        // Directories first, once each, so the writers never race on mkdirs.
+        // (Deletions already ran, so no file is left where a directory goes.)
+        Set<Path> dirs = new TreeSet<>();
+        for (String path : writes.keySet()) {
+            Path parent = Paths.get(path).getParent();
+            if (parent != null) {
+                dirs.add(parent);
+            }
+        }
+        for (Path dir : dirs) {
+            Files.createDirectories(dir);
+        }
+
+        long start = System.nanoTime();
+        AtomicLong bytesWritten = new AtomicLong();
+        SortedMap<String, IndexEntry> entries = new ConcurrentSkipListMap<>();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, jobs));
+        Trace.Phase phase = Trace.phase("write working tree");
+        try {
+            pool.submit(() -> writes.entrySet().parallelStream().forEach(write -> {
+                try {
+                    String path = write.getKey();
+                    String hash = write.getValue();
+                    restoreFile(path, hash);
+                    Path workingFile = Paths.get(path);
+                    FileStat stat = Files.exists(workingFile) ? SitUtil.stat(workingFile) : FileStat.UNKNOWN;
+                    entries.put(path, new IndexEntry(hash, stat));
+                    bytesWritten.addAndGet(Math.max(stat.size(), 0));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException u) {
+                throw u.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            phase.end();
+            pool.shutdown();
+        }
+
+        if (!writes.isEmpty()) {
+            printThroughput(writes.size(), bytesWritten.get(), System.nanoTime() - start);
+        }
+        return entries;
+    }
+
+    private void printThroughput(int files, long bytes, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        double megabytes = bytes / (1024.0 * 1024.0);
+        System.out.printf("Wrote %d files (%.1f MB) in %.2fs: %.0f files/s, %.1f MB/s%n",
+                files, megabytes, seconds, files / seconds, megabytes / seconds);
+    }
+
     private void restoreFile(String path, String hash) throws IOException {
-        File blobFile = new File(SitRepository.OBJECTS_DIR, hash);
-        if (!blobFile.exists()) {
+        if (!sitRepository.hasObject(hash)) {
             System.err.println("Warning: Blob " + hash + " missing for file " + path);
             return;
         }
+        sitRepository.copyObject(hash, Paths.get(path));
+    }
 
-        byte[] content = Files.readAllBytes(blobFile.toPath());
+    // Deletes a file and any directories that are left empty by it
+    private void deleteFile(String path) throws IOException {
         File workingFile = new File(path);
+        Files.deleteIfExists(workingFile.toPath());
 
-        // Ensure parent dirs exist
-        if (workingFile.getParentFile() != null) {
-            workingFile.getParentFile().mkdirs();
+        File dir = workingFile.getParentFile();
+        while (dir != null) {
+            String[] children = dir.list();
+            if (children == null || children.length > 0 || !dir.delete()) {
+                break;
+            }
+            dir = dir.getParentFile();
         }
-
-        Files.write(workingFile.toPath(), content);
     }
 }
@@ -0,0 +1,275 @@
+package com.abhishek.sit.service;
+
+import com.abhishek.sit.model.Commit;
+import com.abhishek.sit.repository.CommitGraph;
+import com.abhishek.sit.repository.SitRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+// History queries (parents, ancestry) answered from the commit-graph, falling
+// back to parsing commit files for anything the graph doesn't cover yet.
+@Service
+public class CommitGraphService {
+
+    // Generation for commits outside the graph: never used to prune a walk
+    public static final int GENERATION_UNKNOWN = 0;
+
+    // Paint flags for the merge-base walk
+    private static final int PARENT1 = 1;
+    private static final int PARENT2 = 2;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    private static final Comparator<CommitGraph.Node> NEWEST_FIRST = (x, y) -> {
+        if (x.generation() != GENERATION_UNKNOWN && y.generation() != GENERATION_UNKNOWN
+                && x.generation() != y.generation()) {
+            return Integer.compare(y.generation(), x.generation());
+        }
+        return Long.compare(y.date(), x.date());
+    };
+
+    private final SitRepository sitRepository;
+    private CommitGraph graph;
+    private long graphStamp = -1;
+
+    @Autowired
+    public CommitGraphService(SitRepository sitRepository) {
+        this.sitRepository = sitRepository;
+    }
+
+    public CommitGraph.Node getNode(String commitId) throws IOException {
+        return node(graph(), commitId);
+    }
+
+    public List<String> getParents(String commitId) throws IOException {
+        return getNode(commitId).parents();
+    }
+
+    // Every commit the graph knows about
+    public Collection<CommitGraph.Node> getNodes() throws IOException {
+        return graph().nodes();
+    }
+
+    // Called right after a commit is written: appends it to the graph log
+    public void recordCommit(String commitId, List<String> parents, LocalDateTime date) throws IOException {
+        CommitGraph current = graph();
+        for (String parent : parents) {
+            if (current.get(parent) == null) {
+                // History from before the graph existed: build it once, then append
+                rebuildGraph();
+                current = graph();
+                break;
+            }
+        }
+
+        int generation = 1;
+        for (String parent : parents) {
+            CommitGraph.Node parentNode = current.get(parent);
+            if (parentNode != null) {
+                generation = Math.max(generation, parentNode.generation() + 1);
+            }
+        }
+        CommitGraph.append(new CommitGraph.Node(commitId, parents, generation, toEpochSeconds(date)));
+    }
+
+    // Rebuilds .sit/commit-graph from every commit file. Returns the commit count.
+    public int rebuildGraph() throws IOException {
+        Map<String, CommitGraph.Node> parsed = new HashMap<>();
+        for (String commitId : sitRepository.getCommits().list()) {
+            CommitGraph.Node node = parseNode(commitId);
+            parsed.put(node.id(), node);
+        }
+
+        // Generations bottom-up with an explicit stack (histories can be deep)
+        Map<String, Integer> generations = new HashMap<>();
+        for (String start : parsed.keySet()) {
+            Deque<String> stack = new ArrayDeque<>();
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (generations.containsKey(id)) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                int generation = 1;
+                for (String parent : parsed.get(id).parents()) {
+                    if (!parsed.containsKey(parent)) {
+                        continue; // Dangling parent, treat as root
+                    }
+                    Integer parentGeneration = generations.get(parent);
+                    if (parentGeneration == null) {
+                        stack.push(parent);
+                        ready = false;
+                    } else {
+                        generation = Math.max(generation, parentGeneration + 1);
+                    }
+                }
+                if (ready) {
+                    generations.put(id, generation);
+                    stack.pop();
+                }
+            }
+        }
+
+        List<CommitGraph.Node> nodes = new ArrayList<>(parsed.size());
+        for (CommitGraph.Node node : parsed.values()) {
+            List<String> parents = node.parents().stream().filter(parsed::containsKey).toList();
+            nodes.add(new CommitGraph.Node(node.id(), parents, generations.get(node.id()), node.date()));
+        }
+        CommitGraph.write(nodes);
+        return nodes.size();
+    }
+
+    // Is `ancestor` reachable from `commitId`? Walks parents newest-first and
+    // drops any commit whose generation is already below the ancestor's, since
+    // nothing behind it can lead back up to the ancestor.
+    public boolean isAncestor(String ancestor, String commitId) throws IOException {
+        if (ancestor.equals(commitId)) {
+            return true;
+        }
+        CommitGraph current = graph();
+        int target = node(current, ancestor).generation();
+
+        Queue<CommitGraph.Node> queue = new PriorityQueue<>(
+                Comparator.comparingInt((CommitGraph.Node n) -> n.generation()).reversed());
+        Set<String> visited = new HashSet<>();
+        queue.add(node(current, commitId));
+        visited.add(commitId);
+
+        while (!queue.isEmpty()) {
+            CommitGraph.Node node = queue.poll();
+            if (node.id().equals(ancestor)) {
+                return true;
+            }
+            if (target != GENERATION_UNKNOWN && node.generation() != GENERATION_UNKNOWN
+                    && node.generation() <= target) {
+                continue;
+            }
+            for (String parent : node.parents()) {
+                if (visited.add(parent)) {
+                    queue.add(node(current, parent));
+                }
+            }
+        }
+        return false;
+    }
+
+    // Best common ancestors of two commits: the common ancestors that are not
+    // themselves ancestors of another one (usually just one). Both histories
+    // are walked at once, newest first by generation (date for commits outside
+    // the graph), painting each commit with the side(s) it was reached from.
+    // A commit reached from both sides is a candidate and everything behind it
+    // is stale; the walk ends as soon as only stale commits are queued, so it
+    // never goes further back than the merge base itself.
+    public List<String> mergeBases(String one, String two) throws IOException {
+        if (one.equals(two)) {
+            return List.of(one);
+        }
+        CommitGraph current = graph();
+        Map<String, Integer> flags = new HashMap<>();
+        Queue<CommitGraph.Node> queue = new PriorityQueue<>(NEWEST_FIRST);
+        Set<String> nonStale = new HashSet<>();
+        List<CommitGraph.Node> candidates = new ArrayList<>();
+
+        flags.put(one, PARENT1);
+        flags.put(two, PARENT2);
+        queue.add(node(current, one));
+        queue.add(node(current, two));
+        nonStale.add(one);
+        nonStale.add(two);
+
+        while (!nonStale.isEmpty() && !queue.isEmpty()) {
+            CommitGraph.Node node = queue.poll();
+            nonStale.remove(node.id());
+            int nodeFlags = flags.get(node.id());
+            int paint = nodeFlags & (PARENT1 | PARENT2 | STALE);
+            if ((nodeFlags & (PARENT1 | PARENT2)) == (PARENT1 | PARENT2)) {
+                if ((nodeFlags & RESULT) == 0) {
+                    flags.put(node.id(), nodeFlags | RESULT);
+                    candidates.add(node);
+                }
+                paint |= STALE;
+            }
+            for (String parent : node.parents()) {
+                int parentFlags = flags.getOrDefault(parent, 0);
+                if ((parentFlags & paint) == paint) {
+                    continue; // Already painted with everything we carry
+                }
+                parentFlags |= paint;
+                flags.put(parent, parentFlags);
+                queue.add(node(current, parent));
+                if ((parentFlags & STALE) == 0) {
+                    nonStale.add(parent);
+                } else {
+                    nonStale.remove(parent);
+                }
+            }
+        }
+
+        // Out-of-order commits (outside the graph) can leave a candidate that
+        // is an ancestor of another one
+        List<String> bases = new ArrayList<>();
+        candidates.sort(NEWEST_FIRST);
+        for (CommitGraph.Node candidate : candidates) {
+            boolean redundant = false;
+            for (String base : bases) {
+                if (isAncestor(candidate.id(), base)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                bases.add(candidate.id());
+            }
+        }
+        return bases;
+    }
+
+    private CommitGraph.Node node(CommitGraph graph, String commitId) throws IOException {
+        CommitGraph.Node node = graph.get(commitId);
+        return node != null ? node : parseNode(commitId);
+    }
+
+    private CommitGraph.Node parseNode(String commitId) throws IOException {
+        Commit commit = sitRepository.getCommits().read(commitId);
+        if (commit == null) {
+            return new CommitGraph.Node(commitId, List.of(), GENERATION_UNKNOWN, 0);
+        }
+        return new CommitGraph.Node(commitId, commit.parents(), GENERATION_UNKNOWN, parseDate(commit.date()));
+    }
+
+    // Reloads the graph when gc rewrote it or a commit appended to the log
+    private synchronized CommitGraph graph() throws IOException {
+        Path graphPath = Paths.get(CommitGraph.GRAPH_FILE);
+        Path logPath = Paths.get(CommitGraph.LOG_FILE);
+        long stamp = (Files.exists(graphPath) ? Files.getLastModifiedTime(graphPath).toMillis() : 0) * 31
+                + (Files.exists(logPath) ? Files.size(logPath) : -1);
+        if (graph == null || stamp != graphStamp) {
+            graph = CommitGraph.load();
+            graphStamp = stamp;
+        }
+        return graph;
+    }
+
+    public static long parseDate(String value) {
+        try {
+            return toEpochSeconds(LocalDateTime.parse(value));
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    private static long toEpochSeconds(LocalDateTime date) {
+        return date.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
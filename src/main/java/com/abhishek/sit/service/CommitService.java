@@ -2,12 +2,15 @@ package com.abhishek.sit.service;
 
 import com.abhishek.sit.repository.SitRepository;
 import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.Trace;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -16,11 +19,18 @@ public class CommitService {
 
     private final SitRepository sitRepository;
     private final IndexService indexService;
+    private final TreeService treeService;
+    private final CommitGraphService commitGraphService;
+    private final ChangedPathService changedPathService;
 
     @Autowired
-    public CommitService(SitRepository sitRepository, IndexService indexService) {
+    public CommitService(SitRepository sitRepository, IndexService indexService, TreeService treeService,
+            CommitGraphService commitGraphService, ChangedPathService changedPathService) {
         this.sitRepository = sitRepository;
         this.indexService = indexService;
+        this.treeService = treeService;
+        this.commitGraphService = commitGraphService;
+        this.changedPathService = changedPathService;
     }
 
     public void handleCommit(String message) {
@@ -38,36 +48,24 @@ public class CommitService {
                 return;
             }
 
-            // 2. Create Commit Content
+            // 2. Write the directory trees; unchanged directories hash the same
+            // as in the parent commit and are not written again
+            String treeHash = treeService.writeTree(fileHashes);
+
+            // 3. A merge that stopped on conflicts left its other parent behind
             String parentId = sitRepository.getHeadCommitId();
-            StringBuilder commitContent = new StringBuilder();
+            List<String> parents = new ArrayList<>();
             if (parentId != null) {
-                commitContent.append("parent: ").append(parentId).append("\n");
+                parents.add(parentId);
             }
-            commitContent.append("author: User <user@example.com>\n");
-            commitContent.append("date: ").append(LocalDateTime.now()).append("\n");
-            commitContent.append("message: ").append(message).append("\n");
-            commitContent.append("\n"); // Separator
-
-            for (Map.Entry<String, String> entry : fileHashes.entrySet()) {
-                // Format: path hash (as per original implementation which used path + " " +
-                // hash?)
-                // Wait, original: entry.getKey() + " " + entry.getValue()
-                // IndexService format: path:hash (in file), loadIndex returns map.
-                // Reusing the map logic is fine.
-                // NOTE: Original used space separator in commit content "path hash"
-                // My previous attempt assumed "path:hash". I will stick to "path hash" based on
-                // line 56.
-                commitContent.append(entry.getKey()).append(":").append(entry.getValue()).append("\n");
+            Path mergeHead = Paths.get(SitRepository.MERGE_HEAD_FILE);
+            if (Files.exists(mergeHead)) {
+                parents.add(Files.readString(mergeHead).trim());
             }
 
-            // 3. Save Commit
-            String commitData = commitContent.toString();
-            String commitHash = SitUtil.getSha1(commitData.getBytes());
-            sitRepository.saveCommit(commitHash, commitData);
-
-            // 4. Update HEAD
-            sitRepository.updateHead(commitHash);
+            // 4. Save Commit, update HEAD and the commit-graph
+            String commitHash = createCommit(treeHash, parents, message);
+            Files.deleteIfExists(mergeHead);
 
             System.out.println("[" + (parentId == null ? "root-commit" : "main") + " " + commitHash.substring(0, 7)
                     + "] " + message);
@@ -77,4 +75,35 @@ public class CommitService {
         }
     }
 
+    // Writes a commit of `treeHash`, moves the current branch to it and keeps
+    // the commit-graph and changed-path filters current. Returns the new commit id.
+    public String createCommit(String treeHash, List<String> parents, String message) throws IOException {
+        StringBuilder commitContent = new StringBuilder();
+        commitContent.append("tree: ").append(treeHash).append("\n");
+        for (String parent : parents) {
+            commitContent.append("parent: ").append(parent).append("\n");
+        }
+        commitContent.append("author: User <user@example.com>\n");
+        LocalDateTime date = LocalDateTime.now();
+        commitContent.append("date: ").append(date).append("\n");
+        commitContent.append("message: ").append(message).append("\n");
+
+        String commitData = commitContent.toString();
+        String commitHash = SitUtil.getSha1(commitData.getBytes());
+        Trace.Phase writeCommit = Trace.phase("write commit");
+        try {
+            sitRepository.saveCommit(commitHash, commitData);
+            sitRepository.updateHead(commitHash);
+        } finally {
+            writeCommit.end();
+        }
+        Trace.Phase updateGraph = Trace.phase("update commit-graph");
+        try {
+            commitGraphService.recordCommit(commitHash, parents, date);
+            changedPathService.recordCommit(commitHash, parents);
+        } finally {
+            updateGraph.end();
+        }
+        return commitHash;
+    }
 }
@@ -0,0 +1,56 @@
+package com.abhishek.sit.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Talks to a running `sit daemon` over .sit/daemon.sock. One request line per
+// connection; the reply is "ok" or "error <message>" on the first line and the
+// answer after it.
+@Service
+public class DaemonClient {
+
+    public static final String SOCKET_FILE = ".sit/daemon.sock";
+
+    public static final String PING = "ping";
+    public static final String STATUS = "status";
+    public static final String NAME_ONLY = "diff --name-only";
+    public static final String STOP = "stop";
+
+    // The daemon's answer, or null when there is no (working) daemon, in which
+    // case the caller just does the work itself.
+    public String query(String request) {
+        Path socket = Paths.get(SOCKET_FILE);
+        if (!Files.exists(socket)) {
+            return null;
+        }
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            channel.write(ByteBuffer.wrap((request + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.shutdownOutput();
+
+            String reply;
+            try (InputStream in = Channels.newInputStream(channel)) {
+                reply = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            int newline = reply.indexOf('\n');
+            if (newline < 0 || !reply.substring(0, newline).equals("ok")) {
+                return null;
+            }
+            return reply.substring(newline + 1);
+        } catch (IOException e) {
+            // Stale socket left by a daemon that died
+            return null;
+        }
+    }
+}
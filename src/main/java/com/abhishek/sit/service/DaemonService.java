@@ -0,0 +1,368 @@
+package com.abhishek.sit.service;
+
+import com.abhishek.sit.model.FileStat;
+import com.abhishek.sit.model.IndexEntry;
+import com.abhishek.sit.model.StatusReport;
+import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.util.SitIgnore;
+import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.TreeScanner;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// `sit daemon`: keeps the stat data of every working file in memory, kept
+// current by a WatchService, and answers status queries over a Unix domain
+// socket so `sit status` doesn't have to walk the tree.
+//
+// Watch events arrive asynchronously, so before answering, the daemon creates
+// a cookie file in .sit and waits for its own event: once that shows up, every
+// change made before the query has been applied too.
+@Service
+public class DaemonService {
+
+    private static final String COOKIE_PREFIX = "daemon-cookie-";
+    private static final long COOKIE_TIMEOUT_MS = 1000;
+    private static final Set<FileVisitOption> FOLLOW_LINKS = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+
+    private final SitRepository sitRepository;
+    private final IndexService indexService;
+    private final StatusService statusService;
+    private final DaemonClient daemonClient;
+
+    // Working tree state, guarded by `this`
+    private final Path root = Paths.get("").toAbsolutePath();
+    private final Path dotSit = root.resolve(SitRepository.DOT_SIT);
+    private final NavigableMap<String, FileStat> files = new TreeMap<>(); // null: stat it when asked
+    private final Map<String, IndexEntry> hashCache = new HashMap<>();
+    // A directory reached through a link as well is one key under several paths
+    private final Map<WatchKey, Set<Path>> watchedDirs = new HashMap<>();
+    private WatchService watcher;
+    private SitIgnore ignore;
+
+    // Cached between queries while the files behind them are unchanged
+    private String cachedHead;
+    private Map<String, String> headFiles;
+    private FileStat cachedIndexStat;
+    private Map<String, IndexEntry> indexEntries;
+
+    private final Map<String, CountDownLatch> cookies = new ConcurrentHashMap<>();
+    private final AtomicLong cookieCounter = new AtomicLong();
+
+    @Autowired
+    public DaemonService(SitRepository sitRepository, IndexService indexService, StatusService statusService,
+            DaemonClient daemonClient) {
+        this.sitRepository = sitRepository;
+        this.indexService = indexService;
+        this.statusService = statusService;
+        this.daemonClient = daemonClient;
+    }
+
+    public void handleDaemon(boolean stop) {
+        if (!sitRepository.isInitialized()) {
+            System.out.println("Not a sit repository.");
+            return;
+        }
+
+        if (stop) {
+            System.out.println(daemonClient.query(DaemonClient.STOP) != null
+                    ? "Daemon stopped." : "No daemon running.");
+            return;
+        }
+        if (daemonClient.query(DaemonClient.PING) != null) {
+            System.out.println("A daemon is already running for this repository.");
+            return;
+        }
+
+        Path socket = Paths.get(DaemonClient.SOCKET_FILE);
+        try (WatchService watchService = FileSystems.getDefault().newWatchService();
+             ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            watcher = watchService;
+            synchronized (this) {
+                rescan();
+                // .sit itself is only watched for our cookies
+                watchedDirs.put(dotSit.register(watcher, StandardWatchEventKinds.ENTRY_CREATE), Set.of(dotSit));
+            }
+
+            Files.deleteIfExists(socket);
+            server.bind(UnixDomainSocketAddress.of(socket));
+
+            Thread watchThread = new Thread(this::watchLoop, "sit-daemon-watcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+
+            synchronized (this) {
+                System.out.println("Watching " + files.size() + " files in " + watchedDirs.size()
+                        + " directories; listening on " + DaemonClient.SOCKET_FILE);
+            }
+
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    if (!serve(client)) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error answering request: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error running daemon: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(socket);
+            } catch (IOException ignored) {
+                // Next start removes it anyway
+            }
+        }
+    }
+
+    // Answers one request; false once asked to stop
+    private boolean serve(SocketChannel client) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Channels.newInputStream(client), StandardCharsets.UTF_8));
+        String request = reader.readLine();
+        if (request == null) {
+            return true;
+        }
+
+        String reply;
+        boolean keepRunning = true;
+        try {
+            switch (request.trim()) {
+                case DaemonClient.PING -> reply = "ok\n";
+                case DaemonClient.STOP -> {
+                    reply = "ok\n";
+                    keepRunning = false;
+                }
+                case DaemonClient.STATUS -> {
+                    ByteArrayOutputStream text = new ByteArrayOutputStream();
+                    PrintStream out = new PrintStream(text, false, StandardCharsets.UTF_8);
+                    statusService.printStatus(currentStatus(), out);
+                    out.flush();
+                    reply = "ok\n" + text.toString(StandardCharsets.UTF_8);
+                }
+                case DaemonClient.NAME_ONLY -> {
+                    StringBuilder text = new StringBuilder("ok\n");
+                    for (String path : currentStatus().unstaged()) {
+                        text.append(path).append('\n');
+                    }
+                    reply = text.toString();
+                }
+                default -> reply = "error unknown request " + request + "\n";
+            }
+        } catch (IOException e) {
+            reply = "error " + e.getMessage() + "\n";
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(reply.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            client.write(buffer);
+        }
+        return keepRunning;
+    }
+
+    private StatusReport currentStatus() throws IOException {
+        awaitCookie();
+        synchronized (this) {
+            String head = sitRepository.getHeadCommitId();
+            if (headFiles == null || !Objects.equals(head, cachedHead)) {
+                headFiles = statusService.getHeadFiles();
+                cachedHead = head;
+            }
+            Path indexPath = Paths.get(IndexService.INDEX_FILE);
+            FileStat indexStat = Files.exists(indexPath) ? SitUtil.stat(indexPath) : FileStat.UNKNOWN;
+            if (indexEntries == null || !indexStat.equals(cachedIndexStat)) {
+                indexEntries = indexService.loadIndexEntries();
+            }
+
+            StatusReport report = statusService.computeStatus(headFiles, indexEntries, files.keySet(), files,
+                    hashCache);
+            // computeStatus may have refreshed (rewritten) the index
+            cachedIndexStat = Files.exists(indexPath) ? SitUtil.stat(indexPath) : FileStat.UNKNOWN;
+            return report;
+        }
+    }
+
+    // Fails when the watcher hasn't caught up in time: an answer from state
+    // that may be stale is worse than none, since the client then scans itself
+    private void awaitCookie() throws IOException {
+        String name = COOKIE_PREFIX + cookieCounter.incrementAndGet();
+        CountDownLatch seen = new CountDownLatch(1);
+        cookies.put(name, seen);
+        Path cookie = dotSit.resolve(name);
+        try {
+            Files.createFile(cookie);
+            if (!seen.await(COOKIE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("watcher is behind; no answer within " + COOKIE_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the watcher", e);
+        } finally {
+            cookies.remove(name);
+            Files.deleteIfExists(cookie);
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            try {
+                synchronized (this) {
+                    handleEvents(key);
+                }
+            } catch (IOException e) {
+                System.err.println("Error updating from watch events: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Set<Path> dirs = watchedDirs.get(key);
+        List<WatchEvent<?>> events = key.pollEvents();
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+        if (dirs == null) {
+            return;
+        }
+        for (Path dir : List.copyOf(dirs)) {
+            if (!handleEvents(dir, events)) {
+                return;
+            }
+        }
+    }
+
+    // False when it had to rescan, which covers whatever else was pending
+    private boolean handleEvents(Path dir, List<WatchEvent<?>> events) throws IOException {
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were dropped; nothing to do but look again
+                rescan();
+                return false;
+            }
+            Path name = (Path) event.context();
+            if (dir.equals(dotSit)) {
+                CountDownLatch seen = cookies.get(name.toString());
+                if (seen != null) {
+                    seen.countDown();
+                }
+                continue;
+            }
+            if (SitIgnore.IGNORE_FILE.equals(name.toString())) {
+                // The rules changed: what is in the tree may have too
+                rescan();
+                return false;
+            }
+
+            // Links are followed, as TreeScanner follows them
+            Path child = dir.resolve(name);
+            String relPath = relativePath(child);
+            boolean isDirectory = Files.isDirectory(child);
+            if (ignore.isIgnored(relPath, isDirectory)) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                remove(relPath);
+            } else if (isDirectory) {
+                // New (or moved in) directory: it may already have content
+                walk(child);
+            } else {
+                record(relPath, child);
+            }
+        }
+        return true;
+    }
+
+    // Takes the file's stat data as the scanner would. A link's target can
+    // change without an event for the link, so links get none cached and
+    // computeStatus stats them afresh on every query.
+    private void record(String relPath, Path file) throws IOException {
+        FileStat stat = TreeScanner.fileStat(file);
+        if (stat == null) {
+            remove(relPath); // Gone again, or a dangling link
+        } else {
+            files.put(relPath, Files.isSymbolicLink(file) ? null : stat);
+        }
+    }
+
+    private void remove(String relPath) {
+        files.remove(relPath);
+        hashCache.remove(relPath);
+        // Whatever was under it, if it was a directory
+        files.subMap(relPath + "/", true, relPath + "0", false).clear();
+    }
+
+    private void rescan() throws IOException {
+        ignore = new SitIgnore(root);
+        files.clear();
+        for (WatchKey key : watchedDirs.keySet()) {
+            if (!watchedDirs.get(key).contains(dotSit)) {
+                key.cancel();
+            }
+        }
+        watchedDirs.values().removeIf(dirs -> !dirs.contains(dotSit));
+        walk(root);
+    }
+
+    // Registers every directory under `start` and records every file in it,
+    // the same files a TreeScanner walk visits
+    private void walk(Path start) throws IOException {
+        Files.walkFileTree(start, FOLLOW_LINKS, Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(root) && ignore.isIgnored(relativePath(dir), true)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                // Registering a directory twice just hands back its existing key
+                watchedDirs.computeIfAbsent(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY),
+                        key -> new HashSet<>()).add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String relPath = relativePath(file);
+                if (!ignore.isIgnored(relPath, false)) {
+                    record(relPath, file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Gone between listing and visiting (its delete event follows),
+                // or a link back up the tree
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private String relativePath(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+}
@@ -1,107 +1,270 @@
 package com.abhishek.sit.service;
 
+import com.abhishek.sit.diff.DiffFormat;
+import com.abhishek.sit.diff.Edit;
+import com.abhishek.sit.diff.MyersDiff;
+import com.abhishek.sit.diff.UnifiedDiff;
+import com.abhishek.sit.model.IndexEntry;
 import com.abhishek.sit.repository.SitRepository;
-import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.Trace;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 @Service
 public class DiffService {
 
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final int STAT_BAR_WIDTH = 50;
+    // Finished-but-unprinted diffs allowed per worker thread
+    private static final int IN_FLIGHT_PER_JOB = 4;
+
     private final SitRepository sitRepository;
     private final IndexService indexService;
+    private final DaemonClient daemonClient;
 
     @Autowired
-    public DiffService(SitRepository sitRepository, IndexService indexService) {
+    public DiffService(SitRepository sitRepository, IndexService indexService, DaemonClient daemonClient) {
         this.sitRepository = sitRepository;
         this.indexService = indexService;
+        this.daemonClient = daemonClient;
     }
 
     public void handleDiff() {
+        handleDiff(DiffFormat.PATCH, UnifiedDiff.DEFAULT_CONTEXT, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void handleDiff(DiffFormat format, int context, int jobs) {
         if (!sitRepository.isInitialized()) {
             System.out.println("Not a sit repository.");
             return;
         }
 
-        try {
-            Map<String, String> index = indexService.loadIndex();
-
-            for (Map.Entry<String, String> entry : index.entrySet()) {
-                String path = entry.getKey();
-                String stagedHash = entry.getValue();
-                File workingFile = new File(path);
-
-                if (!workingFile.exists()) {
-                    System.out.println("diff --git a/" + path + " b/" + path);
-                    System.out.println("deleted file mode 100644");
-                    System.out.println("--- a/" + path);
-                    System.out.println("+++ /dev/null");
-                    // TODO: Show deleted lines?
-                    continue;
-                }
+        if (format == DiffFormat.NAME_ONLY) {
+            // A running `sit daemon` already knows which files changed
+            String answer = daemonClient.query(DaemonClient.NAME_ONLY);
+            if (answer != null) {
+                System.out.print(answer);
+                return;
+            }
+        }
 
-                byte[] workingContentBytes = Files.readAllBytes(workingFile.toPath());
-                String workingHash = SitUtil.getSha1(workingContentBytes);
+        // One big buffer flushed at the end instead of a write per line; colors
+        // only when a person is looking at it
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE), false);
+        boolean color = System.console() != null;
+        List<LineStat> stats = new ArrayList<>();
 
-                if (!stagedHash.equals(workingHash)) {
-                    // Content changed
-                    System.out.println("diff --git a/" + path + " b/" + path);
-                    System.out.println("--- a/" + path);
-                    System.out.println("+++ b/" + path);
+        try {
+            Map<String, IndexEntry> index = indexService.loadIndexEntries();
 
-                    File stagedBlob = new File(SitRepository.OBJECTS_DIR, stagedHash);
-                    List<String> stagedLines = Collections.emptyList();
-                    if (stagedBlob.exists()) {
-                        stagedLines = Files.readAllLines(stagedBlob.toPath());
+            // Files are hashed, loaded and diffed concurrently but printed in
+            // index order: results queue up behind the oldest unfinished file,
+            // and no more than IN_FLIGHT_PER_JOB * jobs are held at once.
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, jobs));
+            int window = Math.max(1, jobs) * IN_FLIGHT_PER_JOB;
+            Deque<Future<FileDiff>> inFlight = new ArrayDeque<>();
+            Trace.Phase phase = Trace.phase("diff working tree");
+            try {
+                for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                    if (inFlight.size() >= window) {
+                        emit(inFlight.removeFirst().get(), out, stats);
                     }
-                    List<String> workingLines = Files.readAllLines(workingFile.toPath());
+                    inFlight.addLast(pool.submit(() -> diffFile(entry.getKey(), entry.getValue(), format, context, color)));
+                }
+                while (!inFlight.isEmpty()) {
+                    emit(inFlight.removeFirst().get(), out, stats);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while diffing", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                phase.end();
+                pool.shutdownNow();
+            }
 
-                    printDiff(stagedLines, workingLines);
+            if (format == DiffFormat.STAT) {
+                printStat(out, stats);
+            } else if (format == DiffFormat.NUMSTAT) {
+                for (LineStat stat : stats) {
+                    out.println(stat.binary() ? "-\t-\t" + stat.path()
+                            : stat.added() + "\t" + stat.removed() + "\t" + stat.path());
                 }
             }
         } catch (IOException e) {
+            out.flush();
             System.err.println("Error calculating diff: " + e.getMessage());
+        } finally {
+            out.flush();
         }
     }
 
-    private void printDiff(List<String> original, List<String> revised) {
-        // LCS Implementation (Dynamic Programming)
-        int[][] dp = new int[original.size() + 1][revised.size() + 1];
-
-        // Fill DP table
-        for (int i = 1; i <= original.size(); i++) {
-            for (int j = 1; j <= revised.size(); j++) {
-                if (original.get(i - 1).equals(revised.get(j - 1))) {
-                    dp[i][j] = dp[i - 1][j - 1] + 1;
-                } else {
-                    dp[i][j] = Math.max(dp[i - 1][j], dp[i][j - 1]);
+    private static void emit(FileDiff diff, PrintWriter out, List<LineStat> stats) {
+        if (diff == null) {
+            return;
+        }
+        if (diff.patch() != null) {
+            out.print(diff.patch());
+        } else {
+            stats.add(diff.stat());
+        }
+    }
+
+    // Runs on a pool thread. Null when the file is unchanged; otherwise the
+    // rendered patch, or just the line counts for --stat/--numstat.
+    private FileDiff diffFile(String path, IndexEntry entry, DiffFormat format, int context, boolean color)
+            throws IOException {
+        String stagedHash = entry.hash();
+        File workingFile = new File(path);
+        boolean deleted = !workingFile.exists();
+
+        // Skips the read entirely when the stat data still matches the index
+        if (!deleted && stagedHash.equals(indexService.hashWorkingFile(workingFile.toPath(), entry))) {
+            return null;
+        }
+        if (format == DiffFormat.NAME_ONLY) {
+            return new FileDiff(path + "\n", null);
+        }
+
+        // Large assets are nearly always binary; sniff both sides so we
+        // never pull them into memory just to print "differ".
+        boolean stagedExists = sitRepository.hasObject(stagedHash);
+        boolean binary = (stagedExists && isBinary(sitRepository.openObject(stagedHash)))
+                || (!deleted && isBinary(Files.newInputStream(workingFile.toPath())));
+
+        StringWriter patch = new StringWriter();
+        PrintWriter out = new PrintWriter(patch);
+        UnifiedDiff unified = new UnifiedDiff(out, color);
+        if (format == DiffFormat.PATCH) {
+            unified.meta("diff --git a/" + path + " b/" + path);
+            if (deleted) {
+                unified.meta("deleted file mode 100644");
+            }
+            if (binary) {
+                out.println("Binary files a/" + path + " and " + (deleted ? "/dev/null" : "b/" + path) + " differ");
+                return new FileDiff(patch.toString(), null);
+            }
+            unified.meta("--- a/" + path);
+            unified.meta(deleted ? "+++ /dev/null" : "+++ b/" + path);
+        } else if (binary) {
+            return new FileDiff(null, new LineStat(path, -1, -1));
+        }
+
+        List<String> stagedLines = Collections.emptyList();
+        if (stagedExists) {
+            stagedLines = readLines(sitRepository.openObject(stagedHash));
+        }
+        List<String> workingLines = deleted ? Collections.emptyList() : Files.readAllLines(workingFile.toPath());
+        List<Edit> edits = MyersDiff.diff(stagedLines, workingLines);
+
+        if (format == DiffFormat.PATCH) {
+            unified.write(stagedLines, workingLines, edits, context);
+            return new FileDiff(patch.toString(), null);
+        }
+        int added = 0;
+        int removed = 0;
+        for (Edit edit : edits) {
+            added += edit.linesAdded();
+            removed += edit.linesRemoved();
+        }
+        return new FileDiff(null, new LineStat(path, added, removed));
+    }
+
+    private void printStat(PrintWriter out, List<LineStat> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+        int nameWidth = 0;
+        int maxChanged = 0;
+        int totalAdded = 0;
+        int totalRemoved = 0;
+        for (LineStat stat : stats) {
+            nameWidth = Math.max(nameWidth, stat.path().length());
+            if (!stat.binary()) {
+                maxChanged = Math.max(maxChanged, stat.added() + stat.removed());
+                totalAdded += stat.added();
+                totalRemoved += stat.removed();
+            }
+        }
+        int countWidth = String.valueOf(maxChanged).length();
+
+        for (LineStat stat : stats) {
+            out.print(" " + String.format("%-" + nameWidth + "s", stat.path()) + " | ");
+            if (stat.binary()) {
+                out.println("Bin");
+                continue;
+            }
+            int changed = stat.added() + stat.removed();
+            int plus = stat.added();
+            int minus = stat.removed();
+            if (maxChanged > STAT_BAR_WIDTH) {
+                // Scale down, but never to nothing
+                plus = plus == 0 ? 0 : Math.max(1, plus * STAT_BAR_WIDTH / maxChanged);
+                minus = minus == 0 ? 0 : Math.max(1, minus * STAT_BAR_WIDTH / maxChanged);
+            }
+            out.println(String.format("%" + countWidth + "d", changed) + " " + "+".repeat(plus) + "-".repeat(minus));
+        }
+        out.println(" " + stats.size() + (stats.size() == 1 ? " file changed" : " files changed")
+                + ", " + totalAdded + " insertions(+), " + totalRemoved + " deletions(-)");
+    }
+
+    // Same heuristic as git: a NUL byte in the first 8000 bytes means binary
+    private boolean isBinary(InputStream stream) throws IOException {
+        try (InputStream in = stream) {
+            byte[] head = in.readNBytes(8000);
+            for (byte b : head) {
+                if (b == 0) {
+                    return true;
                 }
             }
+            return false;
         }
+    }
+
+    private List<String> readLines(InputStream stream) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
 
-        // Backtrack to find diff
-        printDiffBacktrack(dp, original, revised, original.size(), revised.size());
+    private record FileDiff(String patch, LineStat stat) {
     }
 
-    private void printDiffBacktrack(int[][] dp, List<String> original, List<String> revised, int i, int j) {
-        if (i > 0 && j > 0 && original.get(i - 1).equals(revised.get(j - 1))) {
-            printDiffBacktrack(dp, original, revised, i - 1, j - 1);
-            // System.out.println(" " + original.get(i - 1)); // Context line (optional,
-            // omitted for brevity)
-        } else if (j > 0 && (i == 0 || dp[i][j - 1] >= dp[i - 1][j])) {
-            printDiffBacktrack(dp, original, revised, i, j - 1);
-            System.out.println("\u001B[32m+ " + revised.get(j - 1) + "\u001B[0m"); // Green for Add
-        } else if (i > 0 && (j == 0 || dp[i][j - 1] < dp[i - 1][j])) {
-            printDiffBacktrack(dp, original, revised, i - 1, j);
-            System.out.println("\u001B[31m- " + original.get(i - 1) + "\u001B[0m"); // Red for Remove
+    // Changed line counts of one file; -1 for binary files
+    private record LineStat(String path, int added, int removed) {
+        boolean binary() {
+            return added < 0;
         }
     }
 }
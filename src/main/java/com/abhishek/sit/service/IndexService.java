@@ -1,22 +1,30 @@
 package com.abhishek.sit.service;
 
+import com.abhishek.sit.model.FileStat;
+import com.abhishek.sit.model.IndexEntry;
+import com.abhishek.sit.repository.IndexFile;
 import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.util.SitIgnore;
 import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.Trace;
+import com.abhishek.sit.util.TreeScanner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class IndexService {
 
     private final SitRepository sitRepository;
-    private static final String INDEX_FILE = ".sit/index";
+    public static final String INDEX_FILE = ".sit/index";
 
     @Autowired
     public IndexService(SitRepository sitRepository) {
@@ -24,72 +32,189 @@ public class IndexService {
     }
 
     public void handleAdd(String pathArg) {
+        handleAdd(pathArg, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void handleAdd(String pathArg, int jobs) {
         if (!sitRepository.isInitialized()) {
             System.out.println("Not a sit repository.");
             return;
         }
 
         try {
-            Map<String, String> index = loadIndex();
-            List<File> filesToAdd = new ArrayList<>();
-
-            if (pathArg.equals(".")) {
-                filesToAdd = SitUtil.scanDirectory(new File("."), new HashSet<>(Arrays.asList(
-                        ".sit", ".git", "build", "gradle", "target", ".gradle", ".idea")));
-            } else {
-                File file = new File(pathArg);
-                if (!file.exists()) {
-                    System.out.println("pathspec '" + pathArg + "' did not match any files");
-                    return;
-                }
-                if (file.isDirectory()) {
-                    filesToAdd = SitUtil.scanDirectory(file, new HashSet<>(Arrays.asList(
-                            ".sit", ".git", "build", "gradle", "target", ".gradle", ".idea")));
-                } else {
-                    filesToAdd.add(file);
-                }
+            SitIgnore ignore = SitIgnore.forWorkingTree();
+            File target = new File(pathArg);
+            if (!target.exists()) {
+                System.out.println("pathspec '" + pathArg + "' did not match any files");
+                return;
+            }
+            String targetPath = ignore.relativize(target.toPath());
+            if (ignore.isIgnoredPath(targetPath, target.isDirectory())
+                    && (target.isDirectory() || lookupEntry(targetPath) == null)) {
+                // Files already tracked stay addable, as in git
+                System.out.println("The following paths are ignored by one of your .sitignore files:");
+                System.out.println(targetPath);
+                return;
             }
 
-            for (File file : filesToAdd) {
-                byte[] content = Files.readAllBytes(file.toPath());
-                String hash = SitUtil.getSha1(content);
-                String relPath = Paths.get(".").toUri().relativize(file.toURI()).getPath();
+            // Look entries up one by one in the mapped index and only collect
+            // the ones that changed, so "sit add <file>" never loads the whole index.
+            IndexFile current = openIndex();
+            long indexMtime = current == null ? 0 : indexMtime();
 
-                // Save object to DB
-                sitRepository.saveObject(hash, content);
+            // Files are read, hashed and written on the scanner's `jobs` workers as the walk
+            // finds them. Results land in a sorted map, so the index comes out the same
+            // regardless of which worker finished first.
+            long start = System.nanoTime();
+            AtomicLong bytesHashed = new AtomicLong();
+            SortedMap<String, IndexEntry> updates = new ConcurrentSkipListMap<>(IndexFile.PATH_ORDER);
+            TreeScanner.Visitor stage = (relPath, path, stat) -> {
+                // The stat comes from before the read: if the file changes while we
+                // hash it the recorded stat won't match next time and we simply rehash.
+                IndexEntry existing = current == null ? null : checkRacy(current.lookup(relPath), indexMtime);
+                if (existing != null && existing.stat().matches(stat)) {
+                    return; // Unchanged since it was staged, object already stored
+                }
+
+                // Hash and store in one streaming pass
+                String hash = sitRepository.saveObject(path);
 
                 // Update index
-                index.put(relPath, hash);
+                updates.put(relPath, new IndexEntry(hash, stat));
+                bytesHashed.addAndGet(stat.size());
+            };
+            if (target.isDirectory()) {
+                TreeScanner.scan(target.toPath(), ignore, jobs, stage);
+            } else {
+                stage.visit(targetPath, target.toPath(), SitUtil.stat(target.toPath()));
             }
 
-            saveIndex(index);
-            // System.out.println("Added " + filesToAdd.size() + " files to index."); // Git
-            // is silent usually
+            if (!updates.isEmpty()) {
+                if (current == null) {
+                    saveIndexEntries(updates);
+                } else {
+                    Trace.Phase phase = Trace.phase("write index");
+                    try {
+                        IndexFile.merge(Paths.get(INDEX_FILE), current, updates);
+                    } finally {
+                        phase.end();
+                    }
+                }
+                printThroughput(updates.size(), bytesHashed.get(), System.nanoTime() - start);
+            }
 
         } catch (IOException e) {
             System.err.println("Error adding to index: " + e.getMessage());
         }
     }
 
+    private void printThroughput(int files, long bytes, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        double megabytes = bytes / (1024.0 * 1024.0);
+        System.out.printf("Added %d files (%.1f MB) in %.2fs: %.0f files/s, %.1f MB/s%n",
+                files, megabytes, seconds, files / seconds, megabytes / seconds);
+    }
+
+    // Path -> Hash view of the index for callers that don't care about stat data
     public Map<String, String> loadIndex() throws IOException {
         Map<String, String> index = new TreeMap<>();
-        File file = new File(INDEX_FILE);
-        if (file.exists()) {
-            List<String> lines = Files.readAllLines(file.toPath());
-            for (String line : lines) {
-                String[] parts = line.split(":", 2);
+        for (Map.Entry<String, IndexEntry> entry : loadIndexEntries().entrySet()) {
+            index.put(entry.getKey(), entry.getValue().hash());
+        }
+        return index;
+    }
+
+    public Map<String, IndexEntry> loadIndexEntries() throws IOException {
+        Trace.Phase phase = Trace.phase("read index");
+        try {
+            IndexFile indexFile = openIndex();
+            if (indexFile == null) {
+                return new TreeMap<>();
+            }
+            Map<String, IndexEntry> index = indexFile.readAll();
+            long indexMtime = indexMtime();
+            index.replaceAll((path, entry) -> entry.withStat(checkRacy(entry.stat(), indexMtime)));
+            return index;
+        } finally {
+            phase.end();
+        }
+    }
+
+    // Single-path lookup straight from the mapped index
+    public IndexEntry lookupEntry(String path) throws IOException {
+        IndexFile indexFile = openIndex();
+        return indexFile == null ? null : checkRacy(indexFile.lookup(path), indexMtime());
+    }
+
+    public void saveIndexEntries(Map<String, IndexEntry> index) throws IOException {
+        Trace.Phase phase = Trace.phase("write index");
+        try {
+            IndexFile.write(Paths.get(INDEX_FILE), index);
+        } finally {
+            phase.end();
+        }
+    }
+
+    // Maps the binary index, upgrading an old text index in place first.
+    // Returns null when nothing has been staged yet.
+    private IndexFile openIndex() throws IOException {
+        Path path = Paths.get(INDEX_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        if (!IndexFile.isBinary(path)) {
+            saveIndexEntries(loadTextIndex(path));
+        }
+        return IndexFile.open(path);
+    }
+
+    // Version 1 index: one "path:hash[:size:mtime:ctime:inode]" line per file
+    private Map<String, IndexEntry> loadTextIndex(Path path) throws IOException {
+        Map<String, IndexEntry> index = new TreeMap<>();
+        long indexMtime = indexMtime();
+        for (String line : Files.readAllLines(path)) {
+            String[] parts = line.split(":");
+            if (parts.length == 6) {
+                FileStat stat = new FileStat(Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                        Long.parseLong(parts[4]), Long.parseLong(parts[5]));
+                index.put(parts[0], new IndexEntry(parts[1], checkRacy(stat, indexMtime)));
+            } else {
+                parts = line.split(":", 2);
                 if (parts.length == 2) {
-                    index.put(parts[0], parts[1]);
+                    index.put(parts[0], new IndexEntry(parts[1], FileStat.UNKNOWN));
                 }
             }
         }
         return index;
     }
 
-    public void saveIndex(Map<String, String> index) throws IOException {
-        List<String> lines = index.entrySet().stream()
-                .map(e -> e.getKey() + ":" + e.getValue())
-                .collect(Collectors.toList());
-        Files.write(Paths.get(INDEX_FILE), lines);
+    private long indexMtime() throws IOException {
+        return SitUtil.stat(Paths.get(INDEX_FILE)).mtimeNanos();
+    }
+
+    // Returns the blob hash of a working file, reusing the index hash when the
+    // stat data says the file hasn't been touched since it was staged.
+    public String hashWorkingFile(Path path, IndexEntry entry) throws IOException {
+        if (entry != null && entry.stat().matches(SitUtil.stat(path))) {
+            return entry.hash();
+        }
+        return SitUtil.getSha1(path);
+    }
+
+    // "Racy" entries: a file written in the same second as (or after) the index
+    // could be modified again without its mtime moving past what we recorded,
+    // so its stat data can't prove anything. Drop it and force a rehash.
+    // IndexFile smudges these as it writes them; this catches indexes written
+    // before it did, and files touched while the index was being written.
+    private IndexEntry checkRacy(IndexEntry entry, long indexMtimeNanos) {
+        return entry == null ? null : entry.withStat(checkRacy(entry.stat(), indexMtimeNanos));
+    }
+
+    private FileStat checkRacy(FileStat stat, long indexMtimeNanos) {
+        long second = 1_000_000_000L;
+        if (stat.mtimeNanos() / second >= indexMtimeNanos / second) {
+            return FileStat.UNKNOWN;
+        }
+        return stat;
     }
 }
@@ -1,25 +1,36 @@
 package com.abhishek.sit.service;
 
+import com.abhishek.sit.model.Commit;
+import com.abhishek.sit.repository.CommitGraph;
 import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.util.Trace;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.time.Instant;
 import java.util.List;
 
 @Service
 public class LogService {
 
     private final SitRepository sitRepository;
+    private final CommitGraphService commitGraphService;
+    private final ChangedPathService changedPathService;
 
     @Autowired
-    public LogService(SitRepository sitRepository) {
+    public LogService(SitRepository sitRepository, CommitGraphService commitGraphService,
+            ChangedPathService changedPathService) {
         this.sitRepository = sitRepository;
+        this.commitGraphService = commitGraphService;
+        this.changedPathService = changedPathService;
     }
 
-    public void handleLog(boolean oneline) {
+    // sit log [--oneline] [-n <count>] [--since=<date>] [-- <path>...]
+    // maxCount < 0 and since == null mean no limit; an empty `paths` means
+    // every commit. Dates come from the commit-graph, so the walk stops at the
+    // first commit that is too old without having opened it.
+    public void handleLog(boolean oneline, int maxCount, Instant since, List<String> paths) {
         if (!sitRepository.isInitialized()) {
             System.out.println("Not a sit repository.");
             return;
@@ -32,44 +43,41 @@ public class LogService {
                 return;
             }
 
-            while (currentCommitId != null) {
-                File commitFile = new File(SitRepository.COMMITS_DIR, currentCommitId);
-                if (!commitFile.exists()) {
-                    System.out.println("Error: Commit object " + currentCommitId + " missing.");
-                    break;
-                }
-
-                List<String> lines = Files.readAllLines(commitFile.toPath());
-                String parentId = null;
-                String author = "";
-                String date = "";
-                String message = "";
+            int shown = 0;
+            Trace.Phase phase = Trace.phase("walk history");
+            try {
+                while (currentCommitId != null && shown != maxCount) {
+                    CommitGraph.Node node = commitGraphService.getNode(currentCommitId);
+                    if (since != null && node.date() < since.getEpochSecond()) {
+                        break;
+                    }
+                    // Follow the first parent as recorded in the commit-graph
+                    String commitId = currentCommitId;
+                    currentCommitId = node.parents().isEmpty() ? null : node.parents().get(0);
+                    if (!paths.isEmpty() && !changedPathService.touches(commitId, currentCommitId, paths)) {
+                        continue;
+                    }
 
-                for (String line : lines) {
-                    if (line.startsWith("parent: "))
-                        parentId = line.substring(8);
-                    else if (line.startsWith("author: "))
-                        author = line.substring(8);
-                    else if (line.startsWith("date: "))
-                        date = line.substring(6);
-                    else if (line.startsWith("message: "))
-                        message = line.substring(9);
-                    else if (line.isEmpty())
-                        break; // End of header
-                }
+                    Commit commit = sitRepository.getCommits().read(commitId);
+                    if (commit == null) {
+                        System.out.println("Error: Commit object " + commitId + " missing.");
+                        break;
+                    }
 
-                if (oneline) {
-                    System.out.println(currentCommitId.substring(0, 7) + " " + message);
-                } else {
-                    System.out.println("commit " + currentCommitId);
-                    System.out.println("Author: " + author);
-                    System.out.println("Date:   " + date);
-                    System.out.println();
-                    System.out.println("    " + message);
-                    System.out.println();
+                    if (oneline) {
+                        System.out.println(commitId.substring(0, 7) + " " + commit.message());
+                    } else {
+                        System.out.println("commit " + commitId);
+                        System.out.println("Author: " + commit.author());
+                        System.out.println("Date:   " + commit.date());
+                        System.out.println();
+                        System.out.println("    " + commit.message());
+                        System.out.println();
+                    }
+                    shown++;
                 }
-
-                currentCommitId = parentId;
+            } finally {
+                phase.end();
             }
 
         } catch (IOException e) {
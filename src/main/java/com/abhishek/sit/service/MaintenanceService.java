@@ -0,0 +1,300 @@
+package com.abhishek.sit.service;
+
+import com.abhishek.sit.repository.LooseObjectStore;
+import com.abhishek.sit.repository.PackFile;
+import com.abhishek.sit.repository.PackStore;
+import com.abhishek.sit.repository.PackWriter;
+import com.abhishek.sit.repository.SitRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+@Service
+public class MaintenanceService {
+
+    private final SitRepository sitRepository;
+    private final IndexService indexService;
+    private final TreeService treeService;
+    private final CommitGraphService commitGraphService;
+    private final ReachabilityService reachabilityService;
+    private final ChangedPathService changedPathService;
+
+    @Autowired
+    public MaintenanceService(SitRepository sitRepository, IndexService indexService, TreeService treeService,
+            CommitGraphService commitGraphService, ReachabilityService reachabilityService,
+            ChangedPathService changedPathService) {
+        this.sitRepository = sitRepository;
+        this.indexService = indexService;
+        this.treeService = treeService;
+        this.commitGraphService = commitGraphService;
+        this.reachabilityService = reachabilityService;
+        this.changedPathService = changedPathService;
+    }
+
+    public void handleMigrateObjects() {
+        if (!sitRepository.isInitialized()) {
+            System.out.println("Not a sit repository.");
+            return;
+        }
+
+        try {
+            // Flat .sit/objects/<hash> files -> compressed .sit/objects/xx/<rest>
+            int migrated = sitRepository.getLooseObjects().migrate();
+            if (migrated == 0) {
+                System.out.println("Object store is already up to date.");
+            } else {
+                System.out.println("Migrated " + migrated + " objects to the compressed layout.");
+            }
+        } catch (IOException e) {
+            System.err.println("Error migrating objects: " + e.getMessage());
+        }
+    }
+
+    // sit gc [--prune[=<expire>]] [--dry-run]. With `pruneExpire` set, objects
+    // and commits nothing live reaches are dropped once they are older than it;
+    // the grace period protects what a concurrent add or commit has written but
+    // not yet linked in. A dry run only reports what would go.
+    public void handleGc(Duration pruneExpire, boolean dryRun, int jobs) {
+        if (!sitRepository.isInitialized()) {
+            System.out.println("Not a sit repository.");
+            return;
+        }
+
+        try {
+            Prunable prunable = null;
+            if (pruneExpire != null) {
+                prunable = findPrunable(Instant.now().minus(pruneExpire), jobs);
+                if (dryRun) {
+                    System.out.println("Would prune " + prunable.describe() + ".");
+                    return;
+                }
+                for (String commitId : prunable.commits().keySet()) {
+                    sitRepository.getCommits().delete(commitId);
+                }
+            }
+
+            // Fold the commit-graph log back into the mapped file
+            int commits = commitGraphService.rebuildGraph();
+            System.out.println("Wrote commit-graph with " + commits + " commits.");
+            int filters = changedPathService.rebuild();
+            System.out.println("Wrote changed-path filters for " + filters + " commits.");
+
+            PackStore packs = sitRepository.getPacks();
+
+            // 1. Everything we currently store, loose or packed (hash -> path hint)
+            Map<String, String> objects = new TreeMap<>();
+            List<String> loose = sitRepository.getLooseObjects().list();
+            for (String hash : loose) {
+                objects.put(hash, null);
+            }
+            List<Path> oldPacks = new ArrayList<>();
+            for (PackFile pack : packs.getPacks()) {
+                oldPacks.add(pack.getPackPath());
+                for (String hash : pack.list()) {
+                    objects.put(hash, null);
+                }
+            }
+            if (prunable != null) {
+                // Left out of the new pack, and gone with the old packs and loose files
+                objects.keySet().removeAll(prunable.objects().keySet());
+            }
+
+            long sizeBefore = storeSize();
+            Path newPack = null;
+            PackWriter writer = new PackWriter(sitRepository);
+            if (!objects.isEmpty()) {
+                // 2. Name each blob after a path it was committed or staged under, so
+                // versions of the same file sit next to each other in the delta window
+                addPathHints(objects);
+
+                // 3. Write one new pack holding everything
+                newPack = writer.write(packs.getPackDir(), objects);
+            } else if (oldPacks.isEmpty() && loose.isEmpty()) {
+                System.out.println("Nothing to pack.");
+                return;
+            }
+
+            // 4. Drop what the new pack replaces
+            packs.reload();
+            for (Path oldPack : oldPacks) {
+                if (!oldPack.equals(newPack)) {
+                    String name = oldPack.getFileName().toString();
+                    Files.deleteIfExists(oldPack.resolveSibling(name.substring(0, name.length() - 5) + ".idx"));
+                    Files.deleteIfExists(oldPack);
+                }
+            }
+            for (String hash : loose) {
+                sitRepository.getLooseObjects().delete(hash);
+            }
+
+            if (prunable != null) {
+                System.out.println("Pruned " + prunable.describe() + ".");
+            }
+            if (newPack != null) {
+                System.out.println("Packed " + objects.size() + " objects (" + writer.getDeltaCount() + " deltas) into "
+                        + newPack.getFileName() + ": " + formatSize(sizeBefore) + " -> " + formatSize(storeSize()));
+            }
+
+            // 5. Bitmaps for the history as it now stands
+            int bitmaps = reachabilityService.writeBitmaps();
+            System.out.println("Wrote reachability bitmaps for " + bitmaps + " commits.");
+
+        } catch (IOException e) {
+            System.err.println("Error during gc: " + e.getMessage());
+        }
+    }
+
+    // Mark from every branch, HEAD, an unfinished merge and the index, then
+    // sweep: whatever is left unmarked and was last written before `cutoff`.
+    // An object stored both loose and packed counts as old as its newest copy.
+    private Prunable findPrunable(Instant cutoff, int jobs) throws IOException {
+        long start = System.nanoTime();
+        Set<String> roots = new HashSet<>(reachabilityService.branchTips().values());
+        String head = sitRepository.getHeadCommitId();
+        if (head == null) {
+            // Detached HEAD holds the commit id itself
+            head = sitRepository.getCurrentBranch();
+        }
+        if (head != null && sitRepository.getCommits().contains(head)) {
+            roots.add(head);
+        }
+        Path mergeHead = Paths.get(SitRepository.MERGE_HEAD_FILE);
+        if (Files.exists(mergeHead)) {
+            roots.add(Files.readString(mergeHead).trim());
+        }
+        ReachabilityService.Marked marked = reachabilityService.mark(roots, jobs);
+        Set<String> live = new HashSet<>(marked.objects());
+        live.addAll(indexService.loadIndex().values());
+        System.out.printf("Marked %d commits and %d objects on %d threads in %.2fs.%n", marked.commits().size(),
+                live.size(), jobs, (System.nanoTime() - start) / 1e9);
+
+        // hash -> {newest mtime, bytes held}
+        Map<String, long[]> unreachable = new HashMap<>();
+        LooseObjectStore looseObjects = sitRepository.getLooseObjects();
+        for (String hash : looseObjects.list()) {
+            if (!live.contains(hash)) {
+                Path path = looseObjects.isLegacy(hash) ? looseObjects.legacyPath(hash) : looseObjects.path(hash);
+                addCopy(unreachable, hash, Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+            }
+        }
+        Set<String> packed = new HashSet<>();
+        for (PackFile pack : sitRepository.getPacks().getPacks()) {
+            long written = Files.getLastModifiedTime(pack.getPackPath()).toMillis();
+            Map<String, Long> sizes = null;
+            for (String hash : pack.list()) {
+                if (!live.contains(hash)) {
+                    if (sizes == null) {
+                        sizes = pack.storedSizes();
+                    }
+                    addCopy(unreachable, hash, written, sizes.get(hash));
+                    packed.add(hash);
+                }
+            }
+        }
+
+        long cutoffMillis = cutoff.toEpochMilli();
+        Map<String, Long> objects = new TreeMap<>();
+        for (Map.Entry<String, long[]> entry : unreachable.entrySet()) {
+            if (entry.getValue()[0] < cutoffMillis) {
+                objects.put(entry.getKey(), entry.getValue()[1]);
+            }
+        }
+        int packedCount = 0;
+        for (String hash : objects.keySet()) {
+            if (packed.contains(hash)) {
+                packedCount++;
+            }
+        }
+
+        Map<String, Long> commits = new TreeMap<>();
+        File[] commitFiles = new File(SitRepository.COMMITS_DIR).listFiles();
+        if (commitFiles != null) {
+            for (File commitFile : commitFiles) {
+                if (!marked.commits().contains(commitFile.getName()) && commitFile.lastModified() < cutoffMillis) {
+                    commits.put(commitFile.getName(), commitFile.length());
+                }
+            }
+        }
+        return new Prunable(objects, packedCount, commits);
+    }
+
+    private static void addCopy(Map<String, long[]> unreachable, String hash, long modified, long bytes) {
+        long[] copy = unreachable.computeIfAbsent(hash, h -> new long[]{Long.MIN_VALUE, 0});
+        copy[0] = Math.max(copy[0], modified);
+        copy[1] += bytes;
+    }
+
+    // What a prune removes, and the bytes each piece holds on disk. Packed
+    // sizes are the compressed (often delta) entries, so freeing them only
+    // shows once gc has rewritten the pack without them.
+    private record Prunable(Map<String, Long> objects, int packedObjects, Map<String, Long> commits) {
+
+        String describe() {
+            long bytes = 0;
+            for (long size : objects.values()) {
+                bytes += size;
+            }
+            for (long size : commits.values()) {
+                bytes += size;
+            }
+            return objects.size() + " objects (" + packedObjects + " packed) and " + commits.size()
+                    + " commits, reclaiming " + formatSize(bytes);
+        }
+    }
+
+    private void addPathHints(Map<String, String> objects) throws IOException {
+        Set<String> seenTrees = new HashSet<>();
+        for (String commitId : sitRepository.getCommits().list()) {
+            String rootTree = treeService.getCommitTree(commitId);
+            if (rootTree != null) {
+                addTreeHints(rootTree, "", objects, seenTrees);
+            } else {
+                // Old flat commit with an inline manifest
+                for (Map.Entry<String, String> file : treeService.readCommitFiles(commitId).entrySet()) {
+                    objects.computeIfPresent(file.getValue(), (hash, hint) -> file.getKey());
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : indexService.loadIndex().entrySet()) {
+            objects.computeIfPresent(entry.getValue(), (hash, hint) -> entry.getKey());
+        }
+    }
+
+    // Shared subtrees are only walked once across all commits
+    private void addTreeHints(String treeHash, String dir, Map<String, String> objects, Set<String> seenTrees)
+            throws IOException {
+        if (!seenTrees.add(treeHash) || !sitRepository.hasObject(treeHash)) {
+            return;
+        }
+        objects.computeIfPresent(treeHash, (hash, hint) -> dir);
+        for (TreeService.TreeEntry entry : treeService.readTreeEntries(treeHash)) {
+            String path = dir.isEmpty() ? entry.name() : dir + "/" + entry.name();
+            if (entry.isTree()) {
+                addTreeHints(entry.hash(), path, objects, seenTrees);
+            } else {
+                objects.computeIfPresent(entry.hash(), (hash, hint) -> path);
+            }
+        }
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private long storeSize() throws IOException {
+        try (var files = Files.walk(Path.of(SitRepository.OBJECTS_DIR))) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package com.abhishek.sit.service;
 
+import com.abhishek.sit.diff.Merge3;
+import com.abhishek.sit.model.IndexEntry;
 import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.util.SitUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 
@@ -14,10 +19,21 @@ import java.util.*;
 public class MergeService {
 
     private final SitRepository sitRepository;
+    private final IndexService indexService;
+    private final TreeService treeService;
+    private final CheckoutService checkoutService;
+    private final CommitService commitService;
+    private final CommitGraphService commitGraphService;
 
     @Autowired
-    public MergeService(SitRepository sitRepository) {
+    public MergeService(SitRepository sitRepository, IndexService indexService, TreeService treeService,
+            CheckoutService checkoutService, CommitService commitService, CommitGraphService commitGraphService) {
         this.sitRepository = sitRepository;
+        this.indexService = indexService;
+        this.treeService = treeService;
+        this.checkoutService = checkoutService;
+        this.commitService = commitService;
+        this.commitGraphService = commitGraphService;
     }
 
     public void handleMerge(String targetBranchName) {
@@ -27,6 +43,12 @@ public class MergeService {
         }
 
         try {
+            if (Files.exists(Paths.get(SitRepository.MERGE_HEAD_FILE))) {
+                System.out.println("Error: You have not concluded your merge (MERGE_HEAD exists).");
+                System.out.println("Fix the conflicts, \"sit add\" them and \"sit commit\" the result.");
+                return;
+            }
+
             // 1. Resolve Target Branch
             File targetBranchFile = new File(SitRepository.DOT_SIT + "/refs/heads/" + targetBranchName);
             if (!targetBranchFile.exists()) {
@@ -54,8 +76,12 @@ public class MergeService {
             }
 
             // 3. Check Ancestry (Fast-Forward)
-            if (isAncestor(currentCommitId, targetCommitId)) {
-                // Fast-Forward
+            if (commitGraphService.isAncestor(currentCommitId, targetCommitId)) {
+                // Fast-Forward, unless that would lose uncommitted work
+                Map<String, String[]> changes = treeService.diffCommits(currentCommitId, targetCommitId);
+                if (refuseLocalChanges(checkoutService.findLocalChanges(changes, indexService.loadIndexEntries()))) {
+                    return;
+                }
                 System.out
                         .println("Updating " + currentCommitId.substring(0, 7) + ".." + targetCommitId.substring(0, 7));
                 System.out.println("Fast-forward");
@@ -64,21 +90,14 @@ public class MergeService {
                 File currentBranchFile = new File(SitRepository.DOT_SIT + "/refs/heads/" + currentBranchName);
                 Files.writeString(currentBranchFile.toPath(), targetCommitId);
 
-                // Restore working directory (Using CheckoutService logic would be cleaner, but
-                // I'll invoke it or simulate it)
-                // CheckoutService logic switches HEAD, but here we kept HEAD pointing to
-                // branch, and updated the branch.
-                // We just need to sync the working dir to the NEW commit of the branch.
-                // We can use a helper in CheckoutService if available, or just re-implement
-                // restore.
-                // Since CheckoutService methods are mostly private or specific to switching
-                // HEAD, I'll copy the restore logic for safety.
-
-                restoreWorkingTree(targetCommitId);
+                // HEAD still points at the branch; sync the working tree and
+                // index to its new commit
+                checkoutService.applyChanges(changes, Runtime.getRuntime().availableProcessors());
 
+            } else if (commitGraphService.isAncestor(targetCommitId, currentCommitId)) {
+                System.out.println("Already up to date.");
             } else {
-                System.out.println("Merge conflict or non-fast-forward merge not yet implemented.");
-                System.out.println("Aborting.");
+                mergeThreeWay(currentCommitId, targetBranchName, targetCommitId);
             }
 
         } catch (IOException e) {
@@ -86,75 +105,181 @@ public class MergeService {
         }
     }
 
-    private boolean isAncestor(String potentialAncestor, String commitId) throws IOException {
-        // BFS to find ancestor
-        Queue<String> queue = new LinkedList<>();
-        Set<String> visited = new HashSet<>();
-        queue.add(commitId);
-        visited.add(commitId);
+    // Merges the target into HEAD against their merge base. Only paths the
+    // target changed since the base can need work (whatever only HEAD changed
+    // is already in place), and both sides' changes come from tree diffs that
+    // skip shared subtrees by hash, so no blob is loaded unless both sides
+    // changed that path.
+    private void mergeThreeWay(String currentCommitId, String targetBranchName, String targetCommitId)
+            throws IOException {
+        List<String> bases = commitGraphService.mergeBases(currentCommitId, targetCommitId);
+        if (bases.isEmpty()) {
+            System.out.println("Error: Refusing to merge unrelated histories.");
+            return;
+        }
+        // Criss-cross histories can have several; any of them is a valid base
+        String baseCommitId = bases.get(0);
 
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            if (current.equals(potentialAncestor)) {
-                return true;
+        Map<String, String[]> ours = treeService.diffCommits(baseCommitId, currentCommitId);
+        Map<String, String[]> theirs = treeService.diffCommits(baseCommitId, targetCommitId);
+
+        // path -> {HEAD blob, merged blob}, applied to the working tree and index
+        Map<String, String[]> updates = new TreeMap<>();
+        // Conflicted paths and what goes into their working file (null: keep HEAD's)
+        Map<String, byte[]> conflicts = new TreeMap<>();
+        String theirsLabel = targetBranchName;
+
+        for (Map.Entry<String, String[]> change : theirs.entrySet()) {
+            String path = change.getKey();
+            String baseHash = change.getValue()[0];
+            String theirsHash = change.getValue()[1];
+            String[] ourChange = ours.get(path);
+            if (ourChange == null) {
+                updates.put(path, new String[]{baseHash, theirsHash});
+                continue;
+            }
+            String oursHash = ourChange[1];
+            if (Objects.equals(oursHash, theirsHash)) {
+                continue; // Same change on both sides
             }
 
-            // Get Parent
-            List<String> parents = getParents(current);
-            for (String parent : parents) {
-                if (!visited.contains(parent)) {
-                    visited.add(parent);
-                    queue.add(parent);
+            if (oursHash == null || theirsHash == null) {
+                String deletedIn = oursHash == null ? "HEAD" : theirsLabel;
+                String keptIn = oursHash == null ? theirsLabel : "HEAD";
+                System.out.println("CONFLICT (modify/delete): " + path + " deleted in " + deletedIn
+                        + " and modified in " + keptIn + ". Version " + keptIn + " of " + path + " left in tree.");
+                conflicts.put(path, oursHash == null ? sitRepository.readObject(theirsHash) : null);
+                continue;
+            }
+
+            System.out.println("Auto-merging " + path);
+            byte[] baseData = baseHash == null ? new byte[0] : sitRepository.readObject(baseHash);
+            byte[] oursData = sitRepository.readObject(oursHash);
+            byte[] theirsData = sitRepository.readObject(theirsHash);
+            String kind = baseHash == null ? "add/add" : "content";
+            if (isBinary(baseData) || isBinary(oursData) || isBinary(theirsData)) {
+                System.out.println("warning: Cannot merge binary files: " + path + " (HEAD vs. " + theirsLabel + ")");
+                System.out.println("CONFLICT (" + kind + "): Merge conflict in " + path);
+                conflicts.put(path, null);
+                continue;
+            }
+
+            MergedContent result = mergeContent(baseData, oursData, theirsData, "HEAD", theirsLabel);
+            byte[] merged = result.data();
+            if (result.isClean()) {
+                String mergedHash = SitUtil.getSha1(merged);
+                sitRepository.saveObject(mergedHash, merged);
+                updates.put(path, new String[]{oursHash, mergedHash});
+            } else {
+                System.out.println("CONFLICT (" + kind + "): Merge conflict in " + path);
+                conflicts.put(path, merged);
+            }
+        }
+
+        // Nothing is written if that would lose uncommitted work
+        Set<String> touched = new TreeSet<>(updates.keySet());
+        touched.addAll(conflicts.keySet());
+        if (refuseLocalChanges(findLocalChanges(touched, ours, theirs))) {
+            return;
+        }
+
+        int jobs = Runtime.getRuntime().availableProcessors();
+        checkoutService.applyChanges(updates, jobs);
+        for (Map.Entry<String, byte[]> conflict : conflicts.entrySet()) {
+            if (conflict.getValue() != null) {
+                Path workingFile = Paths.get(conflict.getKey());
+                if (workingFile.getParent() != null) {
+                    Files.createDirectories(workingFile.getParent());
                 }
+                Files.write(workingFile, conflict.getValue());
             }
         }
-        return false;
+
+        if (!conflicts.isEmpty()) {
+            // The next commit picks the other parent up from here
+            Files.writeString(Paths.get(SitRepository.MERGE_HEAD_FILE), targetCommitId + "\n");
+            System.out.println("Automatic merge failed; fix conflicts and then commit the result.");
+            return;
+        }
+
+        Map<String, String> files = treeService.readCommitFiles(currentCommitId);
+        for (Map.Entry<String, String[]> update : updates.entrySet()) {
+            if (update.getValue()[1] == null) {
+                files.remove(update.getKey());
+            } else {
+                files.put(update.getKey(), update.getValue()[1]);
+            }
+        }
+        String treeHash = treeService.writeTree(files);
+        String mergeCommitId = commitService.createCommit(treeHash, List.of(currentCommitId, targetCommitId),
+                "Merge branch '" + targetBranchName + "'");
+        System.out.println("Merge made by the 'three-way' strategy (" + mergeCommitId.substring(0, 7) + ").");
+        System.out.println(" " + updates.size() + (updates.size() == 1 ? " file changed" : " files changed"));
     }
 
-    private List<String> getParents(String commitId) throws IOException {
-        List<String> parents = new ArrayList<>();
-        File commitFile = new File(SitRepository.COMMITS_DIR, commitId);
-        if (!commitFile.exists())
-            return parents;
-
-        List<String> lines = Files.readAllLines(commitFile.toPath());
-        for (String line : lines) {
-            if (line.isEmpty())
-                break; // End of header
-            if (line.startsWith("parent: ")) {
-                parents.add(line.substring(8).trim());
+    // Paths the merge would write whose index entry or working file no longer
+    // matches HEAD, plus untracked files in the way of paths the merge adds.
+    // Every such path changed on the target's side, so HEAD's blob for it is
+    // either HEAD's own change or the base's version.
+    private List<String> findLocalChanges(Set<String> paths, Map<String, String[]> ours,
+            Map<String, String[]> theirs) throws IOException {
+        // Usually a handful of paths: look them up rather than load the index
+        Map<String, String[]> headHashes = new TreeMap<>();
+        Map<String, IndexEntry> entries = new HashMap<>();
+        for (String path : paths) {
+            String headHash = ours.containsKey(path) ? ours.get(path)[1] : theirs.get(path)[0];
+            headHashes.put(path, new String[]{headHash, null});
+            IndexEntry entry = indexService.lookupEntry(path);
+            if (entry != null) {
+                entries.put(path, entry);
             }
         }
-        return parents;
+        return checkoutService.findLocalChanges(headHashes, entries);
+    }
+
+    // Prints the paths in the way and returns true when there are any
+    private static boolean refuseLocalChanges(List<String> dirty) {
+        if (dirty.isEmpty()) {
+            return false;
+        }
+        System.out.println("Error: Your local changes to the following files would be overwritten by merge:");
+        for (String path : dirty) {
+            System.out.println("\t" + path);
+        }
+        System.out.println("Please commit your changes before you merge.");
+        System.out.println("Aborting.");
+        return true;
     }
 
-    // Simplified restore (overwrites files)
-    private void restoreWorkingTree(String commitId) throws IOException {
-        File commitFile = new File(SitRepository.COMMITS_DIR, commitId);
-        List<String> lines = Files.readAllLines(commitFile.toPath());
+    // Same heuristic as diff: a NUL byte in the first 8000 bytes
+    record MergedContent(byte[] data, int conflicts) {
+        boolean isClean() {
+            return conflicts == 0;
+        }
+    }
 
-        boolean headerEnded = false;
-        for (String line : lines) {
-            if (line.isEmpty()) {
-                headerEnded = true;
-                continue;
-            }
-            if (!headerEnded)
-                continue;
+    // Merge3 works on text, but blobs may be in any encoding or none. Read as
+    // ISO-8859-1 every byte is one char and maps back to itself, and '\n' is
+    // still '\n', so a clean merge keeps the sides byte for byte. The labels
+    // go into the markers as UTF-8, like the branch names they are.
+    static MergedContent mergeContent(byte[] base, byte[] ours, byte[] theirs, String oursLabel,
+            String theirsLabel) {
+        Merge3.Result result = Merge3.merge(asBytes(base), asBytes(ours), asBytes(theirs),
+                asBytes(oursLabel.getBytes(StandardCharsets.UTF_8)),
+                asBytes(theirsLabel.getBytes(StandardCharsets.UTF_8)));
+        return new MergedContent(result.text().getBytes(StandardCharsets.ISO_8859_1), result.conflicts());
+    }
 
-            int separator = line.lastIndexOf(':');
-            if (separator == -1)
-                continue;
-            String path = line.substring(0, separator);
-            String hash = line.substring(separator + 1);
-
-            File blobFile = new File(SitRepository.OBJECTS_DIR, hash);
-            if (blobFile.exists()) {
-                File workingFile = new File(path);
-                if (workingFile.getParentFile() != null)
-                    workingFile.getParentFile().mkdirs();
-                Files.write(workingFile.toPath(), Files.readAllBytes(blobFile.toPath()));
+    private static String asBytes(byte[] data) {
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isBinary(byte[] data) {
+        for (int i = 0; i < Math.min(data.length, 8000); i++) {
+            if (data[i] == 0) {
+                return true;
             }
         }
+        return false;
     }
 }
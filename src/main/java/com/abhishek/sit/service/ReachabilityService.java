@@ -0,0 +1,339 @@
+package com.abhishek.sit.service;
+
+import com.abhishek.sit.repository.CommitGraph;
+import com.abhishek.sit.repository.EwahBitmap;
+import com.abhishek.sit.repository.PackFile;
+import com.abhishek.sit.repository.ReachabilityBitmaps;
+import com.abhishek.sit.repository.SitRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+// "Which objects does this commit reach", answered from reachability bitmaps.
+// A walk from the requested commits stops at every commit that has a stored
+// bitmap and ORs it in; only the trees of commits newer than those are read,
+// and a subtree whose bit is already set is never opened, since everything
+// under it is set as well. Without bitmaps this degrades to a full walk.
+@Service
+public class ReachabilityService {
+
+    // Besides every branch tip, one commit in this many gets a bitmap, so a
+    // walk never has to go further than this before it meets one
+    static final int BITMAP_SPACING = 100;
+
+    private final SitRepository sitRepository;
+    private final IndexService indexService;
+    private final TreeService treeService;
+    private final CommitGraphService commitGraphService;
+
+    @Autowired
+    public ReachabilityService(SitRepository sitRepository, IndexService indexService, TreeService treeService,
+            CommitGraphService commitGraphService) {
+        this.sitRepository = sitRepository;
+        this.indexService = indexService;
+        this.treeService = treeService;
+        this.commitGraphService = commitGraphService;
+    }
+
+    // sit count-objects [<from>..<to>]
+    public void handleCountObjects(String range) {
+        if (!sitRepository.isInitialized()) {
+            System.out.println("Not a sit repository.");
+            return;
+        }
+
+        try {
+            Walker walker = walker();
+            if (range != null) {
+                int dots = range.indexOf("..");
+                String from = dots < 0 ? null : resolve(range.substring(0, dots));
+                String to = resolve(dots < 0 ? range : range.substring(dots + 2));
+                if ((dots >= 0 && from == null) || to == null) {
+                    System.out.println("Error: Unknown revision in '" + range + "'.");
+                    return;
+                }
+                EwahBitmap reached = walker.reach(List.of(to));
+                if (from != null) {
+                    reached = EwahBitmap.andNot(reached, walker.reach(List.of(from)));
+                }
+                System.out.println(reached.cardinality() + " objects");
+                return;
+            }
+
+            List<String> stored = storedObjects();
+            EwahBitmap reachable = walker.reach(branchTips().values());
+            Set<String> staged = new HashSet<>(indexService.loadIndex().values());
+            int unreachable = 0;
+            for (String hash : stored) {
+                int position = walker.positionOf(hash);
+                if ((position < 0 || !reachable.get(position)) && !staged.contains(hash)) {
+                    unreachable++;
+                }
+            }
+            System.out.println("objects: " + stored.size());
+            System.out.println("reachable from branches: " + reachable.cardinality());
+            System.out.println("unreachable: " + unreachable);
+            System.out.println("bitmaps: " + walker.storedBitmaps());
+        } catch (IOException e) {
+            System.err.println("Error counting objects: " + e.getMessage());
+        }
+    }
+
+    public Walker walker() throws IOException {
+        return new Walker(ReachabilityBitmaps.load());
+    }
+
+    // Rewrites the bitmap file for the current history: every branch tip and
+    // every BITMAP_SPACING-th commit, oldest first, so each bitmap is built on
+    // top of the ones before it. Returns the number of bitmaps written.
+    public int writeBitmaps() throws IOException {
+        List<CommitGraph.Node> nodes = new ArrayList<>(commitGraphService.getNodes());
+        nodes.sort(Comparator.comparingInt(CommitGraph.Node::generation).thenComparingLong(CommitGraph.Node::date));
+        Set<String> tips = new HashSet<>(branchTips().values());
+
+        Walker walker = new Walker(null);
+        for (int i = 0; i < nodes.size(); i++) {
+            String id = nodes.get(i).id();
+            if (tips.contains(id) || (i + 1) % BITMAP_SPACING == 0) {
+                walker.built.put(id, walker.reach(List.of(id)));
+            }
+        }
+        ReachabilityBitmaps.write(walker.objects, walker.built);
+        return walker.built.size();
+    }
+
+    // Mark phase of gc --prune: every commit reachable from `roots` and every
+    // object those commits reach. Commits with a stored bitmap contribute it
+    // whole, and so do their ancestors; the trees of the commits above them are
+    // walked on `jobs` workers that share one concurrent set, so a subtree two
+    // commits have in common is expanded by whichever worker claims it first.
+    public Marked mark(Collection<String> roots, int jobs) throws IOException {
+        ReachabilityBitmaps stored = ReachabilityBitmaps.load();
+        Set<String> commits = new HashSet<>();
+        List<String> uncovered = new ArrayList<>();
+        List<String> covered = new ArrayList<>();
+        Deque<String> pending = new ArrayDeque<>();
+        for (String root : roots) {
+            if (commits.add(root)) {
+                pending.push(root);
+            }
+        }
+        while (!pending.isEmpty()) {
+            String commitId = pending.pop();
+            if (stored != null && stored.get(commitId) != null) {
+                covered.add(commitId);
+                continue;
+            }
+            uncovered.add(commitId);
+            for (String parent : commitGraphService.getParents(commitId)) {
+                if (commits.add(parent)) {
+                    pending.push(parent);
+                }
+            }
+        }
+
+        Set<String> objects = ConcurrentHashMap.newKeySet();
+        if (!covered.isEmpty()) {
+            EwahBitmap reached = EwahBitmap.EMPTY;
+            for (String commitId : covered) {
+                reached = EwahBitmap.or(reached, stored.get(commitId));
+            }
+            reached.forEach(position -> objects.add(stored.objectAt(position)));
+            // Their ancestors are live too, though their objects are in hand
+            pending.addAll(covered);
+            while (!pending.isEmpty()) {
+                for (String parent : commitGraphService.getParents(pending.pop())) {
+                    if (commits.add(parent)) {
+                        pending.push(parent);
+                    }
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            pool.submit(() -> uncovered.parallelStream().forEach(commitId -> {
+                try {
+                    String tree = treeService.getCommitTree(commitId);
+                    if (tree != null) {
+                        markTree(tree, objects);
+                    } else {
+                        objects.addAll(treeService.readCommitFiles(commitId).values());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while marking objects", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException u) {
+                throw u.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new Marked(commits, objects);
+    }
+
+    public record Marked(Set<String> commits, Set<String> objects) {
+    }
+
+    // Branch name -> commit id, for every branch that has a commit
+    public Map<String, String> branchTips() throws IOException {
+        Map<String, String> tips = new TreeMap<>();
+        File[] branches = new File(SitRepository.DOT_SIT + "/refs/heads").listFiles();
+        if (branches != null) {
+            for (File branch : branches) {
+                String id = Files.readString(branch.toPath()).trim();
+                if (!id.isEmpty()) {
+                    tips.put(branch.getName(), id);
+                }
+            }
+        }
+        return tips;
+    }
+
+    // Every object in the store, loose or packed
+    public List<String> storedObjects() throws IOException {
+        Set<String> objects = new TreeSet<>(sitRepository.getLooseObjects().list());
+        for (PackFile pack : sitRepository.getPacks().getPacks()) {
+            objects.addAll(pack.list());
+        }
+        return new ArrayList<>(objects);
+    }
+
+    private void markTree(String treeHash, Set<String> objects) throws IOException {
+        if (!objects.add(treeHash) || !sitRepository.hasObject(treeHash)) {
+            return; // Claimed by another walk, which covers everything below
+        }
+        for (TreeService.TreeEntry entry : treeService.readTreeEntries(treeHash)) {
+            if (entry.isTree()) {
+                markTree(entry.hash(), objects);
+            } else {
+                objects.add(entry.hash());
+            }
+        }
+    }
+
+    // A branch name or a commit id
+    private String resolve(String revision) throws IOException {
+        File branch = new File(SitRepository.DOT_SIT + "/refs/heads/" + revision);
+        if (branch.isFile()) {
+            return Files.readString(branch.toPath()).trim();
+        }
+        return sitRepository.getCommits().contains(revision) ? revision : null;
+    }
+
+    // One round of queries. Bit positions come from the bitmap file; objects
+    // it doesn't number (written since the last gc) get positions after its
+    // last one, so results from the same walker can be combined freely.
+    public final class Walker {
+        private final ReachabilityBitmaps stored;
+        private final int base;
+        private final List<String> objects = new ArrayList<>();
+        private final Map<String, Integer> positions = new HashMap<>();
+        private final Map<String, EwahBitmap> built = new HashMap<>();
+
+        private Walker(ReachabilityBitmaps stored) {
+            this.stored = stored;
+            this.base = stored == null ? 0 : stored.objectCount();
+        }
+
+        // Objects reachable from any of `commitIds`
+        public EwahBitmap reach(Collection<String> commitIds) throws IOException {
+            BitSet result = new BitSet();
+            Deque<String> pending = new ArrayDeque<>(commitIds);
+            Set<String> seen = new HashSet<>(commitIds);
+            List<String> rootTrees = new ArrayList<>();
+            while (!pending.isEmpty()) {
+                String commitId = pending.pop();
+                EwahBitmap bitmap = bitmap(commitId);
+                if (bitmap != null) {
+                    bitmap.orInto(result);
+                    continue;
+                }
+                String tree = treeService.getCommitTree(commitId);
+                if (tree != null) {
+                    rootTrees.add(tree);
+                } else {
+                    // Old flat commit: the manifest lists its blobs directly
+                    for (String blob : treeService.readCommitFiles(commitId).values()) {
+                        result.set(position(blob));
+                    }
+                }
+                for (String parent : commitGraphService.getParents(commitId)) {
+                    if (seen.add(parent)) {
+                        pending.push(parent);
+                    }
+                }
+            }
+            // Trees last, so every stored bitmap can cut them short
+            for (String tree : rootTrees) {
+                markTree(tree, result);
+            }
+            return EwahBitmap.fromBitSet(result);
+        }
+
+        public String objectAt(int position) {
+            return position < base ? stored.objectAt(position) : objects.get(position - base);
+        }
+
+        // -1 for an object no walk has reached
+        public int positionOf(String hash) {
+            int position = stored == null ? -1 : stored.positionOf(hash);
+            if (position < 0) {
+                Integer extended = positions.get(hash);
+                position = extended == null ? -1 : extended;
+            }
+            return position;
+        }
+
+        public int storedBitmaps() {
+            return stored == null ? 0 : stored.commits().size();
+        }
+
+        private EwahBitmap bitmap(String commitId) {
+            EwahBitmap bitmap = built.get(commitId);
+            return bitmap != null || stored == null ? bitmap : stored.get(commitId);
+        }
+
+        private int position(String hash) {
+            int position = positionOf(hash);
+            if (position < 0) {
+                position = base + objects.size();
+                objects.add(hash);
+                positions.put(hash, position);
+            }
+            return position;
+        }
+
+        private void markTree(String treeHash, BitSet result) throws IOException {
+            int position = position(treeHash);
+            if (result.get(position)) {
+                return; // Reached before, and with it everything below
+            }
+            result.set(position);
+            if (!sitRepository.hasObject(treeHash)) {
+                return;
+            }
+            for (TreeService.TreeEntry entry : treeService.readTreeEntries(treeHash)) {
+                if (entry.isTree()) {
+                    markTree(entry.hash(), result);
+                } else {
+                    result.set(position(entry.hash()));
+                }
+            }
+        }
+    }
+}
@@ -1,25 +1,38 @@
 package com.abhishek.sit.service;
 
+import com.abhishek.sit.model.FileStat;
+import com.abhishek.sit.model.IndexEntry;
+import com.abhishek.sit.model.StatusReport;
 import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.util.SitIgnore;
 import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.Trace;
+import com.abhishek.sit.util.TreeScanner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class StatusService {
 
     private final SitRepository sitRepository;
     private final IndexService indexService;
+    private final TreeService treeService;
+    private final DaemonClient daemonClient;
 
     @Autowired
-    public StatusService(SitRepository sitRepository, IndexService indexService) {
+    public StatusService(SitRepository sitRepository, IndexService indexService, TreeService treeService,
+            DaemonClient daemonClient) {
         this.sitRepository = sitRepository;
         this.indexService = indexService;
+        this.treeService = treeService;
+        this.daemonClient = daemonClient;
     }
 
     public void handleStatus() {
@@ -28,182 +41,236 @@ public class StatusService {
             return;
         }
 
+        // A running `sit daemon` already knows the state of the tree
+        String answer = daemonClient.query(DaemonClient.STATUS);
+        if (answer != null) {
+            System.out.print(answer);
+            return;
+        }
+
         try {
-            // 1. Get HEAD commit files (what's in the last commit)
-            Map<String, String> headFiles = getHeadFiles(); // Path -> Hash
-
-            // 2. Get staged files (what's in the index)
-            Map<String, String> indexFiles = indexService.loadIndex(); // Path -> Hash
-
-            // 3. Scan current working directory
-            List<File> currentFiles = SitUtil.scanDirectory(new File("."), new HashSet<>(Arrays.asList(
-                    ".sit", ".git", "build", "gradle", "target", ".gradle", ".idea")));
-
-            Set<String> untracked = new TreeSet<>();
-            Set<String> modified = new TreeSet<>();
-            Set<String> staged = new TreeSet<>();
-            Set<String> deleted = new TreeSet<>();
-
-            // Track working directory files
-            Map<String, String> workingFiles = new HashMap<>();
-            for (File file : currentFiles) {
-                String relPath = getRelativePath(file);
-                byte[] content = Files.readAllBytes(file.toPath());
-                String currentHash = SitUtil.getSha1(content);
-                workingFiles.put(relPath, currentHash);
+            // Scan the working directory. Tracked files whose stat data no longer
+            // matches the index are hashed right away, on the scanner's workers,
+            // so computeStatus only has to pick the hashes up.
+            Map<String, IndexEntry> indexEntries = indexService.loadIndexEntries();
+            Set<String> workingPaths = ConcurrentHashMap.newKeySet();
+            Map<String, FileStat> stats = new ConcurrentHashMap<>();
+            Map<String, IndexEntry> hashes = new ConcurrentHashMap<>();
+            TreeScanner.scan(Paths.get("."), SitIgnore.forWorkingTree(), Runtime.getRuntime().availableProcessors(),
+                    (relPath, path, stat) -> {
+                        workingPaths.add(relPath);
+                        IndexEntry entry = indexEntries.get(relPath);
+                        if (entry != null) {
+                            stats.put(relPath, stat);
+                            if (!entry.stat().matches(stat)) {
+                                hashes.put(relPath, new IndexEntry(SitUtil.getSha1(path), stat));
+                            }
+                        }
+                    });
+
+            Map<String, String> headFiles;
+            Trace.Phase readHead = Trace.phase("read HEAD");
+            try {
+                headFiles = getHeadFiles();
+            } finally {
+                readHead.end();
+            }
+            StatusReport report;
+            Trace.Phase compare = Trace.phase("compare");
+            try {
+                report = computeStatus(headFiles, indexEntries, workingPaths, stats, hashes);
+            } finally {
+                compare.end();
             }
+            printStatus(report, System.out);
 
-            // Check all files in index (staged area)
-            for (Map.Entry<String, String> entry : indexFiles.entrySet()) {
-                String path = entry.getKey();
-                String indexHash = entry.getValue();
-                String workingHash = workingFiles.get(path);
-                String headHash = headFiles.get(path);
-
-                if (workingHash == null) {
-                    // File is in index but not in working directory
-                    if (headHash != null && !headHash.equals(indexHash)) {
-                        // Staged for deletion (was in HEAD, staged as different/deleted)
-                        staged.add(path);
-                    }
-                    deleted.add(path);
-                } else {
-                    // File exists in working directory
-                    if (headHash == null) {
-                        // New file staged for addition
-                        staged.add(path);
-                    } else if (!headHash.equals(indexHash)) {
-                        // File modified and staged
-                        staged.add(path);
-                    }
-
-                    if (!indexHash.equals(workingHash)) {
-                        // File modified in working directory after staging
-                        modified.add(path);
-                    }
+        } catch (IOException e) {
+            System.err.println("Error calculating status: " + e.getMessage());
+        }
+    }
+
+    // Compares HEAD, the index and the given working paths. knownStats holds
+    // stat data the caller already has (anything missing is stat'ed here), and
+    // hashCache remembers content hashes by stat between calls, so a caller that
+    // keeps both around (the daemon) never rereads an unchanged file.
+    public StatusReport computeStatus(Map<String, String> headFiles, Map<String, IndexEntry> indexEntries,
+            Set<String> workingPaths, Map<String, FileStat> knownStats, Map<String, IndexEntry> hashCache)
+            throws IOException {
+        Set<String> untracked = new TreeSet<>();
+        Set<String> modified = new TreeSet<>();
+        Set<String> staged = new TreeSet<>();
+        Set<String> deleted = new TreeSet<>();
+        Set<String> unstaged = new TreeSet<>();
+
+        // Tracked files stay tracked when an ignore rule covers them, but the
+        // walk never sees them; pick up the ones that are still there
+        Set<String> seen = workingPaths;
+        for (String path : indexEntries.keySet()) {
+            if (!seen.contains(path) && Files.isRegularFile(Paths.get(path))) {
+                if (seen == workingPaths) {
+                    seen = new HashSet<>(workingPaths);
                 }
+                seen.add(path);
             }
+        }
+        workingPaths = seen;
 
-            // Check for untracked files (in working dir but not in index)
-            for (String path : workingFiles.keySet()) {
-                if (!indexFiles.containsKey(path)) {
-                    untracked.add(path);
-                }
+        // Track working directory files. Only tracked files need a hash, and
+        // only those whose stat data no longer matches the index get read.
+        Map<String, String> workingFiles = new HashMap<>();
+        boolean refreshed = false;
+        for (String relPath : workingPaths) {
+            IndexEntry entry = indexEntries.get(relPath);
+            if (entry == null) {
+                continue; // Untracked, contents don't matter
             }
 
-            // Check for deleted files (in HEAD but not in working dir and not staged)
-            for (String path : headFiles.keySet()) {
-                if (!workingFiles.containsKey(path) && !indexFiles.containsKey(path)) {
-                    deleted.add(path);
-                }
+            FileStat stat = knownStats.get(relPath);
+            if (stat == null) {
+                stat = SitUtil.stat(Paths.get(relPath));
+            }
+            if (entry.stat().matches(stat)) {
+                workingFiles.put(relPath, entry.hash());
+                continue;
             }
 
-            printStatus(staged, modified, deleted, untracked);
+            IndexEntry cached = hashCache.get(relPath);
+            String currentHash;
+            if (cached != null && cached.stat().matches(stat)) {
+                currentHash = cached.hash();
+            } else {
+                currentHash = SitUtil.getSha1(Paths.get(relPath));
+                hashCache.put(relPath, new IndexEntry(currentHash, stat));
+            }
+            workingFiles.put(relPath, currentHash);
 
-        } catch (IOException e) {
-            System.err.println("Error calculating status: " + e.getMessage());
+            if (currentHash.equals(entry.hash())) {
+                // Content is unchanged, only the stat data was stale (touch,
+                // racy entry, old index). Remember the new stat for next time.
+                indexEntries.put(relPath, entry.withStat(stat));
+                refreshed = true;
+            }
         }
-    }
 
-    private Map<String, String> getHeadFiles() throws IOException {
-        Map<String, String> files = new HashMap<>();
-        String headCommitId = sitRepository.getHeadCommitId();
-        if (headCommitId == null) {
-            return files; // No commits yet
+        if (refreshed) {
+            indexService.saveIndexEntries(indexEntries);
         }
 
-        // Parse commit file to get file list
-        File commitFile = new File(SitRepository.COMMITS_DIR, headCommitId);
-        if (!commitFile.exists()) {
-            return files;
+        Map<String, String> indexFiles = new TreeMap<>();
+        for (Map.Entry<String, IndexEntry> entry : indexEntries.entrySet()) {
+            indexFiles.put(entry.getKey(), entry.getValue().hash());
         }
 
-        List<String> lines = Files.readAllLines(commitFile.toPath());
-
-        // Commit Format:
-        // parent: <id>
-        // author: ...
-        // date: ...
-        // message: ...
-        // (blank line)
-        // path/to/file1:hash
-        // path/to/file2:hash
-
-        boolean parsingFiles = false;
-        for (String line : lines) {
-            if (line.isEmpty()) {
-                parsingFiles = true;
-                continue;
-            }
-            if (parsingFiles) {
-                // FIXED: Use colon separator instead of space to match CommitService format
-                int separator = line.lastIndexOf(':');
-                if (separator != -1) {
-                    String path = line.substring(0, separator);
-                    String hash = line.substring(separator + 1).trim();
-                    files.put(path, hash);
+        // Check all files in index (staged area)
+        for (Map.Entry<String, String> entry : indexFiles.entrySet()) {
+            String path = entry.getKey();
+            String indexHash = entry.getValue();
+            String workingHash = workingFiles.get(path);
+            String headHash = headFiles.get(path);
+
+            if (workingHash == null) {
+                // File is in index but not in working directory
+                if (headHash != null && !headHash.equals(indexHash)) {
+                    // Staged for deletion (was in HEAD, staged as different/deleted)
+                    staged.add(path);
+                }
+                deleted.add(path);
+                unstaged.add(path);
+            } else {
+                // File exists in working directory
+                if (headHash == null) {
+                    // New file staged for addition
+                    staged.add(path);
+                } else if (!headHash.equals(indexHash)) {
+                    // File modified and staged
+                    staged.add(path);
+                }
+
+                if (!indexHash.equals(workingHash)) {
+                    // File modified in working directory after staging
+                    modified.add(path);
+                    unstaged.add(path);
                 }
             }
         }
-        return files;
+
+        // Check for untracked files (in working dir but not in index)
+        for (String path : workingPaths) {
+            if (!indexFiles.containsKey(path)) {
+                untracked.add(path);
+            }
+        }
+
+        // Check for deleted files (in HEAD but not in working dir and not staged)
+        for (String path : headFiles.keySet()) {
+            if (!workingPaths.contains(path) && !indexFiles.containsKey(path)) {
+                deleted.add(path);
+            }
+        }
+
+        return new StatusReport(staged, modified, deleted, untracked, unstaged);
     }
 
-    private String getRelativePath(File file) {
-        String path = file.getPath().replace("\\", "/");
-        if (path.startsWith("./")) {
-            return path.substring(2);
+    public Map<String, String> getHeadFiles() throws IOException {
+        String headCommitId = sitRepository.getHeadCommitId();
+        if (headCommitId == null) {
+            return new HashMap<>(); // No commits yet
         }
-        return path;
+        return treeService.readCommitFiles(headCommitId);
     }
 
-    private void printStatus(Set<String> staged, Set<String> modified,
-                             Set<String> deleted, Set<String> untracked) {
+    public void printStatus(StatusReport report, PrintStream out) {
+        Set<String> staged = report.staged();
+        Set<String> modified = report.modified();
+        Set<String> deleted = report.deleted();
+        Set<String> untracked = report.untracked();
+
         // Check if working tree is clean
         if (staged.isEmpty() && modified.isEmpty() && deleted.isEmpty() && untracked.isEmpty()) {
-            System.out.println("nothing to commit, working tree clean");
+            out.println("nothing to commit, working tree clean");
             return;
         }
 
         // Show staged changes (changes to be committed)
         if (!staged.isEmpty()) {
-            System.out.println("Changes to be committed:");
-            System.out.println("  (use \"sit reset <file>...\" to unstage)");
-            System.out.println();
+            out.println("Changes to be committed:");
+            out.println("  (use \"sit reset <file>...\" to unstage)");
+            out.println();
             for (String file : staged) {
                 if (deleted.contains(file)) {
-                    System.out.println("\tdeleted:    " + file);
+                    out.println("\tdeleted:    " + file);
                 } else {
-                    System.out.println("\tnew file:   " + file);
+                    out.println("\tnew file:   " + file);
                 }
             }
-            System.out.println();
+            out.println();
         }
 
         // Show unstaged changes (changes not staged for commit)
         if (!modified.isEmpty() || (!deleted.isEmpty() && staged.isEmpty())) {
-            System.out.println("Changes not staged for commit:");
-            System.out.println("  (use \"sit add <file>...\" to update what will be committed)");
-            System.out.println();
+            out.println("Changes not staged for commit:");
+            out.println("  (use \"sit add <file>...\" to update what will be committed)");
+            out.println();
             for (String file : modified) {
-                System.out.println("\tmodified:   " + file);
+                out.println("\tmodified:   " + file);
             }
             if (staged.isEmpty()) {
                 for (String file : deleted) {
-                    System.out.println("\tdeleted:    " + file);
+                    out.println("\tdeleted:    " + file);
                 }
             }
-            System.out.println();
+            out.println();
         }
 
         // Show untracked files
         if (!untracked.isEmpty()) {
-            System.out.println("Untracked files:");
-            System.out.println("  (use \"sit add <file>...\" to include in what will be committed)");
-            System.out.println();
+            out.println("Untracked files:");
+            out.println("  (use \"sit add <file>...\" to include in what will be committed)");
+            out.println();
             for (String file : untracked) {
-                System.out.println("\t" + file);
+                out.println("\t" + file);
             }
-            System.out.println();
+            out.println();
         }
     }
 }
\ No newline at end of file
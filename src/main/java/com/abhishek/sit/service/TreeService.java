@@ -0,0 +1,238 @@
+package com.abhishek.sit.service;
+
+import com.abhishek.sit.model.Commit;
+import com.abhishek.sit.repository.LruCache;
+import com.abhishek.sit.repository.SitRepository;
+import com.abhishek.sit.util.SitUtil;
+import com.abhishek.sit.util.Trace;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Directory trees stored as objects. A tree lists its direct children, one per
+// line, sorted by name:
+//
+//   blob <hash> <name>
+//   tree <hash> <name>
+//
+// and is stored under the SHA-1 of that text. Commits reference a root tree
+// ("tree: <hash>" header), so an unchanged directory has the same hash in every
+// commit, is written only once and can be skipped wholesale when comparing.
+@Service
+public class TreeService {
+
+    public static final String BLOB = "blob";
+    public static final String TREE = "tree";
+
+    // Parsed trees, shared by every walk in the process. Trees are immutable
+    // (named by their content), so nothing ever invalidates an entry.
+    private static final long TREE_CACHE_BYTES = 16L * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final SitRepository sitRepository;
+    private final LruCache<String, List<TreeEntry>> treeCache = new LruCache<>(TREE_CACHE_BYTES,
+            entries -> {
+                long bytes = ENTRY_OVERHEAD;
+                for (TreeEntry entry : entries) {
+                    bytes += ENTRY_OVERHEAD + entry.name().length();
+                }
+                return bytes;
+            }, Trace.Counter.TREE_CACHE_HITS, Trace.Counter.TREE_CACHE_MISSES);
+
+    @Autowired
+    public TreeService(SitRepository sitRepository) {
+        this.sitRepository = sitRepository;
+    }
+
+    // Builds the tree objects for a flat path -> blob map and returns the root
+    // tree hash. Trees that already exist are not written again.
+    public String writeTree(Map<String, String> files) throws IOException {
+        Node root = new Node();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            String[] parts = entry.getKey().split("/");
+            Node node = root;
+            for (int i = 0; i < parts.length - 1; i++) {
+                node = node.dirs.computeIfAbsent(parts[i], k -> new Node());
+            }
+            node.files.put(parts[parts.length - 1], entry.getValue());
+        }
+        Trace.Phase phase = Trace.phase("write trees");
+        try {
+            return writeNode(root);
+        } finally {
+            phase.end();
+        }
+    }
+
+    // Unmodifiable, and possibly shared with other callers
+    public List<TreeEntry> readTreeEntries(String treeHash) throws IOException {
+        List<TreeEntry> cached = treeCache.get(treeHash);
+        if (cached != null) {
+            return cached;
+        }
+        List<TreeEntry> entries = new ArrayList<>();
+        String content = new String(sitRepository.readObject(treeHash), StandardCharsets.UTF_8);
+        for (String line : content.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split(" ", 3);
+            if (parts.length != 3) {
+                throw new IOException("tree " + treeHash + " is corrupt");
+            }
+            entries.add(new TreeEntry(parts[0], parts[1], parts[2]));
+        }
+        entries = List.copyOf(entries);
+        treeCache.put(treeHash, entries);
+        return entries;
+    }
+
+    // Flattens a tree into path -> blob hash
+    public Map<String, String> readTree(String treeHash) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        collect(treeHash, "", files);
+        return files;
+    }
+
+    // Path -> blob hash for a commit, whether it references a root tree or is an
+    // older commit with the whole manifest inlined after the header.
+    public Map<String, String> readCommitFiles(String commitId) throws IOException {
+        Commit commit = sitRepository.getCommits().read(commitId);
+        if (commit == null) {
+            return new TreeMap<>();
+        }
+        return commit.tree() != null ? readTree(commit.tree()) : new TreeMap<>(commit.manifest());
+    }
+
+    // Root tree hash of a commit, or null for old flat commits
+    public String getCommitTree(String commitId) throws IOException {
+        Commit commit = sitRepository.getCommits().read(commitId);
+        return commit == null ? null : commit.tree();
+    }
+
+    // Paths whose blob differs between two commits: path -> {oldHash, newHash},
+    // with null for a side where the path doesn't exist. Subtrees with equal
+    // hashes are skipped without being read.
+    public Map<String, String[]> diffCommits(String fromCommitId, String toCommitId) throws IOException {
+        Trace.Phase phase = Trace.phase("diff trees");
+        try {
+            return compareCommits(fromCommitId, toCommitId);
+        } finally {
+            phase.end();
+        }
+    }
+
+    private Map<String, String[]> compareCommits(String fromCommitId, String toCommitId) throws IOException {
+        Map<String, String[]> changes = new TreeMap<>();
+        String fromTree = fromCommitId == null ? null : getCommitTree(fromCommitId);
+        String toTree = toCommitId == null ? null : getCommitTree(toCommitId);
+
+        boolean fromFlat = fromCommitId != null && fromTree == null;
+        boolean toFlat = toCommitId != null && toTree == null;
+        if (fromFlat || toFlat) {
+            // Old flat commit on either side: compare manifests
+            Map<String, String> from = fromCommitId == null ? Map.of() : readCommitFiles(fromCommitId);
+            Map<String, String> to = toCommitId == null ? Map.of() : readCommitFiles(toCommitId);
+            diffMaps(from, to, changes);
+            return changes;
+        }
+        diffTrees(fromTree, toTree, "", changes);
+        return changes;
+    }
+
+    public void diffTrees(String fromTree, String toTree, String prefix, Map<String, String[]> changes)
+            throws IOException {
+        if (Objects.equals(fromTree, toTree)) {
+            return; // Identical subtree
+        }
+        Map<String, TreeEntry> from = byName(fromTree);
+        Map<String, TreeEntry> to = byName(toTree);
+        Set<String> names = new TreeSet<>(from.keySet());
+        names.addAll(to.keySet());
+
+        for (String name : names) {
+            TreeEntry a = from.get(name);
+            TreeEntry b = to.get(name);
+            if (a != null && b != null && a.hash().equals(b.hash()) && a.type().equals(b.type())) {
+                continue;
+            }
+            String path = prefix + name;
+            String aTree = a != null && a.isTree() ? a.hash() : null;
+            String bTree = b != null && b.isTree() ? b.hash() : null;
+            if (aTree != null || bTree != null) {
+                diffTrees(aTree, bTree, path + "/", changes);
+            }
+            String aBlob = a != null && !a.isTree() ? a.hash() : null;
+            String bBlob = b != null && !b.isTree() ? b.hash() : null;
+            if (!Objects.equals(aBlob, bBlob)) {
+                changes.put(path, new String[]{aBlob, bBlob});
+            }
+        }
+    }
+
+    private Map<String, TreeEntry> byName(String treeHash) throws IOException {
+        Map<String, TreeEntry> entries = new HashMap<>();
+        if (treeHash != null) {
+            for (TreeEntry entry : readTreeEntries(treeHash)) {
+                entries.put(entry.name(), entry);
+            }
+        }
+        return entries;
+    }
+
+    private static void diffMaps(Map<String, String> from, Map<String, String> to, Map<String, String[]> changes) {
+        Set<String> paths = new TreeSet<>(from.keySet());
+        paths.addAll(to.keySet());
+        for (String path : paths) {
+            String a = from.get(path);
+            String b = to.get(path);
+            if (!Objects.equals(a, b)) {
+                changes.put(path, new String[]{a, b});
+            }
+        }
+    }
+
+    private void collect(String treeHash, String prefix, Map<String, String> files) throws IOException {
+        for (TreeEntry entry : readTreeEntries(treeHash)) {
+            if (entry.isTree()) {
+                collect(entry.hash(), prefix + entry.name() + "/", files);
+            } else {
+                files.put(prefix + entry.name(), entry.hash());
+            }
+        }
+    }
+
+    private String writeNode(Node node) throws IOException {
+        // Children sorted by name, whatever their type
+        Map<String, String> lines = new TreeMap<>();
+        for (Map.Entry<String, Node> dir : node.dirs.entrySet()) {
+            lines.put(dir.getKey(), TREE + " " + writeNode(dir.getValue()) + " " + dir.getKey());
+        }
+        for (Map.Entry<String, String> file : node.files.entrySet()) {
+            lines.put(file.getKey(), BLOB + " " + file.getValue() + " " + file.getKey());
+        }
+
+        StringBuilder content = new StringBuilder();
+        for (String line : lines.values()) {
+            content.append(line).append('\n');
+        }
+        byte[] data = content.toString().getBytes(StandardCharsets.UTF_8);
+        String hash = SitUtil.getSha1(data);
+        sitRepository.saveObject(hash, data);
+        return hash;
+    }
+
+    public record TreeEntry(String type, String hash, String name) {
+        public boolean isTree() {
+            return TREE.equals(type);
+        }
+    }
+
+    private static class Node {
+        final Map<String, Node> dirs = new TreeMap<>();
+        final Map<String, String> files = new TreeMap<>();
+    }
+}
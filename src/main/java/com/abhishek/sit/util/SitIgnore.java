@@ -0,0 +1,443 @@
+package com.abhishek.sit.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which working tree paths sit leaves alone. Any directory may hold a
+// .sitignore with gitignore-style patterns, one per line:
+//
+//   # comment              blank lines and comments are skipped
+//   *.log                  no '/': matches the name at any depth below the file
+//   /dist  docs/*.html     a '/' anchors the pattern to the .sitignore's directory
+//   tmp/                   trailing '/': directories only
+//   !keep.log              negation: re-includes what an earlier pattern excluded
+//   **/gen  logs/**  a/**/b   "**" spans any number of directories
+//   \#name  \!name         a backslash escapes a leading '#' or '!'
+//
+// Within a file the last matching pattern wins, and a deeper .sitignore beats
+// the ones above it. The built-in names below come last, so a .sitignore can
+// take them back with "!build"; only .sit itself is never part of the tree.
+//
+// Callers walk top-down and never descend into an ignored directory, so a path
+// is only ever asked about when its parent is known not to be ignored, and
+// nothing below an excluded directory can be re-included (as with git). Paths
+// named on the command line go through isIgnoredPath, which checks the
+// directories above them too.
+//
+// Each .sitignore is read once, when the walk first reaches its directory,
+// and compiled: plain names go into a hash map, and glob segments are
+// pre-parsed into typed tokens, with "*.ext" and "prefix*" reduced to
+// endsWith/startsWith checks. The rules that apply to a path are looked up
+// from its directory upwards, with no regular expressions involved. Safe for
+// concurrent use.
+public final class SitIgnore {
+
+    public static final String IGNORE_FILE = ".sitignore";
+
+    static final List<String> DEFAULT_PATTERNS = List.of(".git", "build", "gradle", "target", ".gradle", ".idea");
+
+    private final Path root;
+    private final RuleSet defaults = RuleSet.compile(DEFAULT_PATTERNS);
+    private final Map<String, RuleSet> byDirectory = new ConcurrentHashMap<>();
+
+    public SitIgnore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    // For the repository in the current directory
+    public static SitIgnore forWorkingTree() {
+        return new SitIgnore(Paths.get(""));
+    }
+
+    // `relPath` is '/'-separated and relative to the root
+    public boolean isIgnored(String relPath, boolean isDirectory) {
+        if (relPath.equals(".sit") || relPath.startsWith(".sit/")) {
+            return true;
+        }
+        // From the path's own directory up to the root
+        int slash = relPath.lastIndexOf('/');
+        while (true) {
+            RuleSet rules = rulesFor(slash < 0 ? "" : relPath.substring(0, slash));
+            if (rules != RuleSet.EMPTY) {
+                int verdict = rules.match(slash < 0 ? relPath : relPath.substring(slash + 1), isDirectory);
+                if (verdict != RuleSet.NO_MATCH) {
+                    return verdict == RuleSet.IGNORED;
+                }
+            }
+            if (slash < 0) {
+                break;
+            }
+            slash = relPath.lastIndexOf('/', slash - 1);
+        }
+        return defaults.match(relPath, isDirectory) == RuleSet.IGNORED;
+    }
+
+    // For a path named directly rather than reached by a walk: it is also
+    // ignored when any directory above it is, since a walk would never have
+    // got there
+    public boolean isIgnoredPath(String relPath, boolean isDirectory) {
+        for (int slash = relPath.indexOf('/'); slash >= 0; slash = relPath.indexOf('/', slash + 1)) {
+            if (isIgnored(relPath.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return !relPath.isEmpty() && isIgnored(relPath, isDirectory);
+    }
+
+    // '/'-separated path of `path` relative to the root, "" for the root itself
+    public String relativize(Path path) {
+        return root.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private RuleSet rulesFor(String dir) {
+        return byDirectory.computeIfAbsent(dir, d -> {
+            Path file = (d.isEmpty() ? root : root.resolve(d)).resolve(IGNORE_FILE);
+            if (!Files.isRegularFile(file)) {
+                return RuleSet.EMPTY;
+            }
+            try {
+                return RuleSet.compile(Files.readAllLines(file));
+            } catch (IOException e) {
+                System.err.println("Warning: could not read " + file + ": " + e.getMessage());
+                return RuleSet.EMPTY;
+            }
+        });
+    }
+
+    // The compiled patterns of one .sitignore
+    private static final class RuleSet {
+
+        static final int NO_MATCH = 0;
+        static final int IGNORED = 1;
+        static final int INCLUDED = 2;
+        static final RuleSet EMPTY = new RuleSet(List.of());
+
+        private final List<Rule> rules;
+        // Plain-name patterns, name -> their positions in `rules`, ascending
+        private final Map<String, int[]> byName = new HashMap<>();
+        // Positions of every other pattern, ascending
+        private final int[] others;
+
+        private RuleSet(List<Rule> rules) {
+            this.rules = rules;
+            Map<String, List<Integer>> names = new HashMap<>();
+            List<Integer> rest = new ArrayList<>();
+            for (int i = 0; i < rules.size(); i++) {
+                Rule rule = rules.get(i);
+                if (rule.literalName != null) {
+                    names.computeIfAbsent(rule.literalName, n -> new ArrayList<>()).add(i);
+                } else {
+                    rest.add(i);
+                }
+            }
+            names.forEach((name, positions) -> byName.put(name,
+                    positions.stream().mapToInt(Integer::intValue).toArray()));
+            this.others = rest.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        static RuleSet compile(List<String> lines) {
+            List<Rule> rules = new ArrayList<>();
+            for (String line : lines) {
+                Rule rule = Rule.parse(line);
+                if (rule != null) {
+                    rules.add(rule);
+                }
+            }
+            return rules.isEmpty() ? EMPTY : new RuleSet(rules);
+        }
+
+        // The verdict of the last pattern matching `path` (relative to this
+        // file's directory), or NO_MATCH
+        int match(String path, boolean isDirectory) {
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            int best = -1;
+            int[] named = byName.get(name);
+            if (named != null) {
+                for (int i = named.length - 1; i >= 0; i--) {
+                    if (!rules.get(named[i]).directoryOnly || isDirectory) {
+                        best = named[i];
+                        break;
+                    }
+                }
+            }
+            // Only patterns after the best plain-name match can override it
+            for (int i = others.length - 1; i >= 0 && others[i] > best; i--) {
+                if (rules.get(others[i]).matches(path, name, isDirectory)) {
+                    best = others[i];
+                    break;
+                }
+            }
+            if (best < 0) {
+                return NO_MATCH;
+            }
+            return rules.get(best).negated ? INCLUDED : IGNORED;
+        }
+    }
+
+    private static final class Rule {
+        final boolean negated;
+        final boolean directoryOnly;
+        // Set for a bare name without wildcards, the common case
+        final String literalName;
+        // Unanchored: one segment matched against the name. Anchored: the whole
+        // path, segment by segment, null entries standing for "**".
+        final Glob[] segments;
+        final boolean anchored;
+
+        private Rule(boolean negated, boolean directoryOnly, String literalName, Glob[] segments, boolean anchored) {
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.literalName = literalName;
+            this.segments = segments;
+            this.anchored = anchored;
+        }
+
+        // Null for blank lines and comments
+        static Rule parse(String line) {
+            String pattern = trimTrailingSpaces(line);
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                return null;
+            }
+            boolean negated = false;
+            if (pattern.startsWith("!")) {
+                negated = true;
+                pattern = pattern.substring(1);
+            } else if (pattern.startsWith("\\#") || pattern.startsWith("\\!")) {
+                pattern = pattern.substring(1);
+            }
+            boolean directoryOnly = pattern.endsWith("/");
+            while (pattern.endsWith("/")) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            if (pattern.isEmpty()) {
+                return null;
+            }
+
+            boolean anchored = pattern.indexOf('/') >= 0;
+            if (!anchored) {
+                if (!Glob.hasWildcards(pattern)) {
+                    return new Rule(negated, directoryOnly, Glob.unescape(pattern), null, false);
+                }
+                return new Rule(negated, directoryOnly, null, new Glob[]{Glob.compile(pattern)}, false);
+            }
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            String[] parts = pattern.split("/+");
+            Glob[] segments = new Glob[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                segments[i] = "**".equals(parts[i]) ? null : Glob.compile(parts[i]);
+            }
+            return new Rule(negated, directoryOnly, null, segments, true);
+        }
+
+        boolean matches(String path, String name, boolean isDirectory) {
+            if (directoryOnly && !isDirectory) {
+                return false;
+            }
+            if (!anchored) {
+                return segments[0].matches(name);
+            }
+            return matchSegments(path.split("/"), 0, 0);
+        }
+
+        private boolean matchSegments(String[] path, int p, int s) {
+            while (s < segments.length) {
+                Glob segment = segments[s];
+                if (segment == null) {
+                    // A trailing "**" needs something inside; elsewhere it may span nothing
+                    if (s == segments.length - 1) {
+                        return p < path.length;
+                    }
+                    for (int skip = p; skip <= path.length; skip++) {
+                        if (matchSegments(path, skip, s + 1)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (p >= path.length || !segment.matches(path[p])) {
+                    return false;
+                }
+                p++;
+                s++;
+            }
+            return p == path.length;
+        }
+
+        private static String trimTrailingSpaces(String line) {
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+                end--;
+            }
+            return line.substring(0, end);
+        }
+    }
+
+    // One path segment pattern: '*' (any run of characters), '?' (any one),
+    // '[a-z]' / '[!a-z]' (a class) and '\x' (a literal x)
+    static final class Glob {
+        private static final int LITERAL = 0;
+        private static final int SUFFIX = 1;  // "*" + literal
+        private static final int PREFIX = 2;  // literal + "*"
+        private static final int GENERAL = 3;
+
+        // Token kinds of a GENERAL glob
+        private static final byte CHAR = 0;
+        private static final byte ANY = 1;
+        private static final byte STAR = 2;
+        private static final byte CLASS = 3;
+
+        private final int kind;
+        private final String text;
+        // GENERAL only, one slot per token: kinds[i] says what it is, chars[i]
+        // holds a CHAR's character and classes[i] a CLASS's class
+        private final byte[] kinds;
+        private final char[] chars;
+        private final CharClass[] classes;
+
+        private Glob(int kind, String text, byte[] kinds, char[] chars, CharClass[] classes) {
+            this.kind = kind;
+            this.text = text;
+            this.kinds = kinds;
+            this.chars = chars;
+            this.classes = classes;
+        }
+
+        static boolean hasWildcards(String pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?' || c == '[') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static String unescape(String pattern) {
+            return pattern.indexOf('\\') < 0 ? pattern : pattern.replaceAll("\\\\(.)", "$1");
+        }
+
+        static Glob compile(String pattern) {
+            byte[] kinds = new byte[pattern.length()];
+            char[] chars = new char[pattern.length()];
+            CharClass[] classes = new CharClass[pattern.length()];
+            int count = 0;
+            int stars = 0;
+            int others = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\\' && i + 1 < pattern.length()) {
+                    chars[count++] = pattern.charAt(++i);
+                } else if (c == '*') {
+                    if (count == 0 || kinds[count - 1] != STAR) {
+                        kinds[count++] = STAR;
+                        stars++;
+                    }
+                } else if (c == '?') {
+                    kinds[count++] = ANY;
+                    others++;
+                } else if (c == '[' && pattern.indexOf(']', i + 2) > 0) {
+                    int close = pattern.indexOf(']', i + 2);
+                    kinds[count] = CLASS;
+                    classes[count++] = CharClass.parse(pattern.substring(i + 1, close));
+                    others++;
+                    i = close;
+                } else {
+                    chars[count++] = c;
+                }
+            }
+            if (stars == 0 && others == 0) {
+                return new Glob(LITERAL, new String(chars, 0, count), null, null, null);
+            }
+            if (stars == 1 && others == 0) {
+                if (kinds[0] == STAR) {
+                    return new Glob(SUFFIX, new String(chars, 1, count - 1), null, null, null);
+                }
+                if (kinds[count - 1] == STAR) {
+                    return new Glob(PREFIX, new String(chars, 0, count - 1), null, null, null);
+                }
+            }
+            return new Glob(GENERAL, null, Arrays.copyOf(kinds, count), Arrays.copyOf(chars, count),
+                    Arrays.copyOf(classes, count));
+        }
+
+        boolean matches(String name) {
+            switch (kind) {
+                case LITERAL:
+                    return name.equals(text);
+                case SUFFIX:
+                    return name.endsWith(text);
+                case PREFIX:
+                    return name.startsWith(text);
+                default:
+                    return matchGeneral(name);
+            }
+        }
+
+        // Greedy left to right; on a mismatch, let the last '*' take one more
+        // character and retry from there
+        private boolean matchGeneral(String name) {
+            int t = 0;
+            int n = 0;
+            int starT = -1;
+            int starN = -1;
+            while (n < name.length()) {
+                if (t < kinds.length && kinds[t] == STAR) {
+                    starT = t++;
+                    starN = n;
+                } else if (t < kinds.length && matchesOne(t, name.charAt(n))) {
+                    t++;
+                    n++;
+                } else if (starT >= 0) {
+                    t = starT + 1;
+                    n = ++starN;
+                } else {
+                    return false;
+                }
+            }
+            while (t < kinds.length && kinds[t] == STAR) {
+                t++;
+            }
+            return t == kinds.length;
+        }
+
+        private boolean matchesOne(int t, char c) {
+            switch (kinds[t]) {
+                case ANY:
+                    return true;
+                case CLASS:
+                    return classes[t].matches(c);
+                default:
+                    return chars[t] == c;
+            }
+        }
+    }
+
+    private record CharClass(boolean negated, String ranges) {
+
+        // "a-z0-9_" or "!a-z" (also "^a-z")
+        static CharClass parse(String body) {
+            boolean negated = body.startsWith("!") || body.startsWith("^");
+            return new CharClass(negated, negated ? body.substring(1) : body);
+        }
+
+        boolean matches(char c) {
+            boolean found = false;
+            for (int i = 0; i < ranges.length() && !found; i++) {
+                char low = ranges.charAt(i);
+                if (i + 2 < ranges.length() && ranges.charAt(i + 1) == '-') {
+                    found = c >= low && c <= ranges.charAt(i + 2);
+                    i += 2;
+                } else {
+                    found = c == low;
+                }
+            }
+            return found != negated;
+        }
+    }
+}
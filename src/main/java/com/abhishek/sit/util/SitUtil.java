@@ -1,53 +1,113 @@
 package com.abhishek.sit.util;
 
-import java.io.File;
+import com.abhishek.sit.model.FileStat;
+
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class SitUtil {
 
+    // Files at least this big are hashed through a memory map instead of a read loop
+    public static final long MMAP_THRESHOLD = 64L * 1024 * 1024;
+    public static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MMAP_CHUNK = 256L * 1024 * 1024;
+
     public static String getSha1(byte[] content) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            byte[] hash = digest.digest(content);
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1)
-                    hexString.append('0');
-                hexString.append(hex);
+        Trace.count(Trace.Counter.HASHES_COMPUTED);
+        Trace.count(Trace.Counter.BYTES_HASHED, content.length);
+        return toHex(newSha1().digest(content));
+    }
+
+    // Streams the file through a fixed-size buffer (or a sliding memory map for
+    // big files), so the heap used doesn't depend on the file size.
+    public static String getSha1(Path path) throws IOException {
+        MessageDigest digest = newSha1();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Trace.count(Trace.Counter.HASHES_COMPUTED);
+            Trace.count(Trace.Counter.BYTES_HASHED, size);
+            if (size >= MMAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MMAP_CHUNK) {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MMAP_CHUNK, size - position)));
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
             }
-            return hexString.toString();
+        }
+        return toHex(digest.digest());
+    }
+
+    public static String getSha1(InputStream in) throws IOException {
+        MessageDigest digest = newSha1();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        long total = 0;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            total += read;
+        }
+        Trace.count(Trace.Counter.HASHES_COMPUTED);
+        Trace.count(Trace.Counter.BYTES_HASHED, total);
+        return toHex(digest.digest());
+    }
+
+    public static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-1 algorithm not found", e);
         }
     }
 
-    public static List<File> scanDirectory(File directory, Set<String> ignoredNames) {
-        List<File> fileList = new ArrayList<>();
-        if (!directory.exists() || !directory.isDirectory()) {
-            return fileList;
+    public static String toHex(byte[] hash) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : hash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1)
+                hexString.append('0');
+            hexString.append(hex);
         }
+        return hexString.toString();
+    }
 
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (ignoredNames.contains(file.getName())) {
-                    continue;
-                }
-                if (file.isDirectory()) {
-                    fileList.addAll(scanDirectory(file, ignoredNames));
-                } else {
-                    fileList.add(file);
-                }
-            }
+    // Follows symlinks, as hashing does: the stat data must describe the bytes
+    // the hash was taken of, or retargeting a link would go unnoticed
+    public static FileStat stat(Path path) throws IOException {
+        try {
+            // The unix view gives us ctime and inode, which catch renames and
+            // in-place rewrites that keep the size and mtime.
+            Map<String, Object> attrs = Files.readAttributes(path, "unix:size,lastModifiedTime,ctime,ino");
+            return new FileStat(
+                    (Long) attrs.get("size"),
+                    toNanos((FileTime) attrs.get("lastModifiedTime")),
+                    toNanos((FileTime) attrs.get("ctime")),
+                    (Long) attrs.get("ino"));
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Windows and friends: fall back to what every platform has
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileStat(attrs.size(), toNanos(attrs.lastModifiedTime()),
+                    toNanos(attrs.creationTime()), 0);
         }
-        return fileList;
+    }
+
+    static long toNanos(FileTime time) {
+        return time == null ? 0 : time.to(TimeUnit.NANOSECONDS);
     }
 }
@@ -0,0 +1,296 @@
+package com.abhishek.sit.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Where a command spends its time: counters bumped from the hot paths (files
+// scanned, bytes hashed, objects read and written, cache hits) and named
+// phases timed around the bigger steps of each command.
+//
+//   sit --perf <command>     prints a breakdown on stderr once it's done
+//   SIT_TRACE2=<path>        appends one JSON event per line to <path> (a
+//                            directory gets a file per process; 1 or 2 means
+//                            stderr), in the spirit of git's GIT_TRACE2_EVENT
+//
+// Off, which is the normal case, every call comes down to reading one static
+// boolean: nothing is counted, timed or allocated.
+public final class Trace {
+
+    public static final String TRACE2_ENV = "SIT_TRACE2";
+
+    public enum Counter {
+        FILES_SCANNED("files scanned"),
+        DIRECTORIES_SCANNED("directories scanned"),
+        HASHES_COMPUTED("hashes computed"),
+        BYTES_HASHED("bytes hashed"),
+        OBJECTS_READ("objects read"),
+        OBJECTS_WRITTEN("objects written"),
+        COMMIT_CACHE_HITS("commit cache hits"),
+        COMMIT_CACHE_MISSES("commit cache misses"),
+        TREE_CACHE_HITS("tree cache hits"),
+        TREE_CACHE_MISSES("tree cache misses");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    // Written only between commands, while no worker threads are running;
+    // the pools a command starts see it through their thread start
+    private static boolean enabled;
+
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private static final ThreadLocal<int[]> nesting = ThreadLocal.withInitial(() -> new int[1]);
+
+    // Per command, guarded by the class
+    private static final Map<String, PhaseTotal> phases = new LinkedHashMap<>();
+    private static StringBuilder events;
+    private static String command;
+    private static boolean printSummary;
+    private static long startNanos;
+    private static String sessionId;
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    private Trace() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void count(Counter counter) {
+        if (enabled) {
+            counters[counter.ordinal()].increment();
+        }
+    }
+
+    public static void count(Counter counter, long amount) {
+        if (enabled) {
+            counters[counter.ordinal()].add(amount);
+        }
+    }
+
+    //   Trace.Phase phase = Trace.phase("scan working tree");
+    //   try {
+    //       ...
+    //   } finally {
+    //       phase.end();
+    //   }
+    //
+    // Not AutoCloseable: the body never refers to the phase, which
+    // try-with-resources would warn about at every call site
+    public static Phase phase(String name) {
+        return enabled ? new Phase(name) : Phase.NONE;
+    }
+
+    public static final class Phase {
+
+        static final Phase NONE = new Phase();
+
+        private final String name;
+        private final int depth;
+        private final long start;
+
+        private Phase() {
+            this.name = null;
+            this.depth = 0;
+            this.start = 0;
+        }
+
+        private Phase(String name) {
+            this.name = name;
+            this.depth = nesting.get()[0]++;
+            this.start = System.nanoTime();
+            enter(this);
+        }
+
+        public void end() {
+            if (name != null) {
+                nesting.get()[0]--;
+                leave(this, System.nanoTime() - start);
+            }
+        }
+    }
+
+    // Starts collecting for one command, if --perf was given or SIT_TRACE2 is set
+    public static synchronized void begin(List<String> argv, boolean perf) {
+        boolean trace2 = trace2Target() != null;
+        enabled = perf || trace2;
+        if (!enabled) {
+            return;
+        }
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        phases.clear();
+        command = String.join(" ", argv);
+        printSummary = perf;
+        startNanos = System.nanoTime();
+        sessionId = Instant.now().toEpochMilli() + "-" + ProcessHandle.current().pid();
+        events = trace2 ? new StringBuilder() : null;
+        StringBuilder args = new StringBuilder("[");
+        for (String arg : argv) {
+            args.append(args.length() > 1 ? "," : "").append(json(arg));
+        }
+        event("start", "\"argv\":" + args.append(']'));
+    }
+
+    // Reports what begin() collected and switches collection off again
+    public static synchronized void end() {
+        if (!enabled) {
+            return;
+        }
+        enabled = false;
+        long elapsed = System.nanoTime() - startNanos;
+        if (events != null) {
+            for (Counter counter : Counter.values()) {
+                long value = counters[counter.ordinal()].sum();
+                if (value != 0) {
+                    event("counter", "\"name\":" + json(counter.label) + ",\"value\":" + value);
+                }
+            }
+            event("exit", String.format(Locale.ROOT, "\"t_abs\":%.6f", elapsed / 1e9));
+            writeEvents();
+            events = null;
+        }
+        if (printSummary) {
+            printSummary(elapsed);
+        }
+    }
+
+    // Registered on the way in, so the summary lists phases in the order they
+    // started, each parent above its children
+    private static synchronized void enter(Phase phase) {
+        phases.computeIfAbsent(phase.name, name -> new PhaseTotal(phase.depth));
+        if (events != null) {
+            event("region_enter", "\"nesting\":" + (phase.depth + 1) + ",\"label\":" + json(phase.name));
+        }
+    }
+
+    private static synchronized void leave(Phase phase, long elapsed) {
+        PhaseTotal total = phases.get(phase.name);
+        total.nanos += elapsed;
+        total.calls++;
+        if (events != null) {
+            event("region_leave", String.format(Locale.ROOT, "\"nesting\":%d,\"label\":%s,\"t_rel\":%.6f",
+                    phase.depth + 1, json(phase.name), elapsed / 1e9));
+        }
+    }
+
+    private static final class PhaseTotal {
+        final int depth;
+        long nanos;
+        int calls;
+
+        PhaseTotal(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    private static void printSummary(long elapsed) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "perf: sit %s took %.1f ms%n", command, elapsed / 1e6));
+        if (!phases.isEmpty()) {
+            out.append(String.format(Locale.ROOT, "  %-36s %10s %7s%n", "phase", "ms", "calls"));
+            for (Map.Entry<String, PhaseTotal> entry : phases.entrySet()) {
+                PhaseTotal total = entry.getValue();
+                String name = "  ".repeat(total.depth) + entry.getKey();
+                out.append(String.format(Locale.ROOT, "  %-36s %10.1f %7d%n", name, total.nanos / 1e6, total.calls));
+            }
+        }
+        boolean header = false;
+        for (Counter counter : Counter.values()) {
+            long value = counters[counter.ordinal()].sum();
+            if (value != 0) {
+                if (!header) {
+                    out.append(String.format(Locale.ROOT, "  %-36s %10s%n", "counter", "value"));
+                    header = true;
+                }
+                out.append(String.format(Locale.ROOT, "  %-36s %10d%n", counter.label, value));
+            }
+        }
+        System.err.print(out);
+        System.err.flush();
+    }
+
+    private static void event(String name, String fields) {
+        if (events == null) {
+            return;
+        }
+        events.append("{\"event\":\"").append(name).append("\",\"sid\":\"").append(sessionId)
+                .append("\",\"thread\":").append(json(Thread.currentThread().getName()))
+                .append(",\"time\":\"").append(Instant.now()).append("\",")
+                .append(fields).append("}\n");
+    }
+
+    // All of a command's events in one append, so concurrent sit processes
+    // tracing into the same file don't interleave their lines
+    private static void writeEvents() {
+        String target = trace2Target();
+        if (target == null) {
+            return;
+        }
+        if (target.equals("1") || target.equals("2") || target.equalsIgnoreCase("true")) {
+            System.err.print(events);
+            System.err.flush();
+            return;
+        }
+        try {
+            Path path = Paths.get(target);
+            if (Files.isDirectory(path)) {
+                path = path.resolve("sit-" + sessionId + ".json");
+            }
+            Files.writeString(path, events, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Warning: could not write " + TRACE2_ENV + " events: " + e.getMessage());
+        }
+    }
+
+    private static String trace2Target() {
+        String value = System.getenv(TRACE2_ENV);
+        if (value == null || value.isEmpty() || value.equals("0") || value.equalsIgnoreCase("false")) {
+            return null;
+        }
+        return value;
+    }
+
+    private static String json(String text) {
+        StringBuilder out = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.abhishek.sit.util;
+
+import com.abhishek.sit.model.FileStat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Walks the working tree on a work-stealing pool, one task per directory, and
+// hands each file that isn't ignored to a visitor as soon as its directory has
+// been listed, so callers can hash while the rest of the tree is still being
+// walked. Every entry costs a single lstat, which yields both its type and the
+// stat data the index wants; visitors never need to stat it again.
+public final class TreeScanner {
+
+    // Called on the pool's workers, concurrently and in no particular order
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(String relPath, Path path, FileStat stat) throws IOException;
+    }
+
+    private static final String UNIX_ATTRIBUTES = "unix:isDirectory,isRegularFile,isSymbolicLink,size,lastModifiedTime,ctime,ino";
+
+    private record Entry(Path path, boolean isDirectory, FileStat stat) {
+    }
+
+    private TreeScanner() {
+    }
+
+    // Visits every file under `directory` that `ignore` doesn't exclude, using
+    // `jobs` workers. Ignored directories are skipped whole, without being listed.
+    public static void scan(Path directory, SitIgnore ignore, int jobs, Visitor visitor) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, jobs));
+        Trace.Phase phase = Trace.phase("scan working tree");
+        try {
+            pool.submit(new DirectoryTask(directory, ignore.relativize(directory), ignore, visitor)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while scanning " + directory, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException u) {
+                throw u.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            phase.end();
+            pool.shutdown();
+        }
+    }
+
+    // Never serialized; RecursiveAction is Serializable only by inheritance
+    private static final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path directory;
+        private final String relDir;
+        private final transient SitIgnore ignore;
+        private final transient Visitor visitor;
+
+        DirectoryTask(Path directory, String relDir, SitIgnore ignore, Visitor visitor) {
+            this.directory = directory;
+            this.relDir = relDir;
+            this.ignore = ignore;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            // Subdirectories are forked as they're found so idle workers can
+            // steal them; this directory's own files are visited once the
+            // listing is closed
+            Trace.count(Trace.Counter.DIRECTORIES_SCANNED);
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            List<Entry> files = new ArrayList<>();
+            try {
+                try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+                    for (Path path : listing) {
+                        String relPath = childPath(path);
+                        Entry entry = readEntry(path);
+                        if (entry == null || ignore.isIgnored(relPath, entry.isDirectory())) {
+                            continue;
+                        }
+                        if (entry.isDirectory()) {
+                            DirectoryTask task = new DirectoryTask(path, relPath, ignore, visitor);
+                            task.fork();
+                            subdirectories.add(task);
+                        } else {
+                            files.add(entry);
+                        }
+                    }
+                } catch (AccessDeniedException | NoSuchFileException e) {
+                    // Unreadable or gone since it was listed: nothing to report
+                }
+                Trace.count(Trace.Counter.FILES_SCANNED, files.size());
+                for (Entry file : files) {
+                    visitor.visit(childPath(file.path()), file.path(), file.stat());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (DirectoryTask task : subdirectories) {
+                task.join();
+            }
+        }
+
+        private String childPath(Path path) {
+            String name = path.getFileName().toString();
+            return relDir.isEmpty() ? name : relDir + "/" + name;
+        }
+    }
+
+    // The stat data a scan reports for `path` when it visits it as a file; null
+    // for a directory, a link to one, a dangling link or nothing at all. Lets
+    // other walks (the daemon's) agree with the scanner on what a file is.
+    public static FileStat fileStat(Path path) throws IOException {
+        Entry entry = readEntry(path);
+        return entry == null || entry.isDirectory() ? null : entry.stat();
+    }
+
+    // Null when the entry vanished between the listing and the lstat, is a
+    // dangling link, or is neither a directory nor a regular file (a fifo
+    // would block the hashing that reads it)
+    private static Entry readEntry(Path path) throws IOException {
+        try {
+            Map<String, Object> attrs = Files.readAttributes(path, UNIX_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+            if ((Boolean) attrs.get("isSymbolicLink")) {
+                return readLink(path);
+            }
+            if (!(Boolean) attrs.get("isDirectory") && !(Boolean) attrs.get("isRegularFile")) {
+                return null;
+            }
+            return new Entry(path, (Boolean) attrs.get("isDirectory"), new FileStat(
+                    (Long) attrs.get("size"),
+                    SitUtil.toNanos((FileTime) attrs.get("lastModifiedTime")),
+                    SitUtil.toNanos((FileTime) attrs.get("ctime")),
+                    (Long) attrs.get("ino")));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // No unix view: SitUtil.stat falls back the same way
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            if (attrs.isSymbolicLink()) {
+                return readLink(path);
+            }
+            if (!attrs.isDirectory() && !attrs.isRegularFile()) {
+                return null;
+            }
+            return new Entry(path, attrs.isDirectory(), new FileStat(attrs.size(),
+                    SitUtil.toNanos(attrs.lastModifiedTime()), SitUtil.toNanos(attrs.creationTime()), 0));
+        }
+    }
+
+    // Links are followed, as they always were, and so is their stat data: the
+    // file behind one is what gets hashed, so retargeting it must show up
+    private static Entry readLink(Path path) throws IOException {
+        try {
+            boolean isDirectory = Files.isDirectory(path);
+            if (!isDirectory && !Files.isRegularFile(path)) {
+                return null;
+            }
+            return new Entry(path, isDirectory, SitUtil.stat(path));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
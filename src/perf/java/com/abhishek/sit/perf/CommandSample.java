@@ -0,0 +1,10 @@
+package com.abhishek.sit.perf;
+
+// One measured command. allocatedBytes and peakRssBytes are -1 where the
+// platform can't tell (no JVM-wide allocation counter, no /proc).
+public record CommandSample(String command, long wallNanos, long allocatedBytes, long peakRssBytes) {
+
+    public double wallMs() {
+        return wallNanos / 1e6;
+    }
+}
@@ -0,0 +1,214 @@
+package com.abhishek.sit.perf;
+
+import com.abhishek.sit.controller.CommandController;
+import com.abhishek.sit.controller.Services;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Builds a repository of the shape named by -Dperf.shape in the working
+// directory and runs init, add, commit, checkout, merge, status and log on it
+// through CommandController, each on freshly built services as a CLI run
+// would. Every command records its wall time, the bytes allocated on all
+// threads and the process's peak RSS while it ran, and fails when one of them
+// regresses past the baseline stored for the shape (see PerformanceBaseline).
+//
+// Run through `gradlew perfTest`, which passes the properties and starts the
+// suite in an empty directory; -Pperf.updateBaselines records the run as the
+// new baseline instead of comparing against the old one. Timings only mean
+// something on the machine that recorded them, so no baseline is checked in:
+// without one for the shape the suite is skipped (reported as such, rather
+// than passing with nothing checked) until it is recorded on that machine.
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class EndToEndPerformanceTest {
+
+    private static final Path CLEAR_REFS = Paths.get("/proc/self/clear_refs");
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final List<CommandSample> samples = new ArrayList<>();
+    private RepositoryShape shape;
+    private RepositoryGenerator generator;
+    private PerformanceBaseline baseline;
+    private boolean updateBaselines;
+
+    @BeforeAll
+    void setUp() throws IOException {
+        try (Stream<Path> entries = Files.list(Paths.get("."))) {
+            assertTrue(entries.findAny().isEmpty(), "The suite builds its repository in the working directory, "
+                    + Paths.get("").toAbsolutePath() + ", which must be empty; run it with `gradlew perfTest`.");
+        }
+        shape = RepositoryShape.parse(System.getProperty("perf.shape", "small"));
+        generator = new RepositoryGenerator(shape);
+        updateBaselines = Boolean.getBoolean("perf.updateBaselines");
+        baseline = PerformanceBaseline.load(baselineFile(), shape);
+        System.out.println("Repository shape: " + shape);
+        assumeTrue(!baseline.isEmpty() || updateBaselines, "No baseline for " + shape + " in " + baselineFile()
+                + "; record one on this machine with `gradlew perfTest -Pperf.shape="
+                + System.getProperty("perf.shape", "small") + " -Pperf.updateBaselines`.");
+    }
+
+    @Test
+    @Order(1)
+    void init() {
+        check(measure("init"));
+    }
+
+    @Test
+    @Order(2)
+    void add() throws IOException {
+        generator.history();
+        generator.populate();
+        check(measure("add", "."));
+    }
+
+    @Test
+    @Order(3)
+    void commit() {
+        check(measure("commit", "-m", "Import the rest of the tree"));
+    }
+
+    @Test
+    @Order(4)
+    void checkout() throws IOException {
+        generator.diverge();
+        check(measure("checkout", RepositoryGenerator.TOPIC_BRANCH));
+    }
+
+    @Test
+    @Order(5)
+    void merge() {
+        generator.run("checkout", RepositoryGenerator.MAIN_BRANCH);
+        check(measure("merge", RepositoryGenerator.TOPIC_BRANCH));
+    }
+
+    @Test
+    @Order(6)
+    void status() throws IOException {
+        generator.touch();
+        check(measure("status"));
+    }
+
+    @Test
+    @Order(7)
+    void log() {
+        check(measure("log"));
+    }
+
+    @AfterAll
+    void report() throws IOException {
+        System.out.printf("%-10s %10s %14s %14s%n", "command", "wall ms", "allocated MB", "peak RSS MB");
+        for (CommandSample sample : samples) {
+            System.out.printf("%-10s %10.1f %14.1f %14.1f%n", sample.command(), sample.wallMs(),
+                    sample.allocatedBytes() / 1048576.0, sample.peakRssBytes() / 1048576.0);
+        }
+        writeJson(Paths.get(System.getProperty("perf.report", "build/reports/perf"))
+                .resolve("e2e-" + shape.name() + ".json"));
+        if (updateBaselines) {
+            PerformanceBaseline.save(baselineFile(), shape, samples);
+            System.out.println("Baseline written to " + baselineFile());
+        }
+    }
+
+    // Runs one sit command on fresh services with its output discarded
+    private CommandSample measure(String... args) {
+        String command = args[0];
+        // Start from a collected heap, so each command pays for its own garbage
+        System.gc();
+        boolean rssReset = resetPeakRss();
+        long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(errors));
+        long start = System.nanoTime();
+        try {
+            new CommandController(new Services()).handleCommand(args);
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        long allocatedAfter = threads.getTotalThreadAllocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+        CommandSample sample = new CommandSample(command, wallNanos, allocated, rssReset ? peakRss() : -1);
+        samples.add(sample);
+        assertEquals("", errors.toString(), "sit " + String.join(" ", args) + " reported errors");
+        return sample;
+    }
+
+    private void check(CommandSample sample) {
+        if (updateBaselines) {
+            return;
+        }
+        List<String> regressions = baseline.regressions(sample);
+        assertTrue(regressions.isEmpty(), "sit " + sample.command() + " regressed: " + String.join("; ", regressions));
+    }
+
+    // Writing 5 to clear_refs resets the kernel's peak-RSS mark (VmHWM) to
+    // the current RSS, so the next reading covers one command only
+    private static boolean resetPeakRss() {
+        try {
+            Files.writeString(CLEAR_REFS, "5");
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static long peakRss() {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException e) {
+            // Not Linux
+        }
+        return -1;
+    }
+
+    private Path baselineFile() {
+        return Paths.get(System.getProperty("perf.baselines", "src/perf/resources/baselines"))
+                .resolve(shape.name() + ".properties");
+    }
+
+    private void writeJson(Path report) throws IOException {
+        Files.createDirectories(report.getParent());
+        try (Writer out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            out.write("{\n  \"shape\": \"" + shape + "\",\n  \"commands\": [\n");
+            for (int i = 0; i < samples.size(); i++) {
+                CommandSample sample = samples.get(i);
+                out.write(String.format(Locale.ROOT,
+                        "    {\"command\": \"%s\", \"wallMs\": %.2f, \"allocatedBytes\": %d, \"peakRssBytes\": %d}%s%n",
+                        sample.command(), sample.wallMs(), sample.allocatedBytes(), sample.peakRssBytes(),
+                        i + 1 < samples.size() ? "," : ""));
+            }
+            out.write("  ]\n}\n");
+        }
+        System.out.println("Report written to " + report);
+    }
+}
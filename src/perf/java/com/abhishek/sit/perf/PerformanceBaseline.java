@@ -0,0 +1,103 @@
+package com.abhishek.sit.perf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+// Per-command results the end-to-end suite accepted for one repository shape,
+// kept as src/perf/resources/baselines/<shape>.properties:
+//
+//   shape=<RepositoryShape.toString()>
+//   <command>.wallMs=...
+//   <command>.allocatedBytes=...
+//   <command>.peakRssBytes=...
+//
+// A run regresses when it exceeds a baseline by more than its factor plus a
+// fixed slack: timings are noisy and the JVM grows its heap in steps, so small
+// absolute differences never count.
+public class PerformanceBaseline {
+
+    static final double WALL_FACTOR = 2.0;
+    static final double WALL_SLACK_MS = 100;
+    static final double MEMORY_FACTOR = 1.25;
+    static final long ALLOCATION_SLACK = 8L * 1024 * 1024;
+    static final long RSS_SLACK = 64L * 1024 * 1024;
+
+    private final Properties values;
+
+    private PerformanceBaseline(Properties values) {
+        this.values = values;
+    }
+
+    // Empty (nothing to compare against) when there is no baseline for this
+    // exact shape yet, in which case the suite is skipped
+    public static PerformanceBaseline load(Path file, RepositoryShape shape) throws IOException {
+        Properties values = new Properties();
+        if (Files.exists(file)) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                values.load(in);
+            }
+            if (!shape.toString().equals(values.getProperty("shape"))) {
+                System.out.println("Baseline " + file + " was recorded for " + values.getProperty("shape") + ".");
+                values.clear();
+            }
+        }
+        return new PerformanceBaseline(values);
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    // What got worse, one line per measure; empty when nothing did
+    public List<String> regressions(CommandSample sample) {
+        List<String> regressions = new ArrayList<>();
+        String command = sample.command();
+        double wallMs = value(command + ".wallMs");
+        if (wallMs >= 0 && sample.wallMs() > wallMs * WALL_FACTOR + WALL_SLACK_MS) {
+            regressions.add(String.format("wall time %.1f ms, baseline %.1f ms", sample.wallMs(), wallMs));
+        }
+        double allocated = value(command + ".allocatedBytes");
+        if (allocated >= 0 && sample.allocatedBytes() >= 0
+                && sample.allocatedBytes() > allocated * MEMORY_FACTOR + ALLOCATION_SLACK) {
+            regressions.add(String.format("allocated %.1f MB, baseline %.1f MB",
+                    sample.allocatedBytes() / 1048576.0, allocated / 1048576.0));
+        }
+        double peakRss = value(command + ".peakRssBytes");
+        if (peakRss >= 0 && sample.peakRssBytes() >= 0
+                && sample.peakRssBytes() > peakRss * MEMORY_FACTOR + RSS_SLACK) {
+            regressions.add(String.format("peak RSS %.1f MB, baseline %.1f MB",
+                    sample.peakRssBytes() / 1048576.0, peakRss / 1048576.0));
+        }
+        return regressions;
+    }
+
+    // Written by hand rather than with Properties.store, which neither keeps
+    // an order nor leaves out its timestamp, so that re-recording a baseline
+    // gives a readable diff
+    public static void save(Path file, RepositoryShape shape, List<CommandSample> samples) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# Recorded by `gradlew perfTest -Pperf.shape=" + shape.name() + " -Pperf.updateBaselines`\n");
+            out.write("shape=" + shape + "\n");
+            for (CommandSample sample : samples) {
+                out.write(String.format(Locale.ROOT, "%s.wallMs=%.1f%n", sample.command(), sample.wallMs()));
+                out.write(sample.command() + ".allocatedBytes=" + sample.allocatedBytes() + "\n");
+                out.write(sample.command() + ".peakRssBytes=" + sample.peakRssBytes() + "\n");
+            }
+        }
+    }
+
+    // -1 when the baseline doesn't have it (or recorded it as unsupported)
+    private double value(String key) {
+        String value = values.getProperty(key);
+        return value == null ? -1 : Double.parseDouble(value);
+    }
+}
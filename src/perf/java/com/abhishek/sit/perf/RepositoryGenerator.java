@@ -0,0 +1,217 @@
+package com.abhishek.sit.perf;
+
+import com.abhishek.sit.controller.CommandController;
+import com.abhishek.sit.controller.Services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Random;
+
+// Builds a repository of a given RepositoryShape in the working directory,
+// through the same CommandController the CLI dispatches to. In order:
+//
+//   history()   `commits` commits over a small set of churning files, with
+//               `branches` branches forked off along the way, one commit each
+//   populate()  the rest of the files and the binaries, left for the caller
+//               to add and commit (the end-to-end suite times exactly that)
+//   diverge()   TOPIC_BRANCH with a few commits of its own and one more on
+//               main, so merging it takes a real three-way merge
+//   touch()     uncommitted edits and new files, for status
+//
+// History is built before the bulk of the tree arrives because every commit
+// rewrites the index and hashes the whole tree: fifty thousand commits over a
+// million files would take days, over a few hundred they take minutes.
+//
+// On its own it runs all of it in an empty directory, leaving a repository to
+// experiment with:
+//
+//   RepositoryGenerator [shape]
+public class RepositoryGenerator {
+
+    public static final String MAIN_BRANCH = "main";
+    public static final String TOPIC_BRANCH = "perf-topic";
+
+    static final int CHURN_FILES = 500;
+    static final int CHANGES_PER_COMMIT = 3;
+    static final int FILES_PER_DIRECTORY = 32;
+    static final int TOUCH_EVERY = 100;
+
+    // Generated files are dated this far back, so none of them is racy against
+    // the index and stat data alone decides what status has to hash
+    private static final long AGE_SECONDS = 3600;
+
+    private final RepositoryShape shape;
+    private final CommandController controller = new CommandController(new Services());
+    private final Random random;
+    private final int churnFiles;
+
+    public RepositoryGenerator(RepositoryShape shape) {
+        this.shape = shape;
+        this.random = new Random(shape.toString().hashCode());
+        this.churnFiles = Math.min(shape.files(), CHURN_FILES);
+    }
+
+    public static void main(String[] args) throws IOException {
+        RepositoryShape shape = RepositoryShape.parse(args.length > 0 ? args[0] : "small");
+        if (Files.exists(Paths.get(".sit"))) {
+            System.err.println("Already a sit repository; run the generator in an empty directory.");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        RepositoryGenerator generator = new RepositoryGenerator(shape);
+        generator.run("init");
+        generator.history();
+        generator.populate();
+        generator.run("add", ".");
+        generator.run("commit", "-m", "Import the rest of the tree");
+        generator.diverge();
+        System.out.printf("Generated %s in %.1fs%n", shape, (System.nanoTime() - start) / 1e9);
+    }
+
+    public void history() throws IOException {
+        for (int i = 0; i < churnFiles; i++) {
+            writeText(file(i));
+        }
+        run("add", ".");
+        run("commit", "-m", "Initial commit");
+
+        int branchEvery = shape.branches() == 0 ? 0 : Math.max(1, shape.commits() / shape.branches());
+        int branches = 0;
+        for (int c = 1; c < shape.commits(); c++) {
+            for (int k = 0; k < CHANGES_PER_COMMIT; k++) {
+                Path changed = file(random.nextInt(churnFiles));
+                writeText(changed);
+                run("add", changed.toString());
+            }
+            run("commit", "-m", "Change " + c);
+            if (branchEvery > 0 && c % branchEvery == 0 && branches < shape.branches()) {
+                forkBranch("topic-" + branches++);
+            }
+        }
+        while (branches < shape.branches()) {
+            forkBranch("topic-" + branches++);
+        }
+    }
+
+    public void populate() throws IOException {
+        for (int i = churnFiles; i < shape.files(); i++) {
+            writeText(file(i));
+        }
+        byte[] chunk = new byte[1024 * 1024];
+        for (int b = 0; b < shape.binaries(); b++) {
+            Path binary = Paths.get("assets", "blob-" + b + ".bin");
+            Files.createDirectories(binary.getParent());
+            try (OutputStream out = Files.newOutputStream(binary)) {
+                for (long left = shape.binarySize(); left > 0; left -= chunk.length) {
+                    random.nextBytes(chunk);
+                    out.write(chunk, 0, (int) Math.min(left, chunk.length));
+                }
+            }
+            age(binary);
+        }
+    }
+
+    public void diverge() throws IOException {
+        run("branch", TOPIC_BRANCH);
+        run("checkout", TOPIC_BRANCH);
+        for (int k = 0; k < CHANGES_PER_COMMIT; k++) {
+            Path changed = file(k % churnFiles);
+            writeText(changed);
+            run("add", changed.toString());
+            run("commit", "-m", "Topic change " + k);
+        }
+        run("checkout", MAIN_BRANCH);
+        Path mainline = Paths.get("mainline.txt");
+        writeText(mainline);
+        run("add", mainline.toString());
+        run("commit", "-m", "Main-line change");
+    }
+
+    public void touch() throws IOException {
+        for (int i = 0; i < shape.files(); i += TOUCH_EVERY) {
+            Files.writeString(file(i), "edited\n", StandardOpenOption.APPEND);
+        }
+        for (int k = 0; k < 10; k++) {
+            writeText(Paths.get("untracked", "new-" + k + ".txt"));
+        }
+    }
+
+    // Runs a sit command with its output discarded. Anything it reports on
+    // stderr means the repository isn't what the next step expects.
+    public void run(String... args) {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(errors));
+        try {
+            controller.handleCommand(args);
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        if (errors.size() > 0) {
+            throw new IllegalStateException("sit " + String.join(" ", args) + " failed: " + errors);
+        }
+    }
+
+    private void forkBranch(String branch) throws IOException {
+        run("branch", branch);
+        run("checkout", branch);
+        Path own = Paths.get("branches", branch + ".txt");
+        writeText(own);
+        run("add", own.toString());
+        run("commit", "-m", "Work on " + branch);
+        run("checkout", MAIN_BRANCH);
+    }
+
+    // File i lives in directory i / FILES_PER_DIRECTORY, written out in base
+    // `fanout` as `depth` nested names; the top level takes whatever is left
+    Path file(int i) {
+        int directory = i / FILES_PER_DIRECTORY;
+        String[] names = new String[shape.depth()];
+        for (int level = shape.depth() - 1; level >= 0; level--) {
+            int digit = level == 0 ? directory : directory % shape.fanout();
+            names[level] = "d" + digit;
+            directory /= shape.fanout();
+        }
+        return Paths.get("src", names).resolve("file-" + i + ".txt");
+    }
+
+    private void writeText(Path file) throws IOException {
+        Path parent = file.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, text(shape.fileSize()));
+        age(file);
+    }
+
+    private static void age(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minusSeconds(AGE_SECONDS)));
+    }
+
+    // Lines of lowercase words, about `size` bytes in all
+    private String text(int size) {
+        StringBuilder text = new StringBuilder(size + 80);
+        while (text.length() < size) {
+            int words = 4 + random.nextInt(8);
+            for (int w = 0; w < words; w++) {
+                int letters = 2 + random.nextInt(8);
+                for (int l = 0; l < letters; l++) {
+                    text.append((char) ('a' + random.nextInt(26)));
+                }
+                text.append(w + 1 < words ? ' ' : '\n');
+            }
+        }
+        return text.toString();
+    }
+}
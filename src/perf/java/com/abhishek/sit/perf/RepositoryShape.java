@@ -0,0 +1,77 @@
+package com.abhishek.sit.perf;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// What RepositoryGenerator builds: `files` text files of about `fileSize`
+// bytes spread `depth` directories deep with `fanout` subdirectories per
+// level, `binaries` random files of `binarySize` bytes, `commits` commits of
+// history and `branches` branches off it.
+//
+// Given as a preset name optionally followed by overrides, e.g. "small",
+// "deep" or "medium,commits=20000,branches=200".
+public record RepositoryShape(String name, int files, int fileSize, int depth, int fanout, int binaries,
+        int binarySize, int commits, int branches) {
+
+    private static final int MB = 1024 * 1024;
+    private static final List<String> PROPERTIES = List.of("files", "fileSize", "depth", "fanout", "binaries",
+            "binarySize", "commits", "branches");
+
+    static final Map<String, RepositoryShape> PRESETS = new LinkedHashMap<>();
+
+    static {
+        preset(new RepositoryShape("small", 2_000, 1024, 3, 8, 4, MB, 200, 8));
+        preset(new RepositoryShape("medium", 50_000, 2048, 5, 8, 16, 8 * MB, 5_000, 50));
+        preset(new RepositoryShape("large", 1_000_000, 1024, 6, 16, 64, 64 * MB, 50_000, 500));
+        preset(new RepositoryShape("deep", 20_000, 512, 48, 2, 0, 0, 500, 10));
+        preset(new RepositoryShape("binaries", 500, 1024, 2, 8, 32, 128 * MB, 50, 4));
+    }
+
+    private static void preset(RepositoryShape shape) {
+        PRESETS.put(shape.name(), shape);
+    }
+
+    public RepositoryShape {
+        if (files < 1 || fileSize < 1 || depth < 1 || fanout < 2 || binaries < 0 || binarySize < 0
+                || commits < 1 || branches < 0) {
+            throw new IllegalArgumentException("Invalid repository shape: " + name);
+        }
+    }
+
+    public static RepositoryShape parse(String spec) {
+        String[] parts = spec.split(",");
+        RepositoryShape shape = PRESETS.get(parts[0].trim());
+        if (shape == null) {
+            throw new IllegalArgumentException("Unknown repository shape '" + parts[0] + "' (known: "
+                    + String.join(", ", PRESETS.keySet()) + ")");
+        }
+        for (int i = 1; i < parts.length; i++) {
+            String[] override = parts[i].split("=", 2);
+            if (override.length != 2) {
+                throw new IllegalArgumentException("Expected <key>=<value>, got '" + parts[i] + "'");
+            }
+            shape = shape.with(override[0].trim(), Integer.parseInt(override[1].trim()));
+        }
+        return shape;
+    }
+
+    private RepositoryShape with(String key, int value) {
+        int[] values = {files, fileSize, depth, fanout, binaries, binarySize, commits, branches};
+        int index = PROPERTIES.indexOf(key);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown shape property '" + key + "' (known: "
+                    + String.join(", ", PROPERTIES) + ")");
+        }
+        values[index] = value;
+        return new RepositoryShape(name + "," + key + "=" + value, values[0], values[1], values[2], values[3],
+                values[4], values[5], values[6], values[7]);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + files + " files of " + fileSize + " bytes, depth " + depth + ", fanout " + fanout + ", "
+                + binaries + " binaries of " + binarySize + " bytes, " + commits + " commits, " + branches
+                + " branches)";
+    }
+}
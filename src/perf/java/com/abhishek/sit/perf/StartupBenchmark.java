@@ -0,0 +1,201 @@
+package com.abhishek.sit.perf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Time from process start to the first byte of output, per command, for the
+// fast CLI (cli jar + AppCDS archive), in a small scratch repository. That is
+// what a script calling sit thousands of times actually waits for.
+//
+//   StartupBenchmark <cli jar> <cds archive> <json report> [runs] [--check]
+//
+// Prints median / p90 / max per command and writes them as JSON. With --check
+// the exit code is 1 when any median misses TARGET_MS.
+public class StartupBenchmark {
+
+    static final long TARGET_MS = 100;
+    static final int DEFAULT_RUNS = 15;
+    static final int WARMUP_RUNS = 2;
+
+    static final String[][] COMMANDS = {
+            {"version"},
+            {"help"},
+            {"status"},
+            {"diff"},
+            {"diff", "--stat"},
+            {"log"},
+            {"log", "--oneline"},
+            {"branch"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: StartupBenchmark <cli jar> <cds archive> <json report> [runs] [--check]");
+            System.exit(2);
+        }
+        Path jar = Paths.get(args[0]).toAbsolutePath();
+        Path archive = Paths.get(args[1]).toAbsolutePath();
+        Path report = Paths.get(args[2]).toAbsolutePath();
+        int runs = DEFAULT_RUNS;
+        boolean check = false;
+        for (int i = 3; i < args.length; i++) {
+            if ("--check".equals(args[i])) {
+                check = true;
+            } else {
+                runs = Integer.parseInt(args[i]);
+            }
+        }
+
+        String java = ProcessHandle.current().info().command().orElse("java");
+        List<String> jvm = new ArrayList<>(List.of(java, "-XX:+UseSerialGC"));
+        if (Files.exists(archive)) {
+            jvm.add("-XX:SharedArchiveFile=" + archive);
+        } else {
+            System.err.println("No CDS archive at " + archive + ", timing without one.");
+        }
+        jvm.add("-jar");
+        jvm.add(jar.toString());
+
+        Path repo = Files.createTempDirectory("sit-startup-");
+        try {
+            setUpRepository(jvm, repo);
+
+            List<Result> results = new ArrayList<>();
+            for (String[] command : COMMANDS) {
+                for (int i = 0; i < WARMUP_RUNS; i++) {
+                    timeToFirstOutput(jvm, repo, command);
+                }
+                long[] samples = new long[runs];
+                for (int i = 0; i < runs; i++) {
+                    samples[i] = timeToFirstOutput(jvm, repo, command);
+                }
+                Arrays.sort(samples);
+                results.add(new Result(String.join(" ", command), samples));
+            }
+
+            boolean missed = print(results);
+            writeJson(report, results, runs);
+            System.out.println("Report written to " + report);
+            if (check && missed) {
+                System.exit(1);
+            }
+        } finally {
+            deleteRecursively(repo);
+        }
+    }
+
+    // A few tracked files, one commit and one pending change, so status and
+    // diff have something to look at
+    private static void setUpRepository(List<String> jvm, Path repo) throws IOException, InterruptedException {
+        run(jvm, repo, "init");
+        Files.createDirectories(repo.resolve("src/main"));
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(repo.resolve("src/main/File" + i + ".txt"), ("line\n").repeat(200 + i));
+        }
+        Files.writeString(repo.resolve("README"), "startup benchmark\n");
+        run(jvm, repo, "add", ".");
+        run(jvm, repo, "commit", "-m", "initial");
+        Files.writeString(repo.resolve("README"), "startup benchmark\nchanged\n");
+    }
+
+    private static void run(List<String> jvm, Path repo, String... command) throws IOException, InterruptedException {
+        Process process = start(jvm, repo, command);
+        process.getInputStream().transferTo(OutputSink.INSTANCE);
+        process.waitFor();
+    }
+
+    private static long timeToFirstOutput(List<String> jvm, Path repo, String[] command)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = start(jvm, repo, command);
+        long elapsed;
+        try (InputStream out = process.getInputStream()) {
+            int first = out.read();
+            elapsed = System.nanoTime() - start;
+            if (first < 0) {
+                throw new IOException("sit " + String.join(" ", command) + " printed nothing");
+            }
+            out.transferTo(OutputSink.INSTANCE);
+        }
+        process.waitFor();
+        return elapsed;
+    }
+
+    private static Process start(List<String> jvm, Path repo, String... command) throws IOException {
+        List<String> commandLine = new ArrayList<>(jvm);
+        commandLine.addAll(List.of(command));
+        return new ProcessBuilder(commandLine)
+                .directory(repo.toFile())
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    private static boolean print(List<Result> results) {
+        boolean missed = false;
+        System.out.printf("%-16s %10s %10s %10s%n", "command", "median ms", "p90 ms", "max ms");
+        for (Result result : results) {
+            boolean over = result.medianMs() > TARGET_MS;
+            missed |= over;
+            System.out.printf("%-16s %10.1f %10.1f %10.1f%s%n", result.command(), result.medianMs(),
+                    result.p90Ms(), result.maxMs(), over ? "   over " + TARGET_MS + " ms target" : "");
+        }
+        return missed;
+    }
+
+    private static void writeJson(Path report, List<Result> results, int runs) throws IOException {
+        Files.createDirectories(report.getParent());
+        try (Writer out = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            out.write("{\n  \"targetMs\": " + TARGET_MS + ",\n  \"runs\": " + runs + ",\n  \"commands\": [\n");
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                out.write(String.format("    {\"command\": \"%s\", \"medianMs\": %.2f, \"p90Ms\": %.2f, \"maxMs\": %.2f}%s%n",
+                        result.command(), result.medianMs(), result.p90Ms(), result.maxMs(),
+                        i + 1 < results.size() ? "," : ""));
+            }
+            out.write("  ]\n}\n");
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (var paths = Files.walk(root)) {
+            for (Path path : paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // Sorted samples in nanoseconds
+    record Result(String command, long[] samples) {
+        double medianMs() {
+            return samples[samples.length / 2] / 1e6;
+        }
+
+        double p90Ms() {
+            return samples[Math.min(samples.length - 1, (int) Math.ceil(samples.length * 0.9) - 1)] / 1e6;
+        }
+
+        double maxMs() {
+            return samples[samples.length - 1] / 1e6;
+        }
+    }
+
+    private static final class OutputSink extends java.io.OutputStream {
+        static final OutputSink INSTANCE = new OutputSink();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.abhishek.sit.diff;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Merge3Test {
+
+    private static final String BASE = "one\ntwo\nthree\nfour\nfive\n";
+
+    @Test
+    void unchangedSidesMergeToTheBase() {
+        assertClean(BASE, merge(BASE, BASE, BASE));
+    }
+
+    @Test
+    void oneSidedChangeIsTaken() {
+        String ours = "one\nTWO\nthree\nfour\nfive\n";
+        assertClean(ours, merge(BASE, ours, BASE));
+        assertClean(ours, merge(BASE, BASE, ours));
+    }
+
+    @Test
+    void changesToDifferentRegionsCombine() {
+        String ours = "zero\none\ntwo\nthree\nfour\nfive\n";
+        String theirs = "one\ntwo\nthree\nfive\nsix\n";
+        assertClean("zero\none\ntwo\nthree\nfive\nsix\n", merge(BASE, ours, theirs));
+    }
+
+    @Test
+    void identicalChangesOnBothSidesApplyOnce() {
+        String both = "one\ntwo\nthree\nthree and a half\nfour\nfive\n";
+        assertClean(both, merge(BASE, both, both));
+    }
+
+    @Test
+    void identicalInsertsIntoARunOfEqualLinesApplyOnce() {
+        // Each diff may place the extra "x" anywhere in the run
+        String base = "a\nx\nx\nb\n";
+        String ours = "a\nx\nx\nx\nb\n";
+        String theirs = "a\nx\nx\nx\nb\nc\n";
+        assertClean("a\nx\nx\nx\nb\nc\n", merge(base, ours, theirs));
+    }
+
+    @Test
+    void differentChangesToTheSameLinesConflict() {
+        String ours = "one\ntwo\nTHREE\nfour\nfive\n";
+        String theirs = "one\ntwo\n3\nfour\nfive\n";
+        Merge3.Result result = merge(BASE, ours, theirs);
+        assertEquals(1, result.conflicts());
+        assertFalse(result.isClean());
+        assertEquals("one\ntwo\n<<<<<<< ours\nTHREE\n=======\n3\n>>>>>>> theirs\nfour\nfive\n", result.text());
+    }
+
+    @Test
+    void touchingChangesConflictAsOneRegion() {
+        String ours = "one\nTWO\nthree\nfour\nfive\n";
+        String theirs = "one\ntwo\nTHREE\nfour\nfive\n";
+        Merge3.Result result = merge(BASE, ours, theirs);
+        assertEquals(1, result.conflicts());
+        assertEquals("one\n<<<<<<< ours\nTWO\nthree\n=======\ntwo\nTHREE\n>>>>>>> theirs\nfour\nfive\n",
+                result.text());
+    }
+
+    @Test
+    void separateConflictsAreCountedApart() {
+        String ours = "ONE\ntwo\nthree\nfour\nFIVE\n";
+        String theirs = "1\ntwo\nthree\nfour\n5\n";
+        assertEquals(2, merge(BASE, ours, theirs).conflicts());
+    }
+
+    @Test
+    void deleteAgainstModifyConflicts() {
+        String ours = "one\ntwo\nfour\nfive\n";
+        String theirs = "one\ntwo\nTHREE\nfour\nfive\n";
+        Merge3.Result result = merge(BASE, ours, theirs);
+        assertEquals(1, result.conflicts());
+        assertEquals("one\ntwo\n<<<<<<< ours\n=======\nTHREE\n>>>>>>> theirs\nfour\nfive\n", result.text());
+    }
+
+    @Test
+    void missingFinalNewlineIsKeptOnACleanMerge() {
+        // Appending to "b" also changes it to "b\n"
+        String base = "a\nm\nb";
+        String theirs = "A\nm\nb";
+        String ours = "a\nm\nb\nc";
+        assertClean("A\nm\nb\nc", merge(base, ours, theirs));
+        assertClean("A\nm\nb", merge(base, base, theirs));
+    }
+
+    @Test
+    void conflictSidesWithoutFinalNewlineAreTerminatedBeforeMarkers() {
+        Merge3.Result result = merge("a", "b", "c");
+        assertEquals("<<<<<<< ours\nb\n=======\nc\n>>>>>>> theirs\n", result.text());
+    }
+
+    private static Merge3.Result merge(String base, String ours, String theirs) {
+        return Merge3.merge(base, ours, theirs, "ours", "theirs");
+    }
+
+    private static void assertClean(String expected, Merge3.Result result) {
+        assertTrue(result.isClean(), result.text());
+        assertEquals(expected, result.text());
+    }
+}
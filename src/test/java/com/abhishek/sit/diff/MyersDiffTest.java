@@ -0,0 +1,145 @@
+package com.abhishek.sit.diff;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MyersDiffTest {
+
+    @Test
+    void identicalInputsHaveNoEdits() {
+        List<String> lines = List.of("a", "b", "c");
+        assertTrue(MyersDiff.diff(lines, lines).isEmpty());
+        assertTrue(MyersDiff.diff(List.of(), List.of()).isEmpty());
+    }
+
+    @Test
+    void emptySidesAreOneInsertOrDelete() {
+        List<String> lines = List.of("a", "b");
+        assertEquals(List.of(new Edit(0, 0, 0, 2)), MyersDiff.diff(List.of(), lines));
+        assertEquals(List.of(new Edit(0, 2, 0, 0)), MyersDiff.diff(lines, List.of()));
+    }
+
+    @Test
+    void adjacentDeleteAndInsertAreOneReplace() {
+        List<Edit> edits = MyersDiff.diff(List.of("a", "b", "c"), List.of("a", "x", "y", "c"));
+        assertEquals(List.of(new Edit(1, 2, 1, 3)), edits);
+    }
+
+    @Test
+    void textbookExampleIsMinimal() {
+        // Myers' paper: ABCABBA -> CBABAC takes five edits
+        List<String> a = chars("ABCABBA");
+        List<String> b = chars("CBABAC");
+        List<Edit> edits = MyersDiff.diff(a, b);
+        assertEquals(b, apply(a, b, edits));
+        assertEquals(5, cost(edits));
+    }
+
+    @Test
+    void randomEditScriptsReproduceTheRevisedSideMinimally() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            // A small alphabet gives many repeated lines and ambiguous matches
+            List<String> a = randomLines(random, random.nextInt(40), 1 + random.nextInt(6));
+            List<String> b = mutate(random, a, 1 + random.nextInt(6));
+            List<Edit> edits = MyersDiff.diff(a, b);
+            assertEquals(b, apply(a, b, edits), a + " -> " + b);
+            assertEquals(a.size() + b.size() - 2 * lcs(a, b), cost(edits), a + " -> " + b);
+        }
+    }
+
+    @Test
+    void largeInputsPastTheCostLimitStillReproduceTheRevisedSide() {
+        // Too different for a minimal script within the cost limit
+        Random random = new Random(7);
+        List<String> a = randomLines(random, 5000, 20);
+        List<String> b = randomLines(random, 5000, 20);
+        assertEquals(b, apply(a, b, MyersDiff.diff(a, b)));
+    }
+
+    // Edits must be ordered, disjoint and not touching, and whatever lies
+    // between them must be equal on both sides
+    private static List<String> apply(List<String> a, List<String> b, List<Edit> edits) {
+        List<String> result = new ArrayList<>();
+        int lastA = 0;
+        int lastB = 0;
+        boolean first = true;
+        for (Edit edit : edits) {
+            assertTrue(edit.beginA() >= lastA && edit.beginB() >= lastB, "edits out of order: " + edits);
+            assertTrue(edit.linesRemoved() > 0 || edit.linesAdded() > 0, "empty edit: " + edit);
+            assertTrue(first || edit.beginA() > lastA || edit.beginB() > lastB, "touching edits: " + edits);
+            first = false;
+            assertEquals(edit.beginA() - lastA, edit.beginB() - lastB, "unequal gap before " + edit);
+            result.addAll(a.subList(lastA, edit.beginA()));
+            result.addAll(b.subList(edit.beginB(), edit.endB()));
+            lastA = edit.endA();
+            lastB = edit.endB();
+        }
+        assertEquals(a.size() - lastA, b.size() - lastB, "unequal tail");
+        result.addAll(a.subList(lastA, a.size()));
+        return result;
+    }
+
+    private static int cost(List<Edit> edits) {
+        int cost = 0;
+        for (Edit edit : edits) {
+            cost += edit.linesRemoved() + edit.linesAdded();
+        }
+        return cost;
+    }
+
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--) {
+            for (int j = b.size() - 1; j >= 0; j--) {
+                table[i][j] = a.get(i).equals(b.get(j))
+                        ? table[i + 1][j + 1] + 1
+                        : Math.max(table[i + 1][j], table[i][j + 1]);
+            }
+        }
+        return table[0][0];
+    }
+
+    private static List<String> randomLines(Random random, int count, int alphabet) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + random.nextInt(alphabet));
+        }
+        return lines;
+    }
+
+    private static List<String> mutate(Random random, List<String> lines, int alphabet) {
+        List<String> result = new ArrayList<>(lines);
+        int changes = random.nextInt(8);
+        for (int c = 0; c < changes; c++) {
+            int at = result.isEmpty() ? 0 : random.nextInt(result.size());
+            switch (random.nextInt(3)) {
+                case 0 -> result.add(at, "new " + random.nextInt(alphabet));
+                case 1 -> {
+                    if (!result.isEmpty()) {
+                        result.remove(at);
+                    }
+                }
+                default -> {
+                    if (!result.isEmpty()) {
+                        result.set(at, "line " + random.nextInt(alphabet));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<String> chars(String text) {
+        List<String> lines = new ArrayList<>();
+        for (char c : text.toCharArray()) {
+            lines.add(String.valueOf(c));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,97 @@
+package com.abhishek.sit.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void murmur3MatchesReferenceVectors() {
+        // From the reference implementation (SMHasher's MurmurHash3_x86_32)
+        assertMurmur3(0x00000000, 0, new byte[0]);
+        assertMurmur3(0x514e28b7, 1, new byte[0]);
+        assertMurmur3(0x81f16f39, 0xffffffff, new byte[0]);
+        assertMurmur3(0x76293b50, 0, bytes(0xff, 0xff, 0xff, 0xff));
+        assertMurmur3(0xf55b516b, 0, bytes(0x21, 0x43, 0x65, 0x87));
+        assertMurmur3(0x2362f9de, 0x5082edee, bytes(0x21, 0x43, 0x65, 0x87));
+        assertMurmur3(0x7e4a8634, 0, bytes(0x21, 0x43, 0x65));
+        assertMurmur3(0xa0f7b07a, 0, bytes(0x21, 0x43));
+        assertMurmur3(0x72661cf4, 0, bytes(0x21));
+        assertMurmur3(0x2362f9de, 0, bytes(0, 0, 0, 0));
+        // Tails with the high bit set must not sign-extend
+        assertMurmur3(0xbf12a026, 0, bytes(0xff, 0xff, 0xff));
+        assertMurmur3(0x0feb9e1d, 0, bytes(0x80));
+        assertMurmur3(0xdd870e8a, 0, "caf\u00e9/\u00fc.txt".getBytes(StandardCharsets.UTF_8));
+        // Also used by git's own changed-path filter tests
+        assertMurmur3(0x627b0c2c, 0, "Hello world!".getBytes(StandardCharsets.UTF_8));
+        assertMurmur3(0x2e4ff723, 0, "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8));
+        assertMurmur3(0x2fa826cd, 0x9747b28c,
+                "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void containsEveryAddedPath() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < BloomFilter.MAX_PATHS; i++) {
+            paths.add("src/dir" + (i % 17) + "/file" + i + ".java");
+        }
+        paths.add("caf\u00e9/\u00fc.txt");
+        paths.remove(0);
+        BloomFilter filter = BloomFilter.of(paths);
+        for (String path : paths) {
+            assertTrue(filter.mightContain(path), path);
+        }
+        BloomFilter copy = BloomFilter.fromBytes(filter.toBytes());
+        for (String path : paths) {
+            assertTrue(copy.mightContain(path), path);
+        }
+    }
+
+    @Test
+    void falsePositiveRateIsAboutOnePercent() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            paths.add("a/" + i);
+        }
+        BloomFilter filter = BloomFilter.of(paths);
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("b/" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, falsePositives + " false positives in 10000");
+    }
+
+    @Test
+    void emptyCommitRulesOutEverythingAndOversizedOneNothing() {
+        BloomFilter empty = BloomFilter.of(List.of());
+        assertEquals(1, empty.sizeInBytes());
+        assertFalse(empty.mightContain("any/path"));
+
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i <= BloomFilter.MAX_PATHS; i++) {
+            paths.add("f" + i);
+        }
+        BloomFilter oversized = BloomFilter.of(paths);
+        assertEquals(1, oversized.sizeInBytes());
+        assertTrue(oversized.mightContain("not/added"));
+    }
+
+    private static void assertMurmur3(int expected, int seed, byte[] data) {
+        assertEquals(Integer.toHexString(expected), Integer.toHexString(BloomFilter.murmur3(seed, data)));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,120 @@
+package com.abhishek.sit.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaTest {
+
+    @Test
+    void applyingACreatedDeltaGivesTheTarget() throws IOException {
+        Random random = new Random(5);
+        for (int round = 0; round < 300; round++) {
+            byte[] base = randomBytes(random, random.nextInt(20_000));
+            byte[] target = mutate(random, base);
+            assertRoundTrip(base, target);
+        }
+    }
+
+    @Test
+    void edgeSizes() throws IOException {
+        byte[] small = {1, 2, 3};
+        assertRoundTrip(new byte[0], new byte[0]);
+        assertRoundTrip(new byte[0], small);
+        assertRoundTrip(small, new byte[0]);
+        assertRoundTrip(small, small);
+        // Shorter than a block: nothing to index, all inserts
+        byte[] fifteen = randomBytes(new Random(6), 15);
+        assertRoundTrip(fifteen, fifteen);
+    }
+
+    @Test
+    void copiesFromOffsetsWithZeroBytes() throws IOException {
+        // 0x10000 and 0x1000000 have zero low bytes, which the copy encoding omits
+        byte[] base = randomBytes(new Random(7), 0x1000000 + 4096);
+        byte[] target = new byte[3 * 4096];
+        System.arraycopy(base, 0, target, 0, 4096);
+        System.arraycopy(base, 0x10000, target, 4096, 4096);
+        System.arraycopy(base, 0x1000000, target, 8192, 4096);
+        byte[] delta = assertRoundTrip(base, target);
+        assertTrue(delta.length < 64, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    void copiesLongerThanTheMaximumCopySizeAreSplit() throws IOException {
+        byte[] base = randomBytes(new Random(8), 0xffffff + 1000);
+        byte[] target = Arrays.copyOf(base, base.length);
+        target[target.length - 1] ^= 1;
+        byte[] delta = assertRoundTrip(base, target);
+        assertTrue(delta.length < 64, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    void givesUpAtTheSizeLimit() {
+        byte[] base = randomBytes(new Random(9), 4096);
+        byte[] unrelated = randomBytes(new Random(10), 4096);
+        assertNull(Delta.create(new Delta.Index(base), unrelated, 2048));
+        assertNotNull(Delta.create(new Delta.Index(base), base, 2048));
+    }
+
+    @Test
+    void resultSizeIsReadFromTheHeader() {
+        byte[] base = randomBytes(new Random(11), 1000);
+        byte[] target = Arrays.copyOf(base, 300_000);
+        byte[] delta = Delta.create(new Delta.Index(base), target, Integer.MAX_VALUE);
+        assertEquals(300_000, Delta.resultSize(delta));
+    }
+
+    @Test
+    void rejectsADeltaForAnotherBase() {
+        byte[] base = randomBytes(new Random(12), 1000);
+        byte[] delta = Delta.create(new Delta.Index(base), base, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> Delta.apply(new byte[999], delta));
+    }
+
+    private static byte[] assertRoundTrip(byte[] base, byte[] target) throws IOException {
+        byte[] delta = Delta.create(new Delta.Index(base), target, Integer.MAX_VALUE);
+        assertNotNull(delta);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        return delta;
+    }
+
+    // Text-like bytes from a small alphabet, so blocks repeat within a file too
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(random.nextInt(10) == 0 ? 26 : 4));
+        }
+        return bytes;
+    }
+
+    // Inserts, deletes, replacements and moved chunks
+    private static byte[] mutate(Random random, byte[] base) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < base.length) {
+            int chunk = Math.min(base.length - pos, 1 + random.nextInt(2000));
+            switch (random.nextInt(6)) {
+                case 0 -> out.writeBytes(randomBytes(random, random.nextInt(300)));
+                case 1 -> pos += chunk;
+                case 2 -> {
+                    int from = random.nextInt(base.length);
+                    out.write(base, from, Math.min(chunk, base.length - from));
+                }
+                default -> {
+                    out.write(base, pos, chunk);
+                    pos += chunk;
+                }
+            }
+        }
+        if (random.nextBoolean()) {
+            out.writeBytes(randomBytes(random, random.nextInt(100)));
+        }
+        return out.toByteArray();
+    }
+}
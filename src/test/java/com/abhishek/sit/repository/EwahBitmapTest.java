@@ -0,0 +1,137 @@
+package com.abhishek.sit.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EwahBitmapTest {
+
+    @Test
+    void roundTripsThroughBitSet() {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            BitSet bits = randomBits(random);
+            EwahBitmap bitmap = EwahBitmap.fromBitSet(bits);
+            assertEquals(bits, bitmap.toBitSet());
+            assertEquals(bits.cardinality(), bitmap.cardinality());
+            assertEquals(bits.isEmpty(), bitmap.isEmpty());
+        }
+    }
+
+    @Test
+    void logicalOperationsMatchBitSet() {
+        Random random = new Random(2);
+        for (int round = 0; round < 500; round++) {
+            BitSet a = randomBits(random);
+            BitSet b = randomBits(random);
+            EwahBitmap x = EwahBitmap.fromBitSet(a);
+            EwahBitmap y = EwahBitmap.fromBitSet(b);
+
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+
+            assertEquals(or, EwahBitmap.or(x, y).toBitSet());
+            assertEquals(and, EwahBitmap.and(x, y).toBitSet());
+            assertEquals(andNot, EwahBitmap.andNot(x, y).toBitSet());
+            assertEquals(and.cardinality(), EwahBitmap.and(x, y).cardinality());
+        }
+    }
+
+    @Test
+    void operationsWithTheEmptyBitmap() {
+        BitSet bits = new BitSet();
+        bits.set(3);
+        bits.set(64 * 100, 64 * 200);
+        EwahBitmap bitmap = EwahBitmap.fromBitSet(bits);
+        assertEquals(bits, EwahBitmap.or(bitmap, EwahBitmap.EMPTY).toBitSet());
+        assertEquals(bits, EwahBitmap.or(EwahBitmap.EMPTY, bitmap).toBitSet());
+        assertTrue(EwahBitmap.and(bitmap, EwahBitmap.EMPTY).isEmpty());
+        assertEquals(bits, EwahBitmap.andNot(bitmap, EwahBitmap.EMPTY).toBitSet());
+        assertTrue(EwahBitmap.andNot(EwahBitmap.EMPTY, bitmap).isEmpty());
+        assertTrue(EwahBitmap.andNot(bitmap, bitmap).isEmpty());
+    }
+
+    @Test
+    void longRunsCompress() {
+        BitSet bits = new BitSet();
+        bits.set(0, 64 * 10_000);
+        bits.set(64 * 20_000 + 5);
+        EwahBitmap bitmap = EwahBitmap.fromBitSet(bits);
+        assertTrue(bitmap.sizeInWords() <= 4, "size " + bitmap.sizeInWords());
+        assertEquals(bits, bitmap.toBitSet());
+    }
+
+    @Test
+    void getAndForEachAgreeWithBitSet() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            BitSet bits = randomBits(random);
+            EwahBitmap bitmap = EwahBitmap.fromBitSet(bits);
+            for (int bit = 0; bit < bits.length() + 130; bit++) {
+                assertEquals(bits.get(bit), bitmap.get(bit), "bit " + bit);
+            }
+            List<Integer> expected = new ArrayList<>();
+            bits.stream().forEach(expected::add);
+            List<Integer> actual = new ArrayList<>();
+            bitmap.forEach(actual::add);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void writeThenReadIsIdentical() throws IOException {
+        Random random = new Random(4);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        List<BitSet> written = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            BitSet bits = randomBits(random);
+            written.add(bits);
+            EwahBitmap.fromBitSet(bits).write(out);
+        }
+        out.flush();
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        for (BitSet bits : written) {
+            assertEquals(bits, EwahBitmap.read(in).toBitSet());
+        }
+        assertFalse(in.hasRemaining());
+    }
+
+    // Stretches of clear, full and mixed words, so both runs and literals
+    // (and runs meeting literals on the other side) come up
+    private static BitSet randomBits(Random random) {
+        BitSet bits = new BitSet();
+        int word = 0;
+        int stretches = random.nextInt(12);
+        for (int s = 0; s < stretches; s++) {
+            int words = 1 + random.nextInt(random.nextBoolean() ? 4 : 300);
+            switch (random.nextInt(4)) {
+                case 0 -> { }
+                case 1 -> bits.set(word * 64, (word + words) * 64);
+                default -> {
+                    double density = random.nextDouble();
+                    for (int bit = word * 64; bit < (word + words) * 64; bit++) {
+                        if (random.nextDouble() < density) {
+                            bits.set(bit);
+                        }
+                    }
+                }
+            }
+            word += words;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,133 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.model.FileStat;
+import com.abhishek.sit.model.IndexEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexFileTest {
+
+    // BMP, private use area, half-width katakana (U+FF71) and astral paths,
+    // which String.compareTo and UTF-8 byte order sort differently
+    private static final List<String> PATHS = List.of("a.txt", "dir/b.txt", "dir/\ue000.txt", "\uff71.txt",
+            "\ud83d\ude00.txt", "\ud83d\ude00/nested.txt", "z\ufffd", "\u00e9t\u00e9.txt", "\ud800\udc00");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pathOrderIsUtf8ByteOrder() {
+        for (String a : PATHS) {
+            for (String b : PATHS) {
+                int expected = Integer.signum(Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8),
+                        b.getBytes(StandardCharsets.UTF_8)));
+                assertEquals(expected, Integer.signum(IndexFile.PATH_ORDER.compare(a, b)), a + " vs " + b);
+            }
+        }
+    }
+
+    @Test
+    void writeThenLookupFindsEveryPath() throws IOException {
+        // Enough entries for several restart blocks
+        Map<String, IndexEntry> index = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            for (String path : PATHS) {
+                index.put(i + "/" + path, entry(path.hashCode() + i));
+            }
+        }
+        Path file = dir.resolve("index");
+        IndexFile.write(file, index);
+
+        IndexFile written = IndexFile.open(file);
+        assertEquals(index.size(), written.size());
+        for (Map.Entry<String, IndexEntry> e : index.entrySet()) {
+            assertEquals(e.getValue(), written.lookup(e.getKey()), e.getKey());
+        }
+        assertNull(written.lookup("\ud83d\ude01.txt"));
+        assertEquals(index, written.readAll());
+    }
+
+    @Test
+    void mergeReplacesAndAddsInPathOrder() throws IOException {
+        Map<String, IndexEntry> index = new HashMap<>();
+        for (String path : PATHS) {
+            index.put(path, entry(1));
+        }
+        Path file = dir.resolve("index");
+        IndexFile.write(file, index);
+
+        // Updates in String order, as a caller might pass them
+        SortedMap<String, IndexEntry> updates = new TreeMap<>();
+        updates.put("\uff71.txt", entry(2));
+        updates.put("\ud83d\ude00.txt", entry(2));
+        updates.put("\ud83d\ude02.txt", entry(3));
+        updates.put("\ue001.txt", entry(3));
+        IndexFile.merge(file, IndexFile.open(file), updates);
+
+        index.putAll(updates);
+        IndexFile merged = IndexFile.open(file);
+        assertEquals(index.size(), merged.size());
+        for (Map.Entry<String, IndexEntry> e : index.entrySet()) {
+            assertEquals(e.getValue(), merged.lookup(e.getKey()), e.getKey());
+        }
+        List<String> expectedOrder = new ArrayList<>(index.keySet());
+        expectedOrder.sort(IndexFile.PATH_ORDER);
+        assertEquals(expectedOrder, new ArrayList<>(merged.readAll().keySet()));
+    }
+
+    @Test
+    void entriesAsNewAsTheIndexAreWrittenSmudged() throws IOException {
+        long now = System.currentTimeMillis() * 1_000_000L;
+        Map<String, IndexEntry> index = new HashMap<>();
+        index.put("old", entry(1));
+        index.put("racy", new IndexEntry(entry(2).hash(), new FileStat(10, now, now, 7)));
+        Path file = dir.resolve("index");
+        IndexFile.write(file, index);
+
+        IndexFile written = IndexFile.open(file);
+        assertEquals(entry(1), written.lookup("old"));
+        assertEquals(FileStat.UNKNOWN, written.lookup("racy").stat());
+        assertEquals(entry(2).hash(), written.lookup("racy").hash());
+    }
+
+    @Test
+    void mergeSmudgesEntriesRacyAgainstTheOldIndex() throws IOException {
+        // An entry from the same second as the index it was read from stays
+        // untrusted when a later merge copies it into a newer index
+        long then = 1_500_000_000L * 1_000_000_000L;
+        Map<String, IndexEntry> index = new HashMap<>();
+        index.put("racy", new IndexEntry(entry(2).hash(), new FileStat(10, then + 300_000_000L, then, 7)));
+        index.put("old", new IndexEntry(entry(3).hash(), new FileStat(10, then - 5_000_000_000L, then, 8)));
+        Path file = dir.resolve("index");
+        IndexFile.write(file, index);
+        Files.setLastModifiedTime(file, FileTime.from(then + 500_000_000L, TimeUnit.NANOSECONDS));
+
+        // Staged now, but modified well after the old index and well before the new one
+        IndexEntry staged = new IndexEntry(entry(5).hash(), new FileStat(10, then + 60_000_000_000L, then, 9));
+        SortedMap<String, IndexEntry> updates = new TreeMap<>(IndexFile.PATH_ORDER);
+        updates.put("new", entry(4));
+        updates.put("staged", staged);
+        IndexFile.merge(file, IndexFile.open(file), updates);
+
+        IndexFile merged = IndexFile.open(file);
+        assertEquals(FileStat.UNKNOWN, merged.lookup("racy").stat());
+        assertEquals(index.get("old"), merged.lookup("old"));
+        assertEquals(entry(4), merged.lookup("new"));
+        assertEquals(staged, merged.lookup("staged"));
+    }
+
+    private static IndexEntry entry(int seed) {
+        String hash = String.format("%040x", seed & 0xffffffffL);
+        return new IndexEntry(hash, new FileStat(seed & 0xffff, seed, seed, seed));
+    }
+}
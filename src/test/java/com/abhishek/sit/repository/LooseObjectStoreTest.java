@@ -0,0 +1,70 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LooseObjectStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writeStoresTheFileUnderItsHash() throws IOException {
+        LooseObjectStore store = new LooseObjectStore(dir.resolve("objects"));
+        byte[] content = new byte[300_000];
+        new Random(1).nextBytes(content);
+        Path source = Files.write(dir.resolve("file"), content);
+
+        String hash = store.write(source, h -> false);
+        assertEquals(SitUtil.getSha1(content), hash);
+        assertTrue(store.contains(hash));
+        assertEquals(content.length, store.size(hash));
+        try (InputStream in = store.open(hash)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertEquals(1, objectsDirEntries());
+    }
+
+    @Test
+    void contentAlreadyStoredIsNotWrittenAgain() throws IOException {
+        LooseObjectStore store = new LooseObjectStore(dir.resolve("objects"));
+        Path source = Files.writeString(dir.resolve("file"), "packed elsewhere\n");
+
+        String hash = store.write(source, h -> true);
+        assertEquals(SitUtil.getSha1(source), hash);
+        assertFalse(store.contains(hash));
+        assertEquals(0, objectsDirEntries());
+    }
+
+    @Test
+    void deleteRemovesTheEmptyFanOutDirectory() throws IOException {
+        LooseObjectStore store = new LooseObjectStore(dir.resolve("objects"));
+        String hash = store.write(Files.writeString(dir.resolve("file"), "x\n"), h -> false);
+        Path fanOut = store.path(hash).getParent();
+        assertTrue(Files.isDirectory(fanOut));
+
+        store.delete(hash);
+        assertFalse(store.contains(hash));
+        assertFalse(Files.exists(fanOut));
+        // And a later write recreates it
+        store.write(dir.resolve("file"), h -> false);
+        assertTrue(store.contains(hash));
+    }
+
+    // Fan-out directories, and any temp file left behind
+    private long objectsDirEntries() throws IOException {
+        try (Stream<Path> entries = Files.list(dir.resolve("objects"))) {
+            return entries.count();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.abhishek.sit.repository;
+
+import com.abhishek.sit.util.SitUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everyObjectReadsBackFromThePack() throws IOException {
+        // Many versions of a few files, so most objects become deltas
+        Random random = new Random(13);
+        Map<String, byte[]> store = new HashMap<>();
+        Map<String, String> objects = new TreeMap<>();
+        for (int file = 0; file < 4; file++) {
+            StringBuilder text = new StringBuilder();
+            for (int line = 0; line < 400; line++) {
+                text.append("file ").append(file).append(" line ").append(line).append('\n');
+            }
+            for (int version = 0; version < 15; version++) {
+                int at = random.nextInt(text.length());
+                text.insert(at, "edit " + version + " of file " + file + "\n");
+                add(store, objects, text.toString().getBytes(StandardCharsets.UTF_8), "src/File" + file + ".java");
+            }
+        }
+        add(store, objects, new byte[0], null);
+        add(store, objects, "tiny".getBytes(StandardCharsets.UTF_8), "tiny.txt");
+
+        PackWriter writer = new PackWriter(new InMemoryRepository(store));
+        Path pack = writer.write(dir, objects);
+        assertTrue(writer.getDeltaCount() > 0);
+
+        String name = pack.getFileName().toString();
+        try (PackFile packFile = new PackFile(pack, pack.resolveSibling(name.replace(".pack", ".idx")))) {
+            assertEquals(objects.size(), packFile.size());
+            for (String hash : objects.keySet()) {
+                assertTrue(packFile.contains(hash));
+                assertArrayEquals(store.get(hash), packFile.read(hash), hash);
+                assertEquals(store.get(hash).length, packFile.objectSize(hash));
+            }
+        }
+    }
+
+    private static void add(Map<String, byte[]> store, Map<String, String> objects, byte[] data, String path) {
+        String hash = SitUtil.getSha1(data);
+        store.put(hash, data);
+        objects.put(hash, path);
+    }
+
+    // Serves objects from memory; the real one reads .sit in the working directory
+    private static final class InMemoryRepository extends SitRepository {
+        private final Map<String, byte[]> store;
+
+        InMemoryRepository(Map<String, byte[]> store) {
+            this.store = store;
+        }
+
+        @Override
+        public byte[] readObject(String hash) throws IOException {
+            byte[] data = store.get(hash);
+            if (data == null) {
+                throw new NoSuchFileException("object " + hash);
+            }
+            return data;
+        }
+
+        @Override
+        public InputStream openObject(String hash) throws IOException {
+            return new ByteArrayInputStream(readObject(hash));
+        }
+
+        @Override
+        public long objectSize(String hash) throws IOException {
+            return readObject(hash).length;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.abhishek.sit.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MergeServiceTest {
+
+    @Test
+    void cleanMergeKeepsNonUtf8BytesAsTheyAre() {
+        // Latin-1 "caf\u00e9" (0xE9), which is not valid UTF-8
+        byte[] base = latin1("one\ncaf\u00e9\nthree\n");
+        byte[] ours = latin1("ONE\ncaf\u00e9\nthree\n");
+        byte[] theirs = latin1("one\ncaf\u00e9\nthree\nna\u00efve\n");
+        MergeService.MergedContent merged = MergeService.mergeContent(base, ours, theirs, "HEAD", "topic");
+        assertTrue(merged.isClean());
+        assertArrayEquals(latin1("ONE\ncaf\u00e9\nthree\nna\u00efve\n"), merged.data());
+    }
+
+    @Test
+    void arbitraryBytesSurviveACleanMerge() {
+        byte[] line = new byte[256];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = (byte) (i == '\n' || i == 0 ? 'x' : i);
+        }
+        byte[] base = concat(line, latin1("\nkeep\n"));
+        byte[] theirs = concat(line, latin1("\nkeep\nadded\n"));
+        MergeService.MergedContent merged = MergeService.mergeContent(base, base, theirs, "HEAD", "topic");
+        assertTrue(merged.isClean());
+        assertArrayEquals(theirs, merged.data());
+    }
+
+    @Test
+    void conflictMarkersCarryUtf8LabelsAroundRawSides() {
+        byte[] base = latin1("caf\u00e9\n");
+        byte[] ours = latin1("caf\u00e8\n");
+        byte[] theirs = latin1("caf\u00ea\n");
+        MergeService.MergedContent merged = MergeService.mergeContent(base, ours, theirs, "HEAD", "r\u00e9sum\u00e9");
+        assertEquals(1, merged.conflicts());
+        byte[] expected = concat(latin1("<<<<<<< HEAD\ncaf\u00e8\n=======\ncaf\u00ea\n>>>>>>> "),
+                "r\u00e9sum\u00e9\n".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected, merged.data());
+    }
+
+    private static byte[] latin1(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package com.abhishek.sit.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SitIgnoreTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void unanchoredNamesMatchAtAnyDepth() throws IOException {
+        SitIgnore ignore = ignore("", "*.log", "cache");
+        assertTrue(ignore.isIgnored("a.log", false));
+        assertTrue(ignore.isIgnored("src/deep/b.log", false));
+        assertTrue(ignore.isIgnored("src/cache", true));
+        assertTrue(ignore.isIgnored("src/cache", false));
+        assertFalse(ignore.isIgnored("a.log.txt", false));
+        assertFalse(ignore.isIgnored("caches", true));
+    }
+
+    @Test
+    void slashAnchorsToTheIgnoreFilesDirectory() throws IOException {
+        SitIgnore ignore = ignore("", "/dist", "docs/*.html");
+        assertTrue(ignore.isIgnored("dist", true));
+        assertFalse(ignore.isIgnored("app/dist", true));
+        assertTrue(ignore.isIgnored("docs/index.html", false));
+        assertFalse(ignore.isIgnored("docs/api/index.html", false));
+        assertFalse(ignore.isIgnored("app/docs/index.html", false));
+    }
+
+    @Test
+    void nestedIgnoreFileAnchorsToItsOwnDirectory() throws IOException {
+        SitIgnore ignore = ignore("app", "/out", "*.tmp");
+        assertTrue(ignore.isIgnored("app/out", true));
+        assertFalse(ignore.isIgnored("out", true));
+        assertTrue(ignore.isIgnored("app/x/y.tmp", false));
+        assertFalse(ignore.isIgnored("y.tmp", false));
+    }
+
+    @Test
+    void trailingSlashMatchesDirectoriesOnly() throws IOException {
+        SitIgnore ignore = ignore("", "tmp/", "/gen/out/");
+        assertTrue(ignore.isIgnored("tmp", true));
+        assertTrue(ignore.isIgnored("a/tmp", true));
+        assertFalse(ignore.isIgnored("tmp", false));
+        assertTrue(ignore.isIgnored("gen/out", true));
+        assertFalse(ignore.isIgnored("gen/out", false));
+    }
+
+    @Test
+    void negationReincludesAndLastMatchWins() throws IOException {
+        SitIgnore ignore = ignore("", "*.log", "!keep.log", "\\!bang", "\\#hash");
+        assertTrue(ignore.isIgnored("a.log", false));
+        assertFalse(ignore.isIgnored("keep.log", false));
+        assertFalse(ignore.isIgnored("sub/keep.log", false));
+        assertTrue(ignore.isIgnored("!bang", false));
+        assertTrue(ignore.isIgnored("#hash", false));
+
+        SitIgnore reversed = ignore("", "!keep.log", "*.log");
+        assertTrue(reversed.isIgnored("keep.log", false));
+    }
+
+    @Test
+    void deeperIgnoreFileBeatsShallowerOnesAndDefaults() throws IOException {
+        Files.writeString(root.resolve(SitIgnore.IGNORE_FILE), "*.log\n");
+        SitIgnore ignore = ignore("app", "!*.log", "!build");
+        assertTrue(ignore.isIgnored("a.log", false));
+        assertFalse(ignore.isIgnored("app/a.log", false));
+        assertTrue(ignore.isIgnored("build", true));
+        assertFalse(ignore.isIgnored("app/build", true));
+        assertTrue(ignore.isIgnored(".sit", true));
+        assertTrue(ignore.isIgnored(".sit/objects", true));
+    }
+
+    @Test
+    void doubleStarSpansDirectories() throws IOException {
+        SitIgnore ignore = ignore("", "**/gen", "logs/**", "a/**/b");
+        assertTrue(ignore.isIgnored("gen", true));
+        assertTrue(ignore.isIgnored("x/y/gen", true));
+        assertTrue(ignore.isIgnored("logs/today", false));
+        assertTrue(ignore.isIgnored("logs/2024/01/today", false));
+        assertFalse(ignore.isIgnored("logs", true));
+        assertTrue(ignore.isIgnored("a/b", false));
+        assertTrue(ignore.isIgnored("a/x/y/b", false));
+        assertFalse(ignore.isIgnored("a/x/c", false));
+        assertFalse(ignore.isIgnored("z/a/b", false));
+    }
+
+    @Test
+    void wildcardsAndClasses() throws IOException {
+        SitIgnore ignore = ignore("", "file?.txt", "v[0-9][0-9]", "[!a-c]x", "[^d]y", "*.[ch]", "a*b*c", "\\*lit");
+        assertTrue(ignore.isIgnored("file1.txt", false));
+        assertFalse(ignore.isIgnored("file10.txt", false));
+        assertFalse(ignore.isIgnored("file.txt", false));
+        assertTrue(ignore.isIgnored("v12", false));
+        assertFalse(ignore.isIgnored("v1a", false));
+        assertTrue(ignore.isIgnored("dx", false));
+        assertFalse(ignore.isIgnored("bx", false));
+        assertTrue(ignore.isIgnored("ey", false));
+        assertFalse(ignore.isIgnored("dy", false));
+        assertTrue(ignore.isIgnored("main.c", false));
+        assertTrue(ignore.isIgnored("main.h", false));
+        assertFalse(ignore.isIgnored("main.o", false));
+        assertTrue(ignore.isIgnored("abc", false));
+        assertTrue(ignore.isIgnored("a-b-b-c", false));
+        assertFalse(ignore.isIgnored("a-c-b", false));
+        assertTrue(ignore.isIgnored("*lit", false));
+        assertFalse(ignore.isIgnored("xlit", false));
+    }
+
+    @Test
+    void pathsNamedDirectlyAreIgnoredUnderAnIgnoredDirectory() throws IOException {
+        SitIgnore ignore = ignore("", "logs/", "/build-*", "*.tmp", "!keep.tmp");
+        // The leaf alone doesn't match: only a walk would have stopped at logs/
+        assertFalse(ignore.isIgnored("logs/a.txt", false));
+        assertTrue(ignore.isIgnoredPath("logs/a.txt", false));
+        assertTrue(ignore.isIgnoredPath("logs/deep/a.txt", false));
+        assertTrue(ignore.isIgnoredPath("src/logs/a.txt", false));
+        assertTrue(ignore.isIgnoredPath("logs", true));
+        assertTrue(ignore.isIgnoredPath("build-1/out/x", false));
+        assertTrue(ignore.isIgnoredPath("sub/b.tmp", false));
+        assertFalse(ignore.isIgnoredPath("sub/keep.tmp", false));
+        assertFalse(ignore.isIgnoredPath("logs", false));
+        assertFalse(ignore.isIgnoredPath("src/a.txt", false));
+        assertFalse(ignore.isIgnoredPath("", true));
+    }
+
+    @Test
+    void privateUseCharactersAreOrdinaryNameCharacters() throws IOException {
+        // U+E000..U+E002 once doubled as the compiled '?', '*' and class markers
+        SitIgnore ignore = ignore("", "x\ue000?", "\ue001y*", "[\ue002]z");
+        assertTrue(ignore.isIgnored("x\ue000b", false));
+        assertFalse(ignore.isIgnored("xab", false));
+        assertTrue(ignore.isIgnored("\ue001yes", false));
+        assertFalse(ignore.isIgnored("ayes", false));
+        assertFalse(ignore.isIgnored("y", false));
+        assertTrue(ignore.isIgnored("\ue002z", false));
+        assertFalse(ignore.isIgnored("az", false));
+    }
+
+    private SitIgnore ignore(String dir, String... lines) throws IOException {
+        Path directory = root.resolve(dir);
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve(SitIgnore.IGNORE_FILE), String.join("\n", lines) + "\n");
+        return new SitIgnore(root);
+    }
+}